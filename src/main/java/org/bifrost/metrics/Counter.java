@@ -0,0 +1,42 @@
+package org.bifrost.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A counter that can be added to from several threads without contention.
+ */
+public final class Counter implements Metric {
+    private final String name;
+    private final LongAdder count = new LongAdder();
+
+    public Counter(String name) {
+	this.name = name;
+    }
+
+    @Override
+    public String getName() {
+	return name;
+    }
+
+    public void increment() {
+	count.increment();
+    }
+
+    public void add(long n) {
+	count.add(n);
+    }
+
+    public long get() {
+	return count.sum();
+    }
+
+    @Override
+    public void reset() {
+	count.reset();
+    }
+
+    @Override
+    public String toString() {
+	return String.format("%s: %d", name, get());
+    }
+}
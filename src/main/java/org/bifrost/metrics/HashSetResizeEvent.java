@@ -0,0 +1,23 @@
+package org.bifrost.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for a SimpleHashSet rehashing into a new table.
+ */
+@Name("org.bifrost.HashSetResize")
+@Label("Hash Set Resize")
+@Category({ "Bifrost", "SimpleHashSet" })
+public final class HashSetResizeEvent extends Event {
+    @Label("Old Capacity")
+    public int oldCapacity;
+
+    @Label("New Capacity")
+    public int newCapacity;
+
+    @Label("Elements")
+    public int size;
+}
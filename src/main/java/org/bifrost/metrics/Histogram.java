@@ -0,0 +1,93 @@
+package org.bifrost.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative longs in power of two buckets: bucket 0
+ * counts the zeroes and bucket i > 0 the values in [2^(i-1), 2^i).
+ * Recording is a few atomic increments and needs no locking, at the
+ * price of percentiles only being known up to a factor of two.
+ */
+public final class Histogram implements Metric {
+    static final int NR_BUCKETS = 64;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(NR_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    public Histogram(String name) {
+	this.name = name;
+    }
+
+    @Override
+    public String getName() {
+	return name;
+    }
+
+    /**
+     * Records value, negative values are recorded as 0.
+     */
+    public void record(long value) {
+	if (value < 0) value = 0;
+	buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+	count.increment();
+	sum.add(value);
+    }
+
+    public long getCount() {
+	return count.sum();
+    }
+
+    public long getSum() {
+	return sum.sum();
+    }
+
+    public double getMean() {
+	long n = getCount();
+	return n == 0 ? 0 : (double) getSum() / n;
+    }
+
+    /**
+     * @return the number of recorded values in bucket i.
+     */
+    public long getBucket(int i) {
+	return buckets.get(i);
+    }
+
+    /**
+     * @return the largest value of bucket i.
+     */
+    public static long bucketLimit(int i) {
+	return i == 0 ? 0 : i == NR_BUCKETS ? Long.MAX_VALUE : (1L << i) - 1;
+    }
+
+    /**
+     * @return an upper bound for the fraction q of the recorded
+     * values, that is the largest value of the bucket holding the
+     * q-quantile, or 0 if nothing was recorded.
+     */
+    public long getPercentile(double q) {
+	long rank = (long) Math.ceil(q * getCount());
+	long seen = 0;
+	for (int i = 0; i < NR_BUCKETS; ++i) {
+	    seen += buckets.get(i);
+	    if (seen >= rank && seen > 0) return bucketLimit(i);
+	}
+	return 0;
+    }
+
+    @Override
+    public void reset() {
+	for (int i = 0; i < NR_BUCKETS; ++i) buckets.set(i, 0);
+	count.reset();
+	sum.reset();
+    }
+
+    @Override
+    public String toString() {
+	return String.format("%s: count %d, mean %.2f, p50 <= %d, p99 <= %d, max <= %d", name, getCount(), getMean(),
+			     getPercentile(0.5), getPercentile(0.99), getPercentile(1));
+    }
+}
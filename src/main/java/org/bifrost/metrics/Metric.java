@@ -0,0 +1,10 @@
+package org.bifrost.metrics;
+
+/**
+ * A named statistic kept by Metrics.
+ */
+public interface Metric {
+    String getName();
+
+    void reset();
+}
@@ -0,0 +1,70 @@
+package org.bifrost.metrics;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The statistics of the hot paths of WordCounter, Trie, SimpleHashSet
+ * and TriangleDetector.
+ *
+ * Collection is switched on by starting the JVM with
+ * -Dbifrost.metrics=true. ENABLED is a static final constant, so when
+ * it is false the JIT compiles the instrumentation out altogether
+ * (see MetricsBenchmark in the tests). The metrics can be polled at
+ * any time, from any thread.
+ *
+ * The JFR events (WordCountEvent, HashSetResizeEvent) do not depend
+ * on ENABLED but on the event settings of the flight recording, as
+ * usual for JFR; they are only emitted once per word count and per
+ * resize.
+ */
+public final class Metrics {
+    public static final boolean ENABLED = Boolean.getBoolean("bifrost.metrics");
+
+    public static final Counter WORD_COUNT_RUNS = new Counter("wordcounter.runs");
+    public static final Counter WORD_COUNT_CHARS = new Counter("wordcounter.chars");
+    public static final Counter WORD_COUNT_TOKENS = new Counter("wordcounter.tokens");
+    public static final Counter WORD_COUNT_DISTINCT = new Counter("wordcounter.distinct");
+    public static final Histogram WORD_COUNT_SCAN_NANOS = new Histogram("wordcounter.scan.nanos");
+    public static final Histogram WORD_COUNT_COLLECT_NANOS = new Histogram("wordcounter.collect.nanos");
+    public static final Histogram WORD_COUNT_SORT_NANOS = new Histogram("wordcounter.sort.nanos");
+
+    /** Length of the key prefix followed by Trie lookups */
+    public static final Histogram TRIE_DESCENT_DEPTH = new Histogram("trie.descent.depth");
+    /** Edges compared at one level of a Trie lookup */
+    public static final Histogram TRIE_SIBLING_SCAN = new Histogram("trie.sibling.scan");
+
+    public static final Counter HASHSET_RESIZES = new Counter("simplehashset.resizes");
+    public static final Counter HASHSET_RESIZED_ELEMENTS = new Counter("simplehashset.resized.elements");
+    public static final Histogram HASHSET_RESIZE_NANOS = new Histogram("simplehashset.resize.nanos");
+
+    public static final Counter TRIANGLES_CLASSIFIED = new Counter("triangledetector.bulk.triangles");
+
+    private static final List<Metric> ALL = Collections.unmodifiableList(Arrays.<Metric>asList(
+	WORD_COUNT_RUNS, WORD_COUNT_CHARS, WORD_COUNT_TOKENS, WORD_COUNT_DISTINCT,
+	WORD_COUNT_SCAN_NANOS, WORD_COUNT_COLLECT_NANOS, WORD_COUNT_SORT_NANOS,
+	TRIE_DESCENT_DEPTH, TRIE_SIBLING_SCAN,
+	HASHSET_RESIZES, HASHSET_RESIZED_ELEMENTS, HASHSET_RESIZE_NANOS,
+	TRIANGLES_CLASSIFIED));
+
+    private Metrics() {
+    }
+
+    public static List<Metric> all() {
+	return ALL;
+    }
+
+    public static void reset() {
+	for (Metric m: ALL) m.reset();
+    }
+
+    /**
+     * @return all metrics, one per line.
+     */
+    public static String report() {
+	StringBuilder sb = new StringBuilder();
+	for (Metric m: ALL) sb.append(m).append('\n');
+	return sb.toString();
+    }
+}
@@ -0,0 +1,42 @@
+package org.bifrost.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event for one WordCounter.getMostCommonWords run.
+ * Tokenizing and counting happen in one loop over the matches, so
+ * they are timed together as the scan phase.
+ */
+@Name("org.bifrost.WordCount")
+@Label("Word Count")
+@Category({ "Bifrost", "WordCounter" })
+@Description("Finding and counting the words of a text")
+public final class WordCountEvent extends Event {
+    @Label("Characters Scanned")
+    public long charsScanned;
+
+    @Label("Tokens")
+    public long tokens;
+
+    @Label("Distinct Words")
+    public long distinctWords;
+
+    @Label("Scan Time")
+    @Description("Tokenizing and counting")
+    @Timespan(Timespan.NANOSECONDS)
+    public long scanNanos;
+
+    @Label("Collect Time")
+    @Description("Converting the counts to a list of words")
+    @Timespan(Timespan.NANOSECONDS)
+    public long collectNanos;
+
+    @Label("Sort Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long sortNanos;
+}
@@ -0,0 +1,178 @@
+package org.bifrost.simplehashset;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import org.bifrost.metrics.Metrics;
+
+/**
+ * A blocked Bloom filter over 32 bit hash codes.
+ *
+ * The bits are divided in blocks of 512 bits, the size of a common
+ * cache line, and all the bits of a key are set in the one block its
+ * hash selects. A query thus touches a single cache line, at the
+ * price of a slightly higher false positive rate than a plain Bloom
+ * filter of the same size.
+ *
+ * A Bloom filter can not forget keys, so whoever removes keys from
+ * the set it guards has to rebuild it now and then (see
+ * SimpleHashSet.enableMembershipFilter). Besides the estimated false
+ * positive rate, the filter counts the queries it answered and how
+ * many of its positive answers were wrong, provided the guarded set
+ * reports them through falsePositive(). Those counts are only kept
+ * when Metrics.ENABLED is set, so that otherwise a query writes
+ * nothing; they are LongAdders, as the clones of a set share its
+ * filter and may query it from different threads.
+ */
+public final class BlockedBloomFilter {
+    static final int BLOCK_LONGS = 8;
+    static final int BITS_PER_KEY = 6;
+
+    private final long[] bits;
+    private final int blockMask;
+    private long nrKeys;
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder negatives = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    /**
+     * @param expectedKeys the number of keys the filter is sized for.
+     * @param bitsPerKey the number of bits of memory to spend per expected key.
+     */
+    public BlockedBloomFilter(long expectedKeys, int bitsPerKey) {
+	if (bitsPerKey < 1) throw new IllegalArgumentException("Illegal bits per key: " + bitsPerKey);
+	long blocks = Math.max(1, (expectedKeys * bitsPerKey + 511) / 512);
+	blocks = Math.min(Long.highestOneBit(blocks - 1) << 1, 1 << 26);
+	if (blocks == 0) blocks = 1;
+	bits = new long[(int) blocks * BLOCK_LONGS];
+	blockMask = (int) blocks - 1;
+    }
+
+    BlockedBloomFilter(BlockedBloomFilter other) {
+	bits = other.bits.clone();
+	blockMask = other.blockMask;
+	nrKeys = other.nrKeys;
+	carryStatistics(other);
+    }
+
+    /**
+     * Takes over the query statistics of a filter this one replaces.
+     */
+    void carryStatistics(BlockedBloomFilter old) {
+	queries.add(old.queries.sum());
+	negatives.add(old.negatives.sum());
+	falsePositives.add(old.falsePositives.sum());
+    }
+
+    private int block(int hash) {
+	int h = hash * 0x85EBCA6B;
+	return ((h ^ (h >>> 15)) & blockMask) * BLOCK_LONGS;
+    }
+
+    /**
+     * The BITS_PER_KEY bit positions within the block are taken 9
+     * bits at a time from the well mixed upper 54 bits of a second
+     * multiplicative hash.
+     */
+    private static long positions(int hash) {
+	return (hash * 0x9E3779B97F4A7C15L) >>> 10;
+    }
+
+    public void add(int hash) {
+	int block = block(hash);
+	long p = positions(hash);
+	for (int i = 0; i < BITS_PER_KEY; ++i, p >>>= 9) {
+	    int bit = (int) p & 511;
+	    bits[block + (bit >>> 6)] |= 1L << bit;
+	}
+	nrKeys++;
+    }
+
+    /**
+     * @return false if a key with this hash has definitely not been added.
+     */
+    public boolean mightContain(int hash) {
+	if (Metrics.ENABLED) queries.increment();
+	int block = block(hash);
+	long p = positions(hash);
+	for (int i = 0; i < BITS_PER_KEY; ++i, p >>>= 9) {
+	    int bit = (int) p & 511;
+	    if ((bits[block + (bit >>> 6)] & (1L << bit)) == 0) {
+		if (Metrics.ENABLED) negatives.increment();
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * To be called by the guarded set when mightContain said true, but the key was not there.
+     */
+    void falsePositive() {
+	if (Metrics.ENABLED) falsePositives.increment();
+    }
+
+    public void clear() {
+	Arrays.fill(bits, 0);
+	nrKeys = 0;
+    }
+
+    /**
+     * @return number of keys added since the filter was created or cleared, including any removed since.
+     */
+    public long getNrKeys() {
+	return nrKeys;
+    }
+
+    public long getMemoryBytes() {
+	return bits.length * 8L;
+    }
+
+    /**
+     * @return the fraction of all bits that are set.
+     */
+    public double getFillRatio() {
+	long set = 0;
+	for (long word: bits) set += Long.bitCount(word);
+	return set / (bits.length * 64.0);
+    }
+
+    /**
+     * @return the expected false positive rate at the current fill,
+     * (roughly the fill ratio to the power of the bits per key).
+     */
+    public double getEstimatedFalsePositiveRate() {
+	return Math.pow(getFillRatio(), BITS_PER_KEY);
+    }
+
+    /**
+     * @return number of queries answered, 0 unless Metrics.ENABLED.
+     */
+    public long getQueries() {
+	return queries.sum();
+    }
+
+    /**
+     * @return number of queries the filter answered negatively on its own.
+     */
+    public long getNegatives() {
+	return negatives.sum();
+    }
+
+    public long getFalsePositives() {
+	return falsePositives.sum();
+    }
+
+    /**
+     * @return the fraction of queries for absent keys that the filter let through, as observed so far.
+     */
+    public double getObservedFalsePositiveRate() {
+	long absent = getNegatives() + getFalsePositives();
+	return absent == 0 ? 0 : (double) getFalsePositives() / absent;
+    }
+
+    @Override
+    public String toString() {
+	return String.format("[BlockedBloomFilter: %d bytes, %d keys, estimated fpp %.5f, observed fpp %.5f]",
+			     getMemoryBytes(), nrKeys, getEstimatedFalsePositiveRate(), getObservedFalsePositiveRate());
+    }
+}
@@ -0,0 +1,327 @@
+package org.bifrost.simplehashset;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * An insertion ordered hashset with a compact, dict-like layout.
+ *
+ * The elements and their cached hashes are appended to two dense
+ * arrays in insertion order. The hash table itself is only an int[]
+ * index into those arrays, probed linearly like SimpleHashSet's table
+ * and with the same backward-shift deletion. Removing an element
+ * leaves a hole in the dense arrays, which is squeezed out the next
+ * time the arrays are rebuilt.
+ *
+ * Iteration is thus a sequential scan of the dense arrays, in
+ * insertion order, costing O(number of elements added since the last
+ * rebuild) rather than O(table size), and the order is the same from
+ * run to run. That order is paid for in memory: besides the 4
+ * bytes per slot of the index, the dense arrays hold a reference
+ * and a hash per element for every slot the load factor allows,
+ * about 10 bytes per slot at the default load factor against the 8
+ * of SimpleHashSet's reference and hash.
+ *
+ * The set shrinks when removals leave it a quarter full, and
+ * trimToSize shrinks it as far as possible.
+ */
+public class CompactSimpleHashSet<T> extends AbstractSet<T> {
+    /** The elements in insertion order, null for a removed element */
+    Object[] keys;
+    int[] hashes;
+    /** Number of positions of keys in use, including holes */
+    int used;
+    /** Hash table of positions in keys, plus one, so that 0 is a free slot */
+    int[] index;
+    int mask;
+    int size;
+    final float loadFactor;
+    /** Number of structural modifications, for the iterators */
+    int modCount;
+
+    public CompactSimpleHashSet() {
+	this(SimpleHashSet.DEFAULT_INITIAL_CAPACITY, SimpleHashSet.DEFAULT_LOAD_FACTOR);
+    }
+
+    public CompactSimpleHashSet(Collection<? extends T> coll) {
+	this(coll.size(), SimpleHashSet.DEFAULT_LOAD_FACTOR);
+	addAll(coll);
+    }
+
+    public CompactSimpleHashSet(int initialCapacity) {
+	this(initialCapacity, SimpleHashSet.DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * @see SimpleHashSet#SimpleHashSet(int, float)
+     */
+    public CompactSimpleHashSet(int initialCapacity, float loadFactor) {
+	if (initialCapacity < 0) throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+	if (!(loadFactor > 0 && loadFactor < 1)) throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+	this.loadFactor = loadFactor;
+	keys = new Object[0];
+	hashes = new int[0];
+	resize(initialCapacity);
+    }
+
+    /**
+     * Rebuilds the dense arrays without holes, with room for capacity
+     * elements, and the index to go with them.
+     */
+    void resize(int capacity) {
+	int tableSize = SimpleHashSet.tableSize(capacity, loadFactor);
+	capacity = Math.max(capacity, Math.min((int) Math.ceil(tableSize * loadFactor), tableSize - 1));
+	Object[] newKeys = new Object[capacity];
+	int[] newHashes = new int[capacity];
+	int n = 0;
+	for (int i = 0; i < used; ++i) {
+	    if (keys[i] == null) continue;
+	    newKeys[n] = keys[i];
+	    newHashes[n++] = hashes[i];
+	}
+	assert n == size;
+	keys = newKeys;
+	hashes = newHashes;
+	used = n;
+	index = new int[tableSize];
+	mask = tableSize - 1;
+	for (int i = 0; i < n; ++i) {
+	    int pos = newHashes[i] & mask;
+	    while (index[pos] != 0) pos = (pos + 1) & mask;
+	    index[pos] = i + 1;
+	}
+	modCount++;
+    }
+
+    /**
+     * @return the index slot pointing to the (masked) key k with hash h, or -1 if it is not present.
+     */
+    int find(Object k, int h) {
+	int[] index = this.index;
+	for (int pos = h & mask; ; pos = (pos + 1) & mask) {
+	    int e = index[pos] - 1;
+	    if (e < 0) return -1;
+	    if (hashes[e] == h && (keys[e] == k || k.equals(keys[e]))) return pos;
+	}
+    }
+
+    @Override
+    public boolean add(T t) {
+	Object k = SimpleHashSet.maskNull(t);
+	int h = SimpleHashSet.hash(t);
+	int pos = h & mask;
+	for (int e; (e = index[pos] - 1) >= 0; pos = (pos + 1) & mask) {
+	    if (hashes[e] == h && (keys[e] == k || k.equals(keys[e]))) return false;
+	}
+	if (used == keys.length) {
+	    // Squeeze out the holes if that frees at least a quarter of the arrays, otherwise grow
+	    resize(size < used - used / 4 ? used : keys.length * 2);
+	    pos = h & mask;
+	    while (index[pos] != 0) pos = (pos + 1) & mask;
+	}
+	keys[used] = k;
+	hashes[used] = h;
+	index[pos] = ++used;
+	size++;
+	modCount++;
+	return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+	return find(SimpleHashSet.maskNull(o), SimpleHashSet.hash(o)) >= 0;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+	int pos = find(SimpleHashSet.maskNull(o), SimpleHashSet.hash(o));
+	if (pos < 0) return false;
+	removeAt(pos);
+	shrinkIfSparse();
+	return true;
+    }
+
+    /**
+     * Removes the element the index slot pos points to, leaving a hole in the dense arrays.
+     */
+    void removeAt(int pos) {
+	int e = index[pos] - 1;
+	keys[e] = null;
+	if (e == used - 1) used--;
+	size--;
+	modCount++;
+	shiftIndex(pos);
+    }
+
+    /**
+     * @see SimpleHashSet#shiftKeys(int)
+     */
+    private void shiftIndex(int pos) {
+	int[] index = this.index;
+	for (;;) {
+	    int last = pos;
+	    int cur;
+	    for (pos = (last + 1) & mask; ; pos = (pos + 1) & mask) {
+		if ((cur = index[pos]) == 0) {
+		    index[last] = 0;
+		    return;
+		}
+		int slot = hashes[cur - 1] & mask;
+		if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos) break;
+	    }
+	    index[last] = cur;
+	}
+    }
+
+    /**
+     * Halves the set once it is only a quarter full, so that a set
+     * emptied by bulk deletion does not keep its peak size.
+     */
+    private void shrinkIfSparse() {
+	if (size < keys.length / 4 && keys.length > SimpleHashSet.DEFAULT_INITIAL_CAPACITY) {
+	    resize(Math.max(size * 2, SimpleHashSet.DEFAULT_INITIAL_CAPACITY));
+	}
+    }
+
+    /**
+     * Shrinks the set to the smallest table that holds its elements.
+     */
+    public void trimToSize() {
+	if (SimpleHashSet.tableSize(size, loadFactor) < index.length || used > size) resize(size);
+    }
+
+    /**
+     * @return the number of elements the set can hold before it has to grow.
+     */
+    public int capacity() {
+	return keys.length;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super T> predicate) {
+	boolean modified = false;
+	try {
+	    for (int i = 0; i < used; ++i) {
+		if (keys[i] != null && predicate.test(SimpleHashSet.<T>unmaskNull(keys[i]))) {
+		    keys[i] = null;
+		    size--;
+		    modified = true;
+		}
+	    }
+	} finally {
+	    // Also if predicate throws, so the index never points at the holes
+	    if (modified) resize(Math.max(size, keys.length / 4 > size ? size * 2 : keys.length));
+	}
+	return modified;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+	if (c.size() < size) return super.removeAll(c);
+	return removeIf(new Predicate<Object>() {
+		public boolean test(Object o) {
+		    return c.contains(o);
+		}
+	    });
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+	return removeIf(new Predicate<Object>() {
+		public boolean test(Object o) {
+		    return !c.contains(o);
+		}
+	    });
+    }
+
+    @Override
+    public int size() {
+	return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+	return size == 0;
+    }
+
+    @Override
+    public void clear() {
+	if (size == 0 && used == 0) return;
+	Arrays.fill(keys, 0, used, null);
+	Arrays.fill(index, 0);
+	used = size = 0;
+	modCount++;
+    }
+
+    @Override
+    public Object clone() {
+	CompactSimpleHashSet<T> clone = new CompactSimpleHashSet<T>(0, loadFactor);
+	clone.keys = keys.clone();
+	clone.hashes = hashes.clone();
+	clone.used = used;
+	clone.index = index.clone();
+	clone.mask = mask;
+	clone.size = size;
+	return clone;
+    }
+
+    @Override
+    public void forEach(Consumer<? super T> action) {
+	Object[] keys = this.keys;
+	int expectedModCount = modCount;
+	for (int i = 0; i < used; ++i) {
+	    if (keys[i] != null) action.accept(SimpleHashSet.<T>unmaskNull(keys[i]));
+	}
+	if (modCount != expectedModCount) throw new ConcurrentModificationException();
+    }
+
+    /**
+     * Iterates in insertion order. Removing through the iterator only
+     * leaves a hole behind, so it never moves elements not yet seen.
+     */
+    class CompactSimpleHashSetIterator implements Iterator<T> {
+	int pos = 0;
+	int last = -1;
+	int expectedModCount = modCount;
+
+	@Override
+	public boolean hasNext() {
+	    while (pos < used && keys[pos] == null) pos++;
+	    return pos < used;
+	}
+
+	@Override
+	public T next() {
+	    if (modCount != expectedModCount) throw new ConcurrentModificationException();
+	    if (!hasNext()) throw new NoSuchElementException();
+	    return SimpleHashSet.<T>unmaskNull(keys[last = pos++]);
+	}
+
+	@Override
+	public void remove() {
+	    if (last == -1) throw new IllegalStateException();
+	    if (modCount != expectedModCount) throw new ConcurrentModificationException();
+	    removeAt(find(keys[last], hashes[last]));
+	    expectedModCount = modCount;
+	    last = -1;
+	}
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+	return new CompactSimpleHashSetIterator();
+    }
+
+    @Override
+    public Spliterator<T> spliterator() {
+	return Spliterators.spliterator(this, Spliterator.DISTINCT | Spliterator.ORDERED);
+    }
+}
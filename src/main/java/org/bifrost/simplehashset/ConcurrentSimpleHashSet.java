@@ -0,0 +1,117 @@
+package org.bifrost.simplehashset;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A thread-safe counterpart to SimpleHashSet, based on ConcurrentHashMap
+ * the way SimpleHashSet used to be based on HashMap.
+ *
+ * This gives us what Collections.synchronizedSet can not:
+ * contains never locks, add and remove only lock the single bin they
+ * touch (or none at all when it is empty), and a resize is done
+ * incrementally with every thread that writes during the resize
+ * helping to move a range of bins, so there is no stop-the-world
+ * rehash. add and remove report atomically whether they changed the
+ * set. Iterators are weakly consistent: they never throw
+ * ConcurrentModificationException, return each element at most once
+ * and see all elements present during the whole iteration.
+ *
+ * Unlike ConcurrentHashMap, null is allowed as an element.
+ */
+public class ConcurrentSimpleHashSet<T> extends AbstractSet<T> {
+    /**
+     * The value of every mapping. Unlike SimpleHashSet's old per-element Object(), it is shared.
+     */
+    private static final Boolean PRESENT = Boolean.TRUE;
+
+    private final ConcurrentHashMap<Object, Boolean> map;
+
+    public ConcurrentSimpleHashSet() {
+	map = new ConcurrentHashMap<Object, Boolean>();
+    }
+
+    public ConcurrentSimpleHashSet(int initialCapacity) {
+	map = new ConcurrentHashMap<Object, Boolean>(initialCapacity);
+    }
+
+    /**
+     * @param concurrencyLevel the estimated number of concurrently updating threads, used as a sizing hint.
+     */
+    public ConcurrentSimpleHashSet(int initialCapacity, float loadFactor, int concurrencyLevel) {
+	map = new ConcurrentHashMap<Object, Boolean>(initialCapacity, loadFactor, concurrencyLevel);
+    }
+
+    public ConcurrentSimpleHashSet(Collection<? extends T> coll) {
+	this(coll.size());
+	for (T elem: coll) {
+	    add(elem);
+	}
+    }
+
+    /**
+     * Atomically adds t if it is not present.
+     *
+     * @return true if this call added t, false if it was already there.
+     */
+    @Override
+    public boolean add(T t) {
+	return map.putIfAbsent(SimpleHashSet.maskNull(t), PRESENT) == null;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+	return map.containsKey(SimpleHashSet.maskNull(o));
+    }
+
+    /**
+     * Atomically removes o.
+     *
+     * @return true if this call removed o.
+     */
+    @Override
+    public boolean remove(Object o) {
+	return map.remove(SimpleHashSet.maskNull(o)) != null;
+    }
+
+    @Override
+    public void clear() {
+	map.clear();
+    }
+
+    @Override
+    public int size() {
+	return map.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+	return map.isEmpty();
+    }
+
+    /**
+     * @return a weakly consistent iterator, see the class comment. remove() is supported.
+     */
+    @Override
+    public Iterator<T> iterator() {
+	final Iterator<Object> iter = map.keySet().iterator();
+	return new Iterator<T>() {
+	    @Override
+	    public boolean hasNext() {
+		return iter.hasNext();
+	    }
+
+	    @Override
+	    public T next() {
+		return SimpleHashSet.unmaskNull(iter.next());
+	    }
+
+	    @Override
+	    public void remove() {
+		iter.remove();
+	    }
+	};
+    }
+}
@@ -0,0 +1,222 @@
+package org.bifrost.simplehashset;
+
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+
+/**
+ * A set of primitive ints, built like SimpleHashSet (linear probing,
+ * backward-shift deletion) but without boxing: a member costs a
+ * single slot in an int[], that is 4 bytes at full load and on
+ * average 4 / loadFactor bytes. See PrimitiveHashSet for what it
+ * shares with LongHashSet.
+ *
+ * The boxed methods inherited from Set work as well, but the
+ * primitive add/contains/remove, iterator and forEachInt should be
+ * used where it matters.
+ */
+public class IntHashSet extends PrimitiveHashSet<Integer> {
+    int[] keys;
+
+    public IntHashSet() {
+	this(SimpleHashSet.DEFAULT_INITIAL_CAPACITY, SimpleHashSet.DEFAULT_LOAD_FACTOR);
+    }
+
+    public IntHashSet(int initialCapacity) {
+	this(initialCapacity, SimpleHashSet.DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * @see SimpleHashSet#SimpleHashSet(int, float)
+     */
+    public IntHashSet(int initialCapacity, float loadFactor) {
+	super(initialCapacity, loadFactor);
+	allocate(SimpleHashSet.tableSize(initialCapacity, loadFactor));
+    }
+
+    @Override
+    void newTable(int capacity) {
+	keys = new int[capacity];
+    }
+
+    static int hash(int k) {
+	int h = k * 0x9E3779B9;
+	return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return true if k was not already in the set.
+     */
+    public boolean add(int k) {
+	if (k == 0) {
+	    if (containsZero) return false;
+	    containsZero = true;
+	    size++;
+	    return true;
+	}
+	int[] keys = this.keys;
+	int pos = hash(k) & mask;
+	for (int cur; (cur = keys[pos]) != 0; pos = (pos + 1) & mask) {
+	    if (cur == k) return false;
+	}
+	keys[pos] = k;
+	if (++size > maxFill) rehash((mask + 1) * 2);
+	return true;
+    }
+
+    public boolean contains(int k) {
+	if (k == 0) return containsZero;
+	int[] keys = this.keys;
+	for (int pos = hash(k) & mask; ; pos = (pos + 1) & mask) {
+	    int cur = keys[pos];
+	    if (cur == 0) return false;
+	    if (cur == k) return true;
+	}
+    }
+
+    /**
+     * @return true if k was in the set.
+     */
+    public boolean remove(int k) {
+	if (k == 0) {
+	    if (!containsZero) return false;
+	    containsZero = false;
+	    size--;
+	    return true;
+	}
+	int[] keys = this.keys;
+	for (int pos = hash(k) & mask; ; pos = (pos + 1) & mask) {
+	    int cur = keys[pos];
+	    if (cur == 0) return false;
+	    if (cur == k) {
+		size--;
+		shiftKeys(pos, null);
+		return true;
+	    }
+	}
+    }
+
+    private void rehash(int capacity) {
+	int[] oldKeys = keys;
+	allocate(capacity);
+	for (int i = 0; i < oldKeys.length; ++i) {
+	    int k = oldKeys[i];
+	    if (k == 0) continue;
+	    int pos = hash(k) & mask;
+	    while (keys[pos] != 0) pos = (pos + 1) & mask;
+	    keys[pos] = k;
+	}
+    }
+
+    /**
+     * @see SimpleHashSet#shiftKeys(int)
+     */
+    private void shiftKeys(int pos, IntHashSetIterator iterator) {
+	int[] keys = this.keys;
+	for (;;) {
+	    int last = pos;
+	    int cur;
+	    for (pos = (last + 1) & mask; ; pos = (pos + 1) & mask) {
+		if ((cur = keys[pos]) == 0) {
+		    keys[last] = 0;
+		    return;
+		}
+		if (movesBack(last, hash(cur) & mask, pos)) break;
+	    }
+	    if (iterator != null && pos < last) iterator.addWrapped(cur);
+	    keys[last] = cur;
+	}
+    }
+
+    @Override
+    public boolean add(Integer k) {
+	return add(k.intValue());
+    }
+
+    @Override
+    public boolean contains(Object o) {
+	return o instanceof Integer && contains(((Integer) o).intValue());
+    }
+
+    @Override
+    public boolean remove(Object o) {
+	return o instanceof Integer && remove(((Integer) o).intValue());
+    }
+
+    @Override
+    public void clear() {
+	if (size == 0) return;
+	Arrays.fill(keys, 0);
+	containsZero = false;
+	size = 0;
+    }
+
+    @Override
+    public Object clone() {
+	IntHashSet clone = new IntHashSet(0, loadFactor);
+	copyTo(clone);
+	clone.keys = keys.clone();
+	return clone;
+    }
+
+    /**
+     * Calls action for every member, without boxing.
+     */
+    public void forEachInt(IntConsumer action) {
+	if (containsZero) action.accept(0);
+	int[] keys = this.keys;
+	for (int i = 0; i <= mask; ++i) {
+	    if (keys[i] != 0) action.accept(keys[i]);
+	}
+    }
+
+    public int[] toIntArray() {
+	final int[] res = new int[size];
+	forEachInt(new IntConsumer() {
+		int i = 0;
+		public void accept(int k) {
+		    res[i++] = k;
+		}
+	    });
+	return res;
+    }
+
+    final class IntHashSetIterator extends TableIterator implements PrimitiveIterator.OfInt {
+	int[] wrapped;
+
+	void addWrapped(int k) {
+	    if (wrapped == null) {
+		wrapped = new int[2];
+	    } else if (nrWrapped == wrapped.length) {
+		wrapped = Arrays.copyOf(wrapped, nrWrapped * 2);
+	    }
+	    wrapped[nrWrapped++] = k;
+	}
+
+	@Override
+	boolean isFree(int slot) {
+	    return keys[slot] == 0;
+	}
+
+	@Override
+	void removeWrapped(int i) {
+	    IntHashSet.this.remove(wrapped[i]);
+	}
+
+	@Override
+	void removeAt(int slot) {
+	    shiftKeys(slot, this);
+	}
+
+	@Override
+	public int nextInt() {
+	    int slot = advance();
+	    return slot > mask ? 0 : slot < 0 ? wrapped[-slot - 1] : keys[slot];
+	}
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+	return new IntHashSetIterator();
+    }
+}
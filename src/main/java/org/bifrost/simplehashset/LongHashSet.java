@@ -0,0 +1,226 @@
+package org.bifrost.simplehashset;
+
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+import java.util.function.LongConsumer;
+
+/**
+ * A set of primitive longs, built like SimpleHashSet (linear probing,
+ * backward-shift deletion) but without boxing: a member costs a
+ * single slot in a long[], that is 8 bytes at full load and on
+ * average 8 / loadFactor bytes. See PrimitiveHashSet for what it
+ * shares with IntHashSet.
+ *
+ * The boxed methods inherited from Set work as well, but the
+ * primitive add/contains/remove, iterator and forEachLong should be
+ * used where it matters.
+ */
+public class LongHashSet extends PrimitiveHashSet<Long> {
+    /** 2^64 / golden ratio */
+    private static final long LONG_PHI = 0x9E3779B97F4A7C15L;
+
+    long[] keys;
+
+    public LongHashSet() {
+	this(SimpleHashSet.DEFAULT_INITIAL_CAPACITY, SimpleHashSet.DEFAULT_LOAD_FACTOR);
+    }
+
+    public LongHashSet(int initialCapacity) {
+	this(initialCapacity, SimpleHashSet.DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * @see SimpleHashSet#SimpleHashSet(int, float)
+     */
+    public LongHashSet(int initialCapacity, float loadFactor) {
+	super(initialCapacity, loadFactor);
+	allocate(SimpleHashSet.tableSize(initialCapacity, loadFactor));
+    }
+
+    @Override
+    void newTable(int capacity) {
+	keys = new long[capacity];
+    }
+
+    static int hash(long k) {
+	long h = k * LONG_PHI;
+	h ^= h >>> 32;
+	return (int) (h ^ (h >>> 16));
+    }
+
+    /**
+     * @return true if k was not already in the set.
+     */
+    public boolean add(long k) {
+	if (k == 0) {
+	    if (containsZero) return false;
+	    containsZero = true;
+	    size++;
+	    return true;
+	}
+	long[] keys = this.keys;
+	int pos = hash(k) & mask;
+	for (long cur; (cur = keys[pos]) != 0; pos = (pos + 1) & mask) {
+	    if (cur == k) return false;
+	}
+	keys[pos] = k;
+	if (++size > maxFill) rehash((mask + 1) * 2);
+	return true;
+    }
+
+    public boolean contains(long k) {
+	if (k == 0) return containsZero;
+	long[] keys = this.keys;
+	for (int pos = hash(k) & mask; ; pos = (pos + 1) & mask) {
+	    long cur = keys[pos];
+	    if (cur == 0) return false;
+	    if (cur == k) return true;
+	}
+    }
+
+    /**
+     * @return true if k was in the set.
+     */
+    public boolean remove(long k) {
+	if (k == 0) {
+	    if (!containsZero) return false;
+	    containsZero = false;
+	    size--;
+	    return true;
+	}
+	long[] keys = this.keys;
+	for (int pos = hash(k) & mask; ; pos = (pos + 1) & mask) {
+	    long cur = keys[pos];
+	    if (cur == 0) return false;
+	    if (cur == k) {
+		size--;
+		shiftKeys(pos, null);
+		return true;
+	    }
+	}
+    }
+
+    private void rehash(int capacity) {
+	long[] oldKeys = keys;
+	allocate(capacity);
+	for (int i = 0; i < oldKeys.length; ++i) {
+	    long k = oldKeys[i];
+	    if (k == 0) continue;
+	    int pos = hash(k) & mask;
+	    while (keys[pos] != 0) pos = (pos + 1) & mask;
+	    keys[pos] = k;
+	}
+    }
+
+    /**
+     * @see SimpleHashSet#shiftKeys(int)
+     */
+    private void shiftKeys(int pos, LongHashSetIterator iterator) {
+	long[] keys = this.keys;
+	for (;;) {
+	    int last = pos;
+	    long cur;
+	    for (pos = (last + 1) & mask; ; pos = (pos + 1) & mask) {
+		if ((cur = keys[pos]) == 0) {
+		    keys[last] = 0;
+		    return;
+		}
+		if (movesBack(last, hash(cur) & mask, pos)) break;
+	    }
+	    if (iterator != null && pos < last) iterator.addWrapped(cur);
+	    keys[last] = cur;
+	}
+    }
+
+    @Override
+    public boolean add(Long k) {
+	return add(k.longValue());
+    }
+
+    @Override
+    public boolean contains(Object o) {
+	return o instanceof Long && contains(((Long) o).longValue());
+    }
+
+    @Override
+    public boolean remove(Object o) {
+	return o instanceof Long && remove(((Long) o).longValue());
+    }
+
+    @Override
+    public void clear() {
+	if (size == 0) return;
+	Arrays.fill(keys, 0);
+	containsZero = false;
+	size = 0;
+    }
+
+    @Override
+    public Object clone() {
+	LongHashSet clone = new LongHashSet(0, loadFactor);
+	copyTo(clone);
+	clone.keys = keys.clone();
+	return clone;
+    }
+
+    /**
+     * Calls action for every member, without boxing.
+     */
+    public void forEachLong(LongConsumer action) {
+	if (containsZero) action.accept(0);
+	long[] keys = this.keys;
+	for (int i = 0; i <= mask; ++i) {
+	    if (keys[i] != 0) action.accept(keys[i]);
+	}
+    }
+
+    public long[] toLongArray() {
+	final long[] res = new long[size];
+	forEachLong(new LongConsumer() {
+		int i = 0;
+		public void accept(long k) {
+		    res[i++] = k;
+		}
+	    });
+	return res;
+    }
+
+    final class LongHashSetIterator extends TableIterator implements PrimitiveIterator.OfLong {
+	long[] wrapped;
+
+	void addWrapped(long k) {
+	    if (wrapped == null) {
+		wrapped = new long[2];
+	    } else if (nrWrapped == wrapped.length) {
+		wrapped = Arrays.copyOf(wrapped, nrWrapped * 2);
+	    }
+	    wrapped[nrWrapped++] = k;
+	}
+
+	@Override
+	boolean isFree(int slot) {
+	    return keys[slot] == 0;
+	}
+
+	@Override
+	void removeWrapped(int i) {
+	    LongHashSet.this.remove(wrapped[i]);
+	}
+
+	@Override
+	void removeAt(int slot) {
+	    shiftKeys(slot, this);
+	}
+
+	@Override
+	public long nextLong() {
+	    int slot = advance();
+	    return slot > mask ? 0 : slot < 0 ? wrapped[-slot - 1] : keys[slot];
+	}
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+	return new LongHashSetIterator();
+    }
+}
@@ -0,0 +1,475 @@
+package org.bifrost.simplehashset;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A hash set of fixed-width keys that keeps its table outside the
+ * java heap, so even hundreds of millions of members cost the
+ * garbage collector nothing.
+ *
+ * Keys are byte sequences of at most keyWidth bytes, or longs (which
+ * are stored as their 8 big-endian bytes, so keyWidth must be at
+ * least 8 to use them). The table is laid out like SimpleHashSet's:
+ * linear probing with backward-shift deletion, one slot per key
+ * holding a status byte (0 for free, else 1 + the key length)
+ * followed by keyWidth key bytes.
+ *
+ * The table either lives in direct ByteBuffers (allocate) or in a
+ * memory-mapped file (open), in which case the set survives restarts
+ * and reopens instantly without rebuilding anything. The table is
+ * split in pages of at most 1GB, as a single ByteBuffer can not be
+ * larger than 2GB.
+ *
+ * A file backed set is rewritten to a new file that replaces the old
+ * one when it grows, so the old contents stay intact until the new
+ * table is complete. Single add and remove operations are however
+ * not atomic with respect to crashes; use flush() at points where the
+ * file must be consistent.
+ *
+ * Call close() when done: the native memory or mapping is released
+ * right away instead of whenever the collector gets to the buffers.
+ * The set can not be used afterwards. Not thread safe.
+ */
+public final class OffHeapHashSet implements Closeable {
+    static final long MAGIC = 0x4f66664865617001L;
+    static final int HEADER_BYTES = 64;
+    static final int MAX_PAGE_BYTES = 1 << 30;
+    /** 2^64 / golden ratio */
+    private static final long LONG_PHI = 0x9E3779B97F4A7C15L;
+
+    private final int keyWidth;
+    private final int slotSize;
+    private final float loadFactor;
+    private final Path file;
+
+    private ByteBuffer header;
+    private ByteBuffer[] pages;
+    private int pageShift;
+    private long capacity;
+    private long mask;
+    private long size;
+    private long maxFill;
+
+    private OffHeapHashSet(int keyWidth, float loadFactor, Path file) {
+	if (keyWidth < 1 || keyWidth > 254) throw new IllegalArgumentException("Illegal key width: " + keyWidth);
+	if (!(loadFactor > 0 && loadFactor < 1)) throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+	this.keyWidth = keyWidth;
+	this.slotSize = 1 + keyWidth;
+	this.loadFactor = loadFactor;
+	this.file = file;
+    }
+
+    /**
+     * Creates a set in direct memory.
+     *
+     * @param keyWidth the maximal key length in bytes.
+     * @param expected the number of keys the set can hold before it has to grow.
+     */
+    public static OffHeapHashSet allocate(int keyWidth, long expected) {
+	OffHeapHashSet set = new OffHeapHashSet(keyWidth, SimpleHashSet.DEFAULT_LOAD_FACTOR, null);
+	set.createTable(tableSize(expected, set.loadFactor));
+	return set;
+    }
+
+    /**
+     * Opens the set stored in file, or creates it there if the file does not exist.
+     *
+     * @param keyWidth the maximal key length in bytes, must match the one the file was created with.
+     * @param expected the number of keys a new set can hold before it has to grow.
+     */
+    public static OffHeapHashSet open(Path file, int keyWidth, long expected) throws IOException {
+	OffHeapHashSet set = new OffHeapHashSet(keyWidth, SimpleHashSet.DEFAULT_LOAD_FACTOR, file);
+	if (Files.exists(file)) {
+	    set.openTable();
+	} else {
+	    set.createTable(tableSize(expected, set.loadFactor));
+	    set.commitTable();
+	}
+	return set;
+    }
+
+    static long tableSize(long expected, float loadFactor) {
+	long n = Math.max(2, (long) Math.ceil(expected / (double) loadFactor));
+	return Long.highestOneBit(n - 1) << 1;
+    }
+
+    private Path tmpFile() {
+	return Paths.get(file + ".tmp");
+    }
+
+    /**
+     * Creates an empty table. For file backed sets it is created in a
+     * temporary file, that replaces the real one when commitTable is called.
+     */
+    private void createTable(long capacity) {
+	try {
+	    if (file == null) {
+		mapTable(null, capacity);
+	    } else {
+		Files.deleteIfExists(tmpFile());
+		mapTable(tmpFile(), capacity);
+		header.putLong(0, MAGIC);
+		header.putInt(8, keyWidth);
+		header.putLong(16, capacity);
+		header.putLong(24, 0);
+	    }
+	} catch (IOException e) {
+	    throw new IllegalStateException("Could not create " + file, e);
+	}
+	size = 0;
+    }
+
+    private void commitTable() {
+	if (file == null) return;
+	try {
+	    flush();
+	    Files.move(tmpFile(), file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	} catch (IOException e) {
+	    throw new IllegalStateException("Could not replace " + file, e);
+	}
+    }
+
+    private void openTable() throws IOException {
+	long capacity;
+	FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	try {
+	    ByteBuffer h = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+	    if (h.getLong(0) != MAGIC) throw new IOException(file + " is not an OffHeapHashSet");
+	    if (h.getInt(8) != keyWidth) {
+		throw new IllegalArgumentException(file + " has key width " + h.getInt(8) + ", not " + keyWidth);
+	    }
+	    capacity = h.getLong(16);
+	    size = h.getLong(24);
+	    release(h);
+	} finally {
+	    channel.close();
+	}
+	mapTable(file, capacity);
+    }
+
+    /**
+     * Sets up pages for a table of the given capacity, in direct memory if path is null, else mapped from path.
+     */
+    private void mapTable(Path path, long capacity) throws IOException {
+	this.capacity = capacity;
+	this.mask = capacity - 1;
+	this.maxFill = Math.min((long) Math.ceil(capacity * (double) loadFactor), capacity - 1);
+	long pageSlots = Math.min(capacity, Long.highestOneBit(MAX_PAGE_BYTES / slotSize));
+	this.pageShift = Long.numberOfTrailingZeros(pageSlots);
+	int nrPages = (int) (capacity / pageSlots);
+	int pageBytes = (int) (pageSlots * slotSize);
+	pages = new ByteBuffer[nrPages];
+	if (path == null) {
+	    header = null;
+	    for (int i = 0; i < nrPages; ++i) pages[i] = ByteBuffer.allocateDirect(pageBytes);
+	    return;
+	}
+	FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					       StandardOpenOption.WRITE);
+	try {
+	    header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+	    for (int i = 0; i < nrPages; ++i) {
+		pages[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + (long) i * pageBytes, pageBytes);
+	    }
+	} finally {
+	    // The mappings stay valid after the channel is closed.
+	    channel.close();
+	}
+    }
+
+    private ByteBuffer page(long slot) {
+	return pages[(int) (slot >>> pageShift)];
+    }
+
+    private int offset(long slot) {
+	return (int) (slot & ((1L << pageShift) - 1)) * slotSize;
+    }
+
+    private static long mix(long h, long chunk) {
+	h = (h ^ chunk) * LONG_PHI;
+	return h ^ (h >>> 32);
+    }
+
+    /**
+     * The hash of a key is computed over its length and its bytes read as big-endian longs,
+     * so a long and its 8 byte encoding hash alike.
+     */
+    static long hash(long k) {
+	return mix(8, k);
+    }
+
+    static long hash(byte[] key, int off, int len) {
+	long h = len;
+	for (int i = 0; i < len; i += 8) {
+	    long chunk = 0;
+	    for (int j = 0; j < 8; ++j) {
+		chunk = (chunk << 8) | (i + j < len ? key[off + i + j] & 0xff : 0);
+	    }
+	    h = mix(h, chunk);
+	}
+	return h;
+    }
+
+    private long hashSlot(ByteBuffer page, int offset) {
+	int len = (page.get(offset) & 0xff) - 1;
+	long h = len;
+	for (int i = 0; i < len; i += 8) {
+	    long chunk = 0;
+	    for (int j = 0; j < 8; ++j) {
+		chunk = (chunk << 8) | (i + j < len ? page.get(offset + 1 + i + j) & 0xff : 0);
+	    }
+	    h = mix(h, chunk);
+	}
+	return h;
+    }
+
+    private boolean slotEquals(ByteBuffer page, int offset, byte[] key, int off, int len) {
+	for (int i = 0; i < len; ++i) {
+	    if (page.get(offset + 1 + i) != key[off + i]) return false;
+	}
+	return true;
+    }
+
+    private void checkOpen() {
+	if (pages == null) throw new IllegalStateException("OffHeapHashSet is closed");
+    }
+
+    private void checkKey(int len) {
+	if (len > keyWidth) throw new IllegalArgumentException("Key of " + len + " bytes, key width is " + keyWidth);
+    }
+
+    /**
+     * @return the slot holding key, or (-(free slot) - 1) where it would be inserted.
+     */
+    private long find(long k) {
+	for (long slot = hash(k) & mask; ; slot = (slot + 1) & mask) {
+	    ByteBuffer page = page(slot);
+	    int offset = offset(slot);
+	    int status = page.get(offset) & 0xff;
+	    if (status == 0) return -slot - 1;
+	    if (status == 9 && page.getLong(offset + 1) == k) return slot;
+	}
+    }
+
+    private long find(byte[] key, int off, int len) {
+	checkKey(len);
+	for (long slot = hash(key, off, len) & mask; ; slot = (slot + 1) & mask) {
+	    ByteBuffer page = page(slot);
+	    int offset = offset(slot);
+	    int status = page.get(offset) & 0xff;
+	    if (status == 0) return -slot - 1;
+	    if (status == len + 1 && slotEquals(page, offset, key, off, len)) return slot;
+	}
+    }
+
+    public boolean add(long k) {
+	if (keyWidth < 8) throw new IllegalArgumentException("long keys need a key width of at least 8");
+	checkOpen();
+	long slot = find(k);
+	if (slot >= 0) return false;
+	slot = -slot - 1;
+	ByteBuffer page = page(slot);
+	int offset = offset(slot);
+	page.put(offset, (byte) 9);
+	page.putLong(offset + 1, k);
+	grown();
+	return true;
+    }
+
+    public boolean add(byte[] key) {
+	return add(key, 0, key.length);
+    }
+
+    /**
+     * Adds the len bytes of key starting at off.
+     *
+     * @return true if they were not already in the set.
+     */
+    public boolean add(byte[] key, int off, int len) {
+	checkOpen();
+	long slot = find(key, off, len);
+	if (slot >= 0) return false;
+	slot = -slot - 1;
+	ByteBuffer page = page(slot);
+	int offset = offset(slot);
+	page.put(offset, (byte) (len + 1));
+	for (int i = 0; i < len; ++i) page.put(offset + 1 + i, key[off + i]);
+	grown();
+	return true;
+    }
+
+    public boolean contains(long k) {
+	checkOpen();
+	return keyWidth >= 8 && find(k) >= 0;
+    }
+
+    public boolean contains(byte[] key) {
+	return contains(key, 0, key.length);
+    }
+
+    public boolean contains(byte[] key, int off, int len) {
+	checkOpen();
+	return len <= keyWidth && find(key, off, len) >= 0;
+    }
+
+    public boolean remove(long k) {
+	checkOpen();
+	if (keyWidth < 8) return false;
+	return removeSlot(find(k));
+    }
+
+    public boolean remove(byte[] key) {
+	return remove(key, 0, key.length);
+    }
+
+    public boolean remove(byte[] key, int off, int len) {
+	checkOpen();
+	if (len > keyWidth) return false;
+	return removeSlot(find(key, off, len));
+    }
+
+    private boolean removeSlot(long slot) {
+	if (slot < 0) return false;
+	shiftKeys(slot);
+	setSize(size - 1);
+	return true;
+    }
+
+    private void grown() {
+	setSize(size + 1);
+	if (size > maxFill) rehash(capacity * 2);
+    }
+
+    private void setSize(long size) {
+	this.size = size;
+	if (header != null) header.putLong(24, size);
+    }
+
+    private void copySlot(long from, long to) {
+	ByteBuffer src = page(from), dst = page(to);
+	int srcOffset = offset(from), dstOffset = offset(to);
+	for (int i = 0; i < slotSize; ++i) dst.put(dstOffset + i, src.get(srcOffset + i));
+    }
+
+    /**
+     * @see SimpleHashSet#shiftKeys(int)
+     */
+    private void shiftKeys(long slot) {
+	for (;;) {
+	    long last = slot;
+	    for (slot = (last + 1) & mask; ; slot = (slot + 1) & mask) {
+		ByteBuffer page = page(slot);
+		int offset = offset(slot);
+		if (page.get(offset) == 0) {
+		    page(last).put(offset(last), (byte) 0);
+		    return;
+		}
+		long home = hashSlot(page, offset) & mask;
+		if (last <= slot ? last >= home || home > slot : last >= home && home > slot) break;
+	    }
+	    copySlot(slot, last);
+	}
+    }
+
+    /**
+     * Builds a table of the new capacity (in a new file for file backed sets) and moves every key there.
+     */
+    private void rehash(long newCapacity) {
+	ByteBuffer[] oldPages = pages;
+	ByteBuffer oldHeader = header;
+	int oldPageShift = pageShift;
+	long oldCapacity = capacity;
+	long oldSize = size;
+
+	createTable(newCapacity);
+	byte[] slotBytes = new byte[slotSize];
+	for (long slot = 0; slot < oldCapacity; ++slot) {
+	    ByteBuffer page = oldPages[(int) (slot >>> oldPageShift)];
+	    int offset = (int) (slot & ((1L << oldPageShift) - 1)) * slotSize;
+	    if (page.get(offset) == 0) continue;
+	    long target = hashSlot(page, offset) & mask;
+	    while (page(target).get(offset(target)) != 0) target = (target + 1) & mask;
+	    for (int i = 0; i < slotSize; ++i) slotBytes[i] = page.get(offset + i);
+	    ByteBuffer dst = page(target);
+	    int dstOffset = offset(target);
+	    for (int i = 0; i < slotSize; ++i) dst.put(dstOffset + i, slotBytes[i]);
+	}
+	setSize(oldSize);
+	commitTable();
+
+	if (oldHeader != null) release(oldHeader);
+	for (ByteBuffer page: oldPages) release(page);
+    }
+
+    public long size() {
+	return size;
+    }
+
+    public boolean isEmpty() {
+	return size == 0;
+    }
+
+    public void clear() {
+	checkOpen();
+	for (long slot = 0; slot < capacity; ++slot) page(slot).put(offset(slot), (byte) 0);
+	setSize(0);
+    }
+
+    /**
+     * Writes the changes of a file backed set to the file. Does nothing for sets in direct memory.
+     */
+    public void flush() {
+	checkOpen();
+	if (header == null) return;
+	for (ByteBuffer page: pages) ((MappedByteBuffer) page).force();
+	((MappedByteBuffer) header).force();
+    }
+
+    @Override
+    public void close() {
+	if (pages == null) return;
+	flush();
+	if (header != null) release(header);
+	for (ByteBuffer page: pages) release(page);
+	header = null;
+	pages = null;
+    }
+
+    private static Method invokeCleaner;
+    private static Object unsafe;
+    static {
+	try {
+	    Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+	    Field f = unsafeClass.getDeclaredField("theUnsafe");
+	    f.setAccessible(true);
+	    unsafe = f.get(null);
+	    invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+	} catch (Exception e) {
+	    // Before java 9 or without access: the buffers are freed by the garbage collector instead.
+	    invokeCleaner = null;
+	}
+    }
+
+    /**
+     * Frees the memory or mapping of a direct buffer now. The buffer must not be used afterwards.
+     */
+    private static void release(ByteBuffer buffer) {
+	if (invokeCleaner == null || !buffer.isDirect()) return;
+	try {
+	    invokeCleaner.invoke(unsafe, buffer);
+	} catch (Exception e) {
+	    // Left to the garbage collector.
+	}
+    }
+}
@@ -0,0 +1,134 @@
+package org.bifrost.simplehashset;
+
+import java.util.AbstractSet;
+import java.util.NoSuchElementException;
+
+/**
+ * What IntHashSet and LongHashSet have in common: the bookkeeping of
+ * the table, the rule of backward-shift deletion and the traversal
+ * of the iterator. The probing itself is in the subclasses, as it
+ * works on their key arrays without boxing.
+ *
+ * 0 marks a free slot, so whether 0 itself is a member is kept in
+ * containsZero.
+ */
+abstract class PrimitiveHashSet<E> extends AbstractSet<E> {
+    boolean containsZero;
+    int mask;
+    int size;
+    int maxFill;
+    final float loadFactor;
+
+    /**
+     * @see SimpleHashSet#SimpleHashSet(int, float)
+     */
+    PrimitiveHashSet(int initialCapacity, float loadFactor) {
+	if (initialCapacity < 0) throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+	if (!(loadFactor > 0 && loadFactor < 1)) throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+	this.loadFactor = loadFactor;
+    }
+
+    /**
+     * Replaces the key array by an empty one of capacity slots.
+     */
+    abstract void newTable(int capacity);
+
+    void allocate(int capacity) {
+	newTable(capacity);
+	mask = capacity - 1;
+	maxFill = Math.min((int) Math.ceil(capacity * loadFactor), capacity - 1);
+    }
+
+    /**
+     * @return true if the key at pos, whose own slot is slot, must be
+     * moved to the freed slot last, see SimpleHashSet#shiftKeys(int).
+     */
+    static boolean movesBack(int last, int slot, int pos) {
+	return last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos;
+    }
+
+    /**
+     * Copies everything but the key array to clone.
+     */
+    void copyTo(PrimitiveHashSet<E> clone) {
+	clone.containsZero = containsZero;
+	clone.mask = mask;
+	clone.size = size;
+	clone.maxFill = maxFill;
+    }
+
+    @Override
+    public int size() {
+	return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+	return size == 0;
+    }
+
+    /**
+     * Same traversal as SimpleHashSet.SimpleHashSetIterator, with zero
+     * returned first. Keys that removing shifts from the start of the
+     * table to its end are kept in a wrapped array by the subclass.
+     */
+    abstract class TableIterator {
+	int pos = mask + 1;
+	/** Slot of the last returned element, -1 if none, MIN_VALUE if it came from wrapped */
+	int last = -1;
+	int remaining = size;
+	boolean mustReturnZero = containsZero;
+	int nrWrapped;
+
+	abstract boolean isFree(int slot);
+
+	/**
+	 * Removes the i'th wrapped key from the set.
+	 */
+	abstract void removeWrapped(int i);
+
+	/**
+	 * Removes the key at slot, shifting the keys after it back.
+	 */
+	abstract void removeAt(int slot);
+
+	public boolean hasNext() {
+	    return remaining != 0;
+	}
+
+	/**
+	 * Moves to the next element.
+	 *
+	 * @return its slot, mask + 1 for zero, or -(i + 1) for the i'th wrapped key.
+	 */
+	int advance() {
+	    if (!hasNext()) throw new NoSuchElementException();
+	    remaining--;
+	    if (mustReturnZero) {
+		mustReturnZero = false;
+		return last = mask + 1;
+	    }
+	    for (;;) {
+		if (--pos < 0) {
+		    last = Integer.MIN_VALUE;
+		    return pos;
+		}
+		if (!isFree(pos)) return last = pos;
+	    }
+	}
+
+	public void remove() {
+	    if (last == -1) throw new IllegalStateException();
+	    if (last == mask + 1) {
+		containsZero = false;
+		size--;
+	    } else if (last == Integer.MIN_VALUE) {
+		removeWrapped(-pos - 1);
+	    } else {
+		size--;
+		removeAt(last);
+	    }
+	    last = -1;
+	}
+    }
+}
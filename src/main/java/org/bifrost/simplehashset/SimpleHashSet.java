@@ -1,85 +1,825 @@
 package org.bifrost.simplehashset;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.AbstractSet;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.StreamSupport;
+import org.bifrost.metrics.HashSetResizeEvent;
+import org.bifrost.metrics.Metrics;
 
 /**
- * A simple hashset based on HashMap 
+ * A simple hashset based on open addressing.
+ *
+ * Elements are kept directly in a flat array probed linearly, next
+ * to an array caching their (spread) hash codes. There are no
+ * per-element node objects, an add is a single probe sequence, and
+ * the cached hashes let us skip most equals() calls as well as
+ * rehash without calling hashCode() again.
+ *
+ * Removal uses backward-shift deletion, so there are no tombstones
+ * and probe sequences never get longer because of removals.
+ *
+ * For sets that are mostly queried for absent elements, a
+ * BlockedBloomFilter can be put in front of the table with
+ * enableMembershipFilter, so most misses are answered without
+ * probing the table or calling equals().
+ *
+ * The bulk operations (addAll, containsAll, retainAll, removeAll and
+ * the static union, intersection and difference) work directly on
+ * the tables when both sides are SimpleHashSets: all sets share one
+ * hash function, so elements are moved along with their cached hash
+ * and hashCode() is never called again.
+ *
+ * clone() is O(1): the clone shares the table with the original, and
+ * a set copies it when modified while others still use it
+ * (copy-on-write), so of a set and its one clone only the first to be
+ * modified copies.
+ *
+ * spliterator() splits the table in slot ranges, so parallel streams,
+ * parallelForEach and parallelRemoveIf divide the table between
+ * fork/join workers.
  */
 public class SimpleHashSet<T> extends AbstractSet<T> {
-    /** 
-     * For every key we add a simple Object()-object (Which I believe to be the smallest Object creatable in java)
-     *,simply to distinguish from null in some of HashMap's api.
+    /**
+     * An empty slot is null, so null elements are stored as NULL_KEY instead.
+     */
+    static final Object NULL_KEY = new Object();
+
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /** 2^32 / golden ratio, used to spread the hash codes over the table */
+    private static final int INT_PHI = 0x9E3779B9;
+
+    Object[] keys;
+    int[] hashes;
+    int mask;
+    int size;
+    /** Number of elements at which we grow the table */
+    int maxFill;
+    final float loadFactor;
+
+    /**
+     * The number of sets using the table (and the filter), shared by
+     * all of them, or null if this set has them to itself. They must
+     * be copied before they are modified, unless this is the last set
+     * still using them. A set that is garbage collected while sharing
+     * is still counted, which only costs a needless copy.
+     *
+     * Set with a CAS by clone, which may run in several threads at once.
      */
-    private final HashMap<T, Object> hashmap;
-    
+    volatile AtomicInteger sharers;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<SimpleHashSet, AtomicInteger> SHARERS =
+	AtomicReferenceFieldUpdater.newUpdater(SimpleHashSet.class, AtomicInteger.class, "sharers");
+
+    /** Optional pre-filter for contains, null when disabled */
+    BlockedBloomFilter filter;
+    int filterBitsPerElement;
+    /** Elements removed since the filter was last built, their bits are still set */
+    int staleFilterElements;
+
     /**
-     * Constructor arsenal, based on HashMaps 
+     * Constructor arsenal, based on HashMaps
      */
     public SimpleHashSet() {
-	hashmap = new HashMap<T, Object>(16, 0.75f);
+	this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR);
     }
-    
-    public SimpleHashSet(Collection<? extends T> coll) { 
-    	hashmap = new HashMap<T, Object>(coll.size(), 0.75f);
-    	for (T elem: coll) {
-    	    hashmap.put(elem, new Object());
-    	}
+
+    public SimpleHashSet(Collection<? extends T> coll) {
+	this(coll.size(), DEFAULT_LOAD_FACTOR);
+	for (T elem: coll) {
+	    add(elem);
+	}
     }
-    
+
     public SimpleHashSet(int initialCapacity) {
-	hashmap = new HashMap<T, Object>(initialCapacity);
+	this(initialCapacity, DEFAULT_LOAD_FACTOR);
     }
 
+    /**
+     * @param initialCapacity the number of elements the set can hold before it has to grow.
+     * @param loadFactor the maximal fraction of the table in use, must be larger than 0 and smaller than 1,
+     * as a linear probing table can not be filled completely.
+     */
     public SimpleHashSet(int initialCapacity, float loadFactor) {
-	hashmap = new HashMap<T, Object>(initialCapacity, loadFactor);
+	if (initialCapacity < 0) throw new IllegalArgumentException("Illegal initial capacity: " + initialCapacity);
+	if (!(loadFactor > 0 && loadFactor < 1)) throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+	this.loadFactor = loadFactor;
+	allocate(tableSize(initialCapacity, loadFactor));
+    }
+
+    /**
+     * @return the smallest power of two table size that can hold expected elements at loadFactor.
+     */
+    static int tableSize(int expected, float loadFactor) {
+	long n = Math.max(2, (long) Math.ceil(expected / loadFactor));
+	if (n > (1 << 30)) throw new IllegalArgumentException("Too large a set: " + expected);
+	return Integer.highestOneBit((int) n - 1) << 1;
+    }
+
+    void allocate(int capacity) {
+	keys = new Object[capacity];
+	hashes = new int[capacity];
+	mask = capacity - 1;
+	maxFill = Math.min((int) Math.ceil(capacity * loadFactor), capacity - 1);
+    }
+
+    /**
+     * Puts a BlockedBloomFilter in front of contains, spending
+     * bitsPerElement bits per element the table can hold. The filter
+     * is rebuilt from the cached hashes whenever the table grows, and
+     * when as many elements have been removed as are left, as their
+     * bits would otherwise never be cleared.
+     *
+     * @param bitsPerElement 8 to 12 gives a false positive rate of a few percent down to well below one.
+     */
+    public void enableMembershipFilter(int bitsPerElement) {
+	filterBitsPerElement = bitsPerElement;
+	rebuildFilter();
+    }
+
+    public void enableMembershipFilter() {
+	enableMembershipFilter(10);
+    }
+
+    public void disableMembershipFilter() {
+	filter = null;
+    }
+
+    /**
+     * @return the filter in front of contains, for its statistics, or null if none is enabled.
+     */
+    public BlockedBloomFilter getMembershipFilter() {
+	return filter;
+    }
+
+    void rebuildFilter() {
+	BlockedBloomFilter old = filter;
+	filter = new BlockedBloomFilter(maxFill, filterBitsPerElement);
+	if (old != null) filter.carryStatistics(old);
+	for (int i = 0; i < keys.length; ++i) {
+	    if (keys[i] != null) filter.add(hashes[i]);
+	}
+	staleFilterElements = 0;
+    }
+
+    static int hash(Object o) {
+	if (o == null) return 0;
+	int h = o.hashCode() * INT_PHI;
+	return h ^ (h >>> 16);
+    }
+
+    static Object maskNull(Object o) {
+	return o == null ? NULL_KEY : o;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T unmaskNull(Object o) {
+	return o == NULL_KEY ? null : (T) o;
+    }
+
+    /**
+     * @return the slot holding the (masked) key k with hash h, or -1 if it is not present.
+     */
+    int find(Object k, int h) {
+	Object[] keys = this.keys;
+	for (int pos = h & mask; ; pos = (pos + 1) & mask) {
+	    Object cur = keys[pos];
+	    if (cur == null) return -1;
+	    if (hashes[pos] == h && (cur == k || k.equals(cur))) return pos;
+	}
+    }
+
+    /**
+     * Inserts the (masked) key k with hash h unless it is already present.
+     */
+    boolean insert(Object k, int h) {
+	Object[] keys = this.keys;
+	int pos = h & mask;
+	for (Object cur; (cur = keys[pos]) != null; pos = (pos + 1) & mask) {
+	    if (hashes[pos] == h && (cur == k || k.equals(cur))) return false;
+	}
+	if (sharers != null) keys = copyOnWrite();
+	keys[pos] = k;
+	hashes[pos] = h;
+	if (++size > maxFill) {
+	    rehash(keys.length * 2);
+	} else if (filter != null) {
+	    filter.add(h);
+	}
+	return true;
+    }
+
+    void rehash(int capacity) {
+	HashSetResizeEvent event = new HashSetResizeEvent();
+	event.begin();
+	long start = Metrics.ENABLED ? System.nanoTime() : 0;
+	Object[] oldKeys = keys;
+	int[] oldHashes = hashes;
+	allocate(capacity);
+	for (int i = 0; i < oldKeys.length; ++i) {
+	    if (oldKeys[i] == null) continue;
+	    int pos = oldHashes[i] & mask;
+	    while (keys[pos] != null) pos = (pos + 1) & mask;
+	    keys[pos] = oldKeys[i];
+	    hashes[pos] = oldHashes[i];
+	}
+	release();
+	if (filter != null) rebuildFilter();
+	if (Metrics.ENABLED) {
+	    Metrics.HASHSET_RESIZES.increment();
+	    Metrics.HASHSET_RESIZED_ELEMENTS.add(size);
+	    Metrics.HASHSET_RESIZE_NANOS.record(System.nanoTime() - start);
+	}
+	if (event.shouldCommit()) {
+	    event.oldCapacity = oldKeys.length;
+	    event.newCapacity = capacity;
+	    event.size = size;
+	    event.commit();
+	}
+    }
+
+    /**
+     * Bookkeeping after an element has been removed from the table.
+     */
+    void removed() {
+	size--;
+	if (filter != null && ++staleFilterElements > size) rebuildFilter();
     }
-    
+
+    /**
+     * Backward-shift deletion: empties slot pos and moves later
+     * elements of the same cluster back, so no element ends up
+     * separated from its home slot by an empty slot.
+     *
+     * @return the slot that was finally emptied.
+     */
+    int shiftKeys(int pos) {
+	Object[] keys = sharers != null ? copyOnWrite() : this.keys;
+	for (;;) {
+	    int last = pos;
+	    Object cur;
+	    for (pos = (last + 1) & mask; ; pos = (pos + 1) & mask) {
+		if ((cur = keys[pos]) == null) {
+		    keys[last] = null;
+		    return last;
+		}
+		int slot = hashes[pos] & mask;
+		// Move cur back unless its home slot lies cyclically in (last, pos]
+		if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos) break;
+	    }
+	    keys[last] = cur;
+	    hashes[last] = hashes[pos];
+	}
+    }
+
     @Override
     public boolean add(T t) {
-	if (contains(t)) {
-	    return false;
-	} else {
-	    hashmap.put(t, new Object());
-	    return true;
+	Object k = maskNull(t);
+	return insert(k, hash(t));
+    }
+
+    /**
+     * Gives this set a table of its own: a copy of the one shared with
+     * clones, or the shared one if the others have all left it.
+     *
+     * @return the keys array.
+     */
+    Object[] copyOnWrite() {
+	AtomicInteger s = sharers;
+	sharers = null;
+	if (s.get() == 1) return keys;
+	keys = keys.clone();
+	hashes = hashes.clone();
+	if (filter != null) filter = new BlockedBloomFilter(filter);
+	// Only now, so whoever sees the count drop to one knows nobody reads the old table any more
+	s.decrementAndGet();
+	return keys;
+    }
+
+    /**
+     * Stops using a table shared with clones, once it has been replaced and read for the last time.
+     */
+    private void release() {
+	if (sharers != null) {
+	    sharers.decrementAndGet();
+	    sharers = null;
 	}
     }
 
+    /**
+     * Returns a snapshot of the set in constant time, by sharing the
+     * table until either set is modified. A clone that is only read
+     * never pays for a copy.
+     *
+     * Several threads may clone the same set at once, like any other
+     * read, as long as none of them modifies it meanwhile.
+     */
     @Override
-    public Object clone() { 
-	return new SimpleHashSet<T>(hashmap.keySet());
+    public SimpleHashSet<T> clone() {
+	SimpleHashSet<T> clone = new SimpleHashSet<T>(0, loadFactor);
+	clone.keys = keys;
+	clone.hashes = hashes;
+	clone.mask = mask;
+	clone.size = size;
+	clone.maxFill = maxFill;
+	clone.filter = filter;
+	clone.filterBitsPerElement = filterBitsPerElement;
+	clone.staleFilterElements = staleFilterElements;
+	AtomicInteger s = sharers;
+	// Concurrent clones of an unshared set must all count in the same counter
+	if (s == null && !SHARERS.compareAndSet(this, null, s = new AtomicInteger(1))) s = sharers;
+	s.incrementAndGet();
+	clone.sharers = s;
+	return clone;
     }
-    
+
     @Override
     public void clear() {
-	hashmap.clear();
+	if (size == 0) return;
+	size = 0;
+	if (sharers != null) {
+	    allocate(keys.length);
+	    release();
+	    if (filter != null) rebuildFilter();
+	    return;
+	}
+	Arrays.fill(keys, null);
+	if (filter != null) {
+	    filter.clear();
+	    staleFilterElements = 0;
+	}
     }
 
     @Override
     public boolean contains(Object o) {
-	return hashmap.containsKey(o);
+	int h = hash(o);
+	if (filter != null) {
+	    if (!filter.mightContain(h)) return false;
+	    if (find(maskNull(o), h) >= 0) return true;
+	    filter.falsePositive();
+	    return false;
+	}
+	return find(maskNull(o), h) >= 0;
     }
 
     @Override
     public boolean isEmpty() {
-	return hashmap.isEmpty();
+	return size == 0;
+    }
+
+    /**
+     * Iterates the table from the end. Removing through the iterator
+     * may shift an element we have not seen yet from the beginning of
+     * the table past the wrap-around into the part already visited;
+     * such elements are remembered in wrapped and returned last.
+     */
+    class SimpleHashSetIterator implements Iterator<T> {
+	int pos = keys.length;
+	/** Slot of the last returned element, -1 if none, MIN_VALUE if it came from wrapped */
+	int last = -1;
+	int remaining = size;
+	ArrayList<Object> wrapped;
+
+	@Override
+	public boolean hasNext() {
+	    return remaining != 0;
+	}
+
+	@Override
+	public T next() {
+	    if (!hasNext()) throw new NoSuchElementException();
+	    remaining--;
+	    for (;;) {
+		if (--pos < 0) {
+		    last = Integer.MIN_VALUE;
+		    return unmaskNull(wrapped.get(-pos - 1));
+		}
+		if (keys[pos] != null) {
+		    return unmaskNull(keys[last = pos]);
+		}
+	    }
+	}
+
+	/**
+	 * shiftKeys as in the set, but taking note of wrapped elements.
+	 */
+	private void shiftKeys(int pos) {
+	    Object[] keys = sharers != null ? copyOnWrite() : SimpleHashSet.this.keys;
+	    for (;;) {
+		int last = pos;
+		Object cur;
+		for (pos = (last + 1) & mask; ; pos = (pos + 1) & mask) {
+		    if ((cur = keys[pos]) == null) {
+			keys[last] = null;
+			return;
+		    }
+		    int slot = hashes[pos] & mask;
+		    if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos) break;
+		}
+		if (pos < last) {
+		    if (wrapped == null) wrapped = new ArrayList<Object>(2);
+		    wrapped.add(cur);
+		}
+		keys[last] = cur;
+		hashes[last] = hashes[pos];
+	    }
+	}
+
+	@Override
+	public void remove() {
+	    if (last == -1) throw new IllegalStateException();
+	    if (last == Integer.MIN_VALUE) {
+		SimpleHashSet.this.remove(unmaskNull(wrapped.set(-pos - 1, null)));
+	    } else {
+		shiftKeys(last);
+		removed();
+	    }
+	    last = -1;
+	}
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+	return new SimpleHashSetIterator();
+    }
+
+    /**
+     * A spliterator over a range of table slots. Splitting halves the
+     * range. Only the spliterator over the whole table knows its exact
+     * size, so SIZED is only reported before splitting, and SUBSIZED
+     * never; after a split the size is estimated from the range.
+     * NONNULL is reported when the set did not contain null when the
+     * spliterator was created.
+     */
+    final class SimpleHashSetSpliterator implements Spliterator<T> {
+	final Object[] keys = SimpleHashSet.this.keys;
+	final int characteristics;
+	int from, to;
+	long estimate;
+	boolean exact;
+
+	SimpleHashSetSpliterator() {
+	    from = 0;
+	    to = keys.length;
+	    estimate = size;
+	    exact = true;
+	    characteristics = DISTINCT | (find(NULL_KEY, 0) < 0 ? NONNULL : 0);
+	}
+
+	SimpleHashSetSpliterator(SimpleHashSetSpliterator parent, int from, int to) {
+	    this.from = from;
+	    this.to = to;
+	    this.estimate = parent.estimate / 2;
+	    this.characteristics = parent.characteristics;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super T> action) {
+	    while (from < to) {
+		Object k = keys[from++];
+		if (k != null) {
+		    action.accept(SimpleHashSet.<T>unmaskNull(k));
+		    return true;
+		}
+	    }
+	    return false;
+	}
+
+	@Override
+	public void forEachRemaining(Consumer<? super T> action) {
+	    Object[] keys = this.keys;
+	    for (int i = from; i < to; ++i) {
+		if (keys[i] != null) action.accept(SimpleHashSet.<T>unmaskNull(keys[i]));
+	    }
+	    from = to;
+	}
+
+	@Override
+	public Spliterator<T> trySplit() {
+	    if (to - from < 2 || estimate == 0) return null;
+	    int mid = (from + to) >>> 1;
+	    SimpleHashSetSpliterator prefix = new SimpleHashSetSpliterator(this, from, mid);
+	    from = mid;
+	    estimate -= prefix.estimate;
+	    exact = false;
+	    return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+	    return estimate;
+	}
+
+	@Override
+	public int characteristics() {
+	    return characteristics | (exact ? SIZED : 0);
+	}
+    }
+
+    @Override
+    public Spliterator<T> spliterator() {
+	return new SimpleHashSetSpliterator();
+    }
+
+    /**
+     * Calls action for every element, dividing the table between fork/join workers.
+     * action must be safe to call from several threads, and the set must not be modified meanwhile.
+     */
+    public void parallelForEach(Consumer<? super T> action) {
+	StreamSupport.stream(spliterator(), true).forEach(action);
+    }
+
+    /**
+     * Removes the elements matching filter. The whole table is scanned
+     * before anything is removed, and the survivors are moved to a fresh
+     * table instead of backward shifting after every removal.
+     */
+    @Override
+    public boolean removeIf(Predicate<? super T> predicate) {
+	boolean[] drop = new boolean[keys.length];
+	new MarkTask<T>(keys, predicate, drop, 0, keys.length).compute();
+	return removeMarked(drop);
+    }
+
+    /**
+     * Same as removeIf, but with predicate evaluated by fork/join workers.
+     * predicate must be safe to call from several threads.
+     */
+    public boolean parallelRemoveIf(Predicate<? super T> predicate) {
+	boolean[] drop = new boolean[keys.length];
+	new MarkTask<T>(keys, predicate, drop, 0, keys.length).invoke();
+	return removeMarked(drop);
+    }
+
+    /**
+     * Marks the slots of a table range whose elements match predicate, splitting ranges larger than PARALLEL_THRESHOLD.
+     */
+    static final class MarkTask<T> extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+
+	final Object[] keys;
+	final Predicate<? super T> predicate;
+	final boolean[] drop;
+	final int from, to;
+
+	MarkTask(Object[] keys, Predicate<? super T> predicate, boolean[] drop, int from, int to) {
+	    this.keys = keys; this.predicate = predicate; this.drop = drop;
+	    this.from = from; this.to = to;
+	}
+
+	@Override
+	protected void compute() {
+	    if (to - from > PARALLEL_THRESHOLD && getPool() != null) {
+		int mid = (from + to) >>> 1;
+		invokeAll(new MarkTask<T>(keys, predicate, drop, from, mid),
+			  new MarkTask<T>(keys, predicate, drop, mid, to));
+		return;
+	    }
+	    for (int i = from; i < to; ++i) {
+		if (keys[i] != null && predicate.test(SimpleHashSet.<T>unmaskNull(keys[i]))) drop[i] = true;
+	    }
+	}
+    }
+
+    /**
+     * Moves the elements of all slots not marked in drop to a fresh
+     * table, which is cheaper than removing them one by one with
+     * backward shifting.
+     */
+    private boolean removeMarked(boolean[] drop) {
+	Object[] oldKeys = keys;
+	int[] oldHashes = hashes;
+	int oldSize = size;
+	int nrDropped = 0;
+	for (boolean d: drop) {
+	    if (d) nrDropped++;
+	}
+	if (nrDropped == 0) return false;
+	allocate(keys.length);
+	size = 0;
+	for (int i = 0; i < oldKeys.length; ++i) {
+	    if (oldKeys[i] == null || drop[i]) continue;
+	    int pos = oldHashes[i] & mask;
+	    while (keys[pos] != null) pos = (pos + 1) & mask;
+	    keys[pos] = oldKeys[i];
+	    hashes[pos] = oldHashes[i];
+	    size++;
+	}
+	assert size == oldSize - nrDropped;
+	release();
+	if (filter != null) rebuildFilter();
+	return true;
+    }
+
+    @Override
+    public boolean remove(Object o){
+	return removeHashed(maskNull(o), hash(o));
+    }
+
+    boolean removeHashed(Object k, int h) {
+	int pos = find(k, h);
+	if (pos < 0) return false;
+	shiftKeys(pos);
+	removed();
+	return true;
+    }
+
+    /**
+     * Grows the table at once so that it can hold expected elements without further rehashing.
+     */
+    public void ensureCapacity(int expected) {
+	if (expected > maxFill) rehash(tableSize(expected, loadFactor));
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends T> c) {
+	if (!(c instanceof SimpleHashSet)) {
+	    ensureCapacity(size + c.size());
+	    return super.addAll(c);
+	}
+	SimpleHashSet<?> other = (SimpleHashSet<?>) c;
+	ensureCapacity(size + other.size);
+	boolean modified = false;
+	Object[] otherKeys = other.keys;
+	for (int i = 0; i < otherKeys.length; ++i) {
+	    if (otherKeys[i] != null) modified |= insert(otherKeys[i], other.hashes[i]);
+	}
+	return modified;
     }
-    
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+	if (!(c instanceof SimpleHashSet)) return super.containsAll(c);
+	SimpleHashSet<?> other = (SimpleHashSet<?>) c;
+	if (other.size > size) return false;
+	Object[] otherKeys = other.keys;
+	for (int i = 0; i < otherKeys.length; ++i) {
+	    if (otherKeys[i] != null && find(otherKeys[i], other.hashes[i]) < 0) return false;
+	}
+	return true;
+    }
+
+    /**
+     * Removes every element of c from the set. Unlike
+     * AbstractSet.removeAll, this never calls c.contains, which can
+     * be linear for lists; instead the smaller side is iterated.
+     */
     @Override
-    public Iterator<T> iterator() { 
-	return hashmap.keySet().iterator();
+    public boolean removeAll(Collection<?> c) {
+	if (c instanceof SimpleHashSet && ((SimpleHashSet<?>) c).size >= size) {
+	    return retain((SimpleHashSet<?>) c, false);
+	}
+	boolean modified = false;
+	if (c instanceof SimpleHashSet) {
+	    SimpleHashSet<?> other = (SimpleHashSet<?>) c;
+	    Object[] otherKeys = other.keys;
+	    for (int i = 0; i < otherKeys.length; ++i) {
+		if (otherKeys[i] != null) modified |= removeHashed(otherKeys[i], other.hashes[i]);
+	    }
+	} else {
+	    for (Object o: c) {
+		modified |= remove(o);
+	    }
+	}
+	return modified;
     }
-    
+
     @Override
-    public boolean remove(Object o){ 
-	return hashmap.remove(o) != null;
+    public boolean retainAll(Collection<?> c) {
+	if (c instanceof SimpleHashSet) return retain((SimpleHashSet<?>) c, true);
+	return super.retainAll(c);
+    }
+
+    /**
+     * Keeps exactly those elements whose membership in other equals keep.
+     */
+    private boolean retain(SimpleHashSet<?> other, boolean keep) {
+	boolean[] drop = new boolean[keys.length];
+	for (int i = 0; i < keys.length; ++i) {
+	    drop[i] = keys[i] != null && (other.find(keys[i], hashes[i]) >= 0) != keep;
+	}
+	return removeMarked(drop);
+    }
+
+    /**
+     * Sets smaller than this are combined sequentially, larger ones are split between fork/join workers.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    /**
+     * @return a new set of the elements in a or b. The larger set is copied, the smaller added to the copy.
+     */
+    public static <T> SimpleHashSet<T> union(SimpleHashSet<? extends T> a, SimpleHashSet<? extends T> b) {
+	SimpleHashSet<? extends T> larger = a.size >= b.size ? a : b, smaller = larger == a ? b : a;
+	@SuppressWarnings("unchecked")
+	SimpleHashSet<T> res = (SimpleHashSet<T>) larger.clone();
+	res.addAll(smaller);
+	return res;
+    }
+
+    /**
+     * @return a new set of the elements in both a and b. The smaller set is scanned, in parallel if it is large.
+     */
+    public static <T> SimpleHashSet<T> intersection(SimpleHashSet<? extends T> a, SimpleHashSet<? extends T> b) {
+	SimpleHashSet<? extends T> smaller = a.size <= b.size ? a : b, larger = smaller == a ? b : a;
+	return select(smaller, larger, true);
+    }
+
+    /**
+     * @return a new set of the elements in a that are not in b. a is scanned, in parallel if it is large.
+     */
+    public static <T> SimpleHashSet<T> difference(SimpleHashSet<? extends T> a, SimpleHashSet<?> b) {
+	return select(a, b, false);
+    }
+
+    /**
+     * @return a new set of the elements of source whose membership in other equals keep.
+     */
+    private static <T> SimpleHashSet<T> select(SimpleHashSet<? extends T> source, SimpleHashSet<?> other,
+					       boolean keep) {
+	Selection first = new SelectTask(source, other, keep, 0, source.keys.length).invoke();
+	int total = 0;
+	for (Selection sel = first; sel != null; sel = sel.next) total += sel.size;
+	SimpleHashSet<T> res = new SimpleHashSet<T>(total, source.loadFactor);
+	for (Selection sel = first; sel != null; sel = sel.next) {
+	    for (int i = 0; i < sel.size; ++i) res.insert(sel.keys[i], sel.hashes[i]);
+	}
+	return res;
+    }
+
+    /**
+     * Selected elements of a range of the table, chained to those of the following ranges.
+     */
+    static final class Selection {
+	Object[] keys;
+	int[] hashes;
+	int size;
+	Selection next;
+
+	Selection(int capacity) {
+	    keys = new Object[capacity];
+	    hashes = new int[capacity];
+	}
+    }
+
+    /**
+     * Scans a range of the source table, splitting it while it is
+     * larger than PARALLEL_THRESHOLD slots. The result of a split task
+     * is the selection of its left half chained to its right half's.
+     */
+    static final class SelectTask extends RecursiveTask<Selection> {
+	private static final long serialVersionUID = 1L;
+
+	final SimpleHashSet<?> source, other;
+	final boolean keep;
+	final int from, to;
+
+	SelectTask(SimpleHashSet<?> source, SimpleHashSet<?> other, boolean keep, int from, int to) {
+	    this.source = source; this.other = other; this.keep = keep;
+	    this.from = from; this.to = to;
+	}
+
+	@Override
+	protected Selection compute() {
+	    if (to - from > PARALLEL_THRESHOLD) {
+		int mid = (from + to) >>> 1;
+		SelectTask right = new SelectTask(source, other, keep, mid, to);
+		right.fork();
+		Selection left = new SelectTask(source, other, keep, from, mid).compute();
+		Selection rightSel = right.join();
+		Selection last = left;
+		while (last.next != null) last = last.next;
+		last.next = rightSel;
+		return left;
+	    }
+	    Object[] keys = source.keys;
+	    int[] hashes = source.hashes;
+	    Selection sel = new Selection(Math.min(to - from, source.size));
+	    for (int i = from; i < to; ++i) {
+		if (keys[i] != null && (other.find(keys[i], hashes[i]) >= 0) == keep) {
+		    sel.keys[sel.size] = keys[i];
+		    sel.hashes[sel.size++] = hashes[i];
+		}
+	    }
+	    return sel;
+	}
     }
 
     @Override
     public int size() {
-	return hashmap.size();
+	return size;
     }
 };
-
@@ -0,0 +1,13 @@
+package org.bifrost.triangledetector;
+
+/**
+ * Classifies triangles in bulk, see TriangleDetector.detectTriangles
+ * for the contract. Use TriangleDetector.classifier() to get the
+ * fastest implementation available.
+ */
+public interface TriangleClassifier {
+    /**
+     * @see TriangleDetector#detectTriangles(int[], int[], int[], int, int, byte[], int)
+     */
+    int[] detectTriangles(int[] a, int[] b, int[] c, int off, int len, byte[] out, int outOff);
+}
@@ -1,7 +1,9 @@
 package org.bifrost.triangledetector;
 
+import org.bifrost.metrics.Metrics;
+
 public final class TriangleDetector {
-    /** Normally I'd use an enum */
+    /** Normally I'd use an enum, see TriangleType and classify() */
     public static final int SCALENE = 1;
     public static final int ISOSCELES = 2;
     public static final int EQUILATERAL = 3;
@@ -14,6 +16,7 @@ public final class TriangleDetector {
      * triangle. Error if one or more arguments are less than or equal
      * to zero, or if the sides can not be made into a triangle (if
      * the sum of two of the sides, are less than or equal to the sum of the third.)
+     * Sums of sides never overflow, see detectTriangle(long, long, long).
 
      * 
      * @param a,b,c The sides of the triangle.
@@ -23,8 +26,19 @@ public final class TriangleDetector {
      * 
      */
     public static int detectTriangle(int a, int b, int c) {
-	if (a <= 0 || b <= 0 || c <= 0 || a + b <= c || a + c <= b || b + c <= a) return ERROR;
-	
+	return detectTriangle((long) a, b, c);
+    }
+
+    /**
+     * detectTriangle for long sides. Sums of sides never overflow:
+     * a + b <= c is tested as a <= c - b, which can not overflow as
+     * both sides are positive by then.
+     *
+     * @return 1 (SCALENE), 2 (ISOSCELES), 3 (EQUILATERAL) or 4 (ERROR)
+     */
+    public static int detectTriangle(long a, long b, long c) {
+	if (a <= 0 || b <= 0 || c <= 0 || a <= c - b || a <= b - c || b <= a - c) return ERROR;
+
 	if (a == b && b == c) {
 	    return EQUILATERAL;
 	} else if (a == b || b == c || c == a) {
@@ -33,4 +47,198 @@ public final class TriangleDetector {
 	    return SCALENE;
 	}
     }
-}
\ No newline at end of file
+
+    /**
+     * detectTriangle(a, b, c, 0): exact comparisons of double sides.
+     */
+    public static int detectTriangle(double a, double b, double c) {
+	return detectTriangle(a, b, c, 0);
+    }
+
+    /**
+     * detectTriangle for double sides, with comparisons up to the
+     * absolute tolerance epsilon: two sides within epsilon of each
+     * other count as equal, and a triangle whose two shorter sides
+     * add up to no more than epsilon over the longest is degenerate
+     * and thus an error. Sides that are not positive, or are NaN or
+     * infinite, are errors as well.
+     *
+     * Note that equality up to epsilon is not transitive; a triangle
+     * is only EQUILATERAL if all three pairs of sides are within
+     * epsilon of each other.
+     *
+     * @return 1 (SCALENE), 2 (ISOSCELES), 3 (EQUILATERAL) or 4 (ERROR)
+     */
+    public static int detectTriangle(double a, double b, double c, double epsilon) {
+	if (!(epsilon >= 0)) throw new IllegalArgumentException("Illegal epsilon: " + epsilon);
+	if (!(a > 0 && b > 0 && c > 0) || Double.isInfinite(a) || Double.isInfinite(b) || Double.isInfinite(c)) {
+	    return ERROR;
+	}
+	if (a + b - c <= epsilon || a + c - b <= epsilon || b + c - a <= epsilon) return ERROR;
+
+	boolean ab = Math.abs(a - b) <= epsilon, bc = Math.abs(b - c) <= epsilon, ca = Math.abs(c - a) <= epsilon;
+	if (ab && bc && ca) {
+	    return EQUILATERAL;
+	} else if (ab || bc || ca) {
+	    return ISOSCELES;
+	} else {
+	    return SCALENE;
+	}
+    }
+
+    /**
+     * @return detectTriangle(a, b, c) as a TriangleType.
+     */
+    public static TriangleType classify(int a, int b, int c) {
+	return TriangleType.fromCode(detectTriangle(a, b, c));
+    }
+
+    /**
+     * @return detectTriangle(a, b, c) as a TriangleType.
+     */
+    public static TriangleType classify(long a, long b, long c) {
+	return TriangleType.fromCode(detectTriangle(a, b, c));
+    }
+
+    /**
+     * @return detectTriangle(a, b, c, epsilon) as a TriangleType.
+     */
+    public static TriangleType classify(double a, double b, double c, double epsilon) {
+	return TriangleType.fromCode(detectTriangle(a, b, c, epsilon));
+    }
+
+    /**
+     * Same as detectTriangles(a, b, c, 0, a.length, out, 0).
+     */
+    public static int[] detectTriangles(int[] a, int[] b, int[] c, byte[] out) {
+	return detectTriangles(a, b, c, 0, a.length, out, 0);
+    }
+
+    /**
+     * Classifies len triangles at once, with the sides of triangle i
+     * in a[off + i], b[off + i] and c[off + i], and stores the result
+     * of detectTriangle for it in out[outOff + i]. The result is the
+     * same as that of detectTriangle for every input, including sides
+     * whose sums do not fit in an int: the sums are tested as
+     * differences, as in detectTriangle(long, long, long).
+     *
+     * The loop has no branches: every comparison is computed as a 0
+     * or 1 bit with plain integer arithmetic, so the JIT can compile
+     * it to SIMD instructions.
+     *
+     * @return the number of triangles of each class, indexed by
+     * SCALENE, ISOSCELES, EQUILATERAL and ERROR (index 0 is unused).
+     */
+    public static int[] detectTriangles(int[] a, int[] b, int[] c, int off, int len, byte[] out, int outOff) {
+	checkBounds(a, b, c, off, len, out, outOff);
+	if (Metrics.ENABLED) Metrics.TRIANGLES_CLASSIFIED.add(len);
+	int errors = 0, isosceles = 0, equilateral = 0;
+	for (int i = 0; i < len; ++i) {
+	    int x = a[off + i], y = b[off + i], z = c[off + i];
+	    int err = nonPositive(x) | nonPositive(y) | nonPositive(z)
+		| lessOrEqual(x, z - y) | lessOrEqual(x, y - z) | lessOrEqual(y, x - z);
+	    int eqXY = equal(x, y), eqYZ = equal(y, z);
+	    int equi = eqXY & eqYZ;
+	    int iso = eqXY | eqYZ | equal(z, x);
+	    int cls = SCALENE + iso + equi;
+	    // cls if err is 0, ERROR if it is 1
+	    cls ^= (cls ^ ERROR) & -err;
+	    out[outOff + i] = (byte) cls;
+	    errors += err;
+	    isosceles += iso & ~err;
+	    equilateral += equi & ~err;
+	}
+	int[] counts = new int[ERROR + 1];
+	counts[SCALENE] = len - errors - isosceles;
+	counts[ISOSCELES] = isosceles - equilateral;
+	counts[EQUILATERAL] = equilateral;
+	counts[ERROR] = errors;
+	return counts;
+    }
+
+    /**
+     * Bulk detectTriangle(long, long, long), with the same arguments
+     * and result as detectTriangles for int columns.
+     */
+    public static int[] detectTriangles(long[] a, long[] b, long[] c, int off, int len, byte[] out, int outOff) {
+	checkBounds(a.length, b.length, c.length, off, len, out, outOff);
+	int[] counts = new int[ERROR + 1];
+	for (int i = 0; i < len; ++i) {
+	    int cls = detectTriangle(a[off + i], b[off + i], c[off + i]);
+	    out[outOff + i] = (byte) cls;
+	    counts[cls]++;
+	}
+	return counts;
+    }
+
+    /**
+     * Bulk detectTriangle(double, double, double, double), with the
+     * same arguments and result as detectTriangles for int columns.
+     */
+    public static int[] detectTriangles(double[] a, double[] b, double[] c, double epsilon,
+					int off, int len, byte[] out, int outOff) {
+	checkBounds(a.length, b.length, c.length, off, len, out, outOff);
+	int[] counts = new int[ERROR + 1];
+	for (int i = 0; i < len; ++i) {
+	    int cls = detectTriangle(a[off + i], b[off + i], c[off + i], epsilon);
+	    out[outOff + i] = (byte) cls;
+	    counts[cls]++;
+	}
+	return counts;
+    }
+
+    static void checkBounds(int[] a, int[] b, int[] c, int off, int len, byte[] out, int outOff) {
+	checkBounds(a.length, b.length, c.length, off, len, out, outOff);
+    }
+
+    private static void checkBounds(int aLength, int bLength, int cLength, int off, int len, byte[] out, int outOff) {
+	if (off < 0 || len < 0 || outOff < 0 || off + len > aLength || off + len > bLength
+	    || off + len > cLength || outOff + len > out.length || off + len < 0 || outOff + len < 0) {
+	    throw new IndexOutOfBoundsException(String.format("off: %d, len: %d, outOff: %d", off, len, outOff));
+	}
+    }
+
+    private static final TriangleClassifier CLASSIFIER = loadClassifier();
+
+    /**
+     * @return the fastest TriangleClassifier available: the Vector
+     * API one if it was compiled in (mvn -Pvector) and the
+     * jdk.incubator.vector module is present at runtime (java
+     * --add-modules jdk.incubator.vector), otherwise one calling
+     * detectTriangles.
+     */
+    public static TriangleClassifier classifier() {
+	return CLASSIFIER;
+    }
+
+    private static TriangleClassifier loadClassifier() {
+	try {
+	    return (TriangleClassifier) Class.forName("org.bifrost.triangledetector.VectorTriangleClassifier")
+		.getDeclaredConstructor().newInstance();
+	} catch (ReflectiveOperationException | LinkageError e) {
+	    return new TriangleClassifier() {
+		@Override
+		public int[] detectTriangles(int[] a, int[] b, int[] c, int off, int len, byte[] out, int outOff) {
+		    return TriangleDetector.detectTriangles(a, b, c, off, len, out, outOff);
+		}
+	    };
+	}
+    }
+
+    /** @return 1 if x <= 0, else 0 */
+    private static int nonPositive(int x) {
+	return (x | (x - 1)) >>> 31;
+    }
+
+    /** @return 1 if x <= y, else 0. Signed x < y is from Hacker's Delight, 2-12. */
+    private static int lessOrEqual(int x, int y) {
+	int d = y - x;
+	return 1 - ((d ^ ((y ^ x) & (d ^ y))) >>> 31);
+    }
+
+    /** @return 1 if x == y, else 0 */
+    private static int equal(int x, int y) {
+	int d = x ^ y;
+	return 1 - ((d | -d) >>> 31);
+    }
+}
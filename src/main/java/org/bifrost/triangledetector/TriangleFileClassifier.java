@@ -0,0 +1,352 @@
+package org.bifrost.triangledetector;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Classifies all triangles of a file, in parallel.
+ *
+ * Two formats are read:
+ *
+ * - binary: packed records of three little-endian 32 bit ints, the
+ *   sides a, b and c, and nothing else.
+ *
+ * - CSV: one triangle per line, three decimal ints separated by
+ *   commas. Blanks around the numbers, \r\n line ends and empty
+ *   lines are accepted.
+ *
+ * The file is memory mapped, at most a gigabyte at a time, and
+ * every mapped segment is divided between fork/join workers. The
+ * workers gather the sides in per-thread column arrays and classify
+ * them with TriangleDetector.classifier(), so no objects are created
+ * per triangle, and the CSV numbers are parsed straight from the
+ * mapped bytes.
+ *
+ * The result is the number of triangles of each class, indexed by
+ * the TriangleDetector codes. Optionally the code of every triangle
+ * is written, one byte per triangle in file order, to an output file.
+ */
+public final class TriangleFileClassifier {
+    /** Records classified in one go, and the size of the per-thread columns */
+    static final int BATCH = 1 << 16;
+    /** Binary records per fork/join leaf */
+    static final int BINARY_LEAF = BATCH;
+    /** CSV bytes per fork/join leaf, roughly */
+    static final int CSV_LEAF = 1 << 20;
+    /** Largest part of the file mapped at once */
+    static final int MAX_SEGMENT = 1 << 30;
+    static final int RECORD_SIZE = 12;
+
+    private TriangleFileClassifier() {
+    }
+
+    /**
+     * Per-thread buffers, so that leaves allocate nothing.
+     */
+    static final class Scratch {
+	final int[] ints = new int[3 * BATCH];
+	final int[] a = new int[BATCH], b = new int[BATCH], c = new int[BATCH];
+	final byte[] codes = new byte[BATCH];
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+	@Override
+	protected Scratch initialValue() {
+	    return new Scratch();
+	}
+    };
+
+    /**
+     * Classifies the binary file in.
+     *
+     * @param out where to write the class codes, or null.
+     * @return the number of triangles of each class, indexed by SCALENE, ISOSCELES, EQUILATERAL and ERROR.
+     * @throws IOException if in is not a whole number of records long.
+     */
+    public static long[] classifyBinary(Path in, Path out) throws IOException {
+	long[] counts = new long[TriangleDetector.ERROR + 1];
+	try (FileChannel input = FileChannel.open(in, StandardOpenOption.READ);
+	     FileChannel output = openOutput(out)) {
+	    long length = input.size();
+	    if (length % RECORD_SIZE != 0) {
+		throw new IOException(String.format("%s: size %d is not a multiple of %d", in, length, RECORD_SIZE));
+	    }
+	    long segmentRecords = MAX_SEGMENT / RECORD_SIZE;
+	    for (long first = 0; first < length / RECORD_SIZE; first += segmentRecords) {
+		int n = (int) Math.min(segmentRecords, length / RECORD_SIZE - first);
+		ByteBuffer segment = input.map(FileChannel.MapMode.READ_ONLY, first * RECORD_SIZE, (long) n * RECORD_SIZE);
+		IntBuffer ints = segment.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+		add(counts, invoke(new BinaryTask(ints, output, first, 0, n)));
+	    }
+	}
+	return counts;
+    }
+
+    /**
+     * Classifies the CSV file in.
+     *
+     * @param out where to write the class codes, or null.
+     * @return the number of triangles of each class, indexed by SCALENE, ISOSCELES, EQUILATERAL and ERROR.
+     * @throws IOException if a line is not three ints separated by commas.
+     */
+    public static long[] classifyCsv(Path in, Path out) throws IOException {
+	long[] counts = new long[TriangleDetector.ERROR + 1];
+	try (FileChannel input = FileChannel.open(in, StandardOpenOption.READ);
+	     FileChannel output = openOutput(out)) {
+	    long length = input.size();
+	    long outPosition = 0;
+	    for (long start = 0; start < length; ) {
+		int size = (int) Math.min(MAX_SEGMENT, length - start);
+		ByteBuffer segment = input.map(FileChannel.MapMode.READ_ONLY, start, size);
+		int end = size;
+		if (start + size < length) {
+		    // Stop after the last whole line, the rest goes in the next segment
+		    while (end > 0 && segment.get(end - 1) != '\n') end--;
+		    if (end == 0) throw new IOException(String.format("%s: line at byte %d too long", in, start));
+		}
+		for (CsvResult res = invoke(new CsvTask(segment, start, 0, end)); res != null; res = res.next) {
+		    add(counts, res.counts);
+		    if (output != null) {
+			write(output, ByteBuffer.wrap(res.codes, 0, res.size), outPosition);
+		    }
+		    outPosition += res.size;
+		}
+		start += end;
+	    }
+	}
+	return counts;
+    }
+
+    private static FileChannel openOutput(Path out) throws IOException {
+	if (out == null) return null;
+	return FileChannel.open(out, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static void write(FileChannel output, ByteBuffer buf, long position) throws IOException {
+	while (buf.hasRemaining()) {
+	    position += output.write(buf, position);
+	}
+    }
+
+    private static void add(long[] counts, long[] more) {
+	for (int i = 0; i < counts.length; ++i) counts[i] += more[i];
+    }
+
+    /**
+     * Runs task, rethrowing the IOExceptions of the workers.
+     */
+    private static <V> V invoke(RecursiveTask<V> task) throws IOException {
+	try {
+	    return task.invoke();
+	} catch (UncheckedIOException e) {
+	    throw e.getCause();
+	}
+    }
+
+    /**
+     * Classifies records [from, to) of a mapped segment whose first
+     * record is record number first of the file.
+     */
+    static final class BinaryTask extends RecursiveTask<long[]> {
+	private static final long serialVersionUID = 1L;
+
+	final IntBuffer ints;
+	final FileChannel output;
+	final long first;
+	final int from, to;
+
+	BinaryTask(IntBuffer ints, FileChannel output, long first, int from, int to) {
+	    this.ints = ints; this.output = output; this.first = first;
+	    this.from = from; this.to = to;
+	}
+
+	@Override
+	protected long[] compute() {
+	    if (to - from > BINARY_LEAF) {
+		int mid = (from + to) >>> 1;
+		BinaryTask right = new BinaryTask(ints, output, first, mid, to);
+		right.fork();
+		long[] counts = new BinaryTask(ints, output, first, from, mid).compute();
+		add(counts, right.join());
+		return counts;
+	    }
+	    Scratch s = SCRATCH.get();
+	    int n = to - from;
+	    IntBuffer view = ints.duplicate();
+	    view.position(3 * from);
+	    view.get(s.ints, 0, 3 * n);
+	    for (int i = 0; i < n; ++i) {
+		s.a[i] = s.ints[3 * i];
+		s.b[i] = s.ints[3 * i + 1];
+		s.c[i] = s.ints[3 * i + 2];
+	    }
+	    int[] counts = TriangleDetector.classifier().detectTriangles(s.a, s.b, s.c, 0, n, s.codes, 0);
+	    if (output != null) {
+		try {
+		    write(output, ByteBuffer.wrap(s.codes, 0, n), first + from);
+		} catch (IOException e) {
+		    throw new UncheckedIOException(e);
+		}
+	    }
+	    long[] res = new long[counts.length];
+	    for (int i = 0; i < counts.length; ++i) res[i] = counts[i];
+	    return res;
+	}
+    }
+
+    /**
+     * Codes and counts of the lines of a range of a segment, chained
+     * to those of the following ranges.
+     */
+    static final class CsvResult {
+	final long[] counts = new long[TriangleDetector.ERROR + 1];
+	byte[] codes;
+	int size;
+	CsvResult next;
+    }
+
+    /**
+     * Classifies the lines starting in bytes [from, to) of a mapped
+     * segment that starts at byte base of the file. Ranges are only
+     * split just after a line end.
+     */
+    static final class CsvTask extends RecursiveTask<CsvResult> {
+	private static final long serialVersionUID = 1L;
+
+	final ByteBuffer segment;
+	final long base;
+	final int from, to;
+
+	CsvTask(ByteBuffer segment, long base, int from, int to) {
+	    this.segment = segment; this.base = base;
+	    this.from = from; this.to = to;
+	}
+
+	@Override
+	protected CsvResult compute() {
+	    if (to - from > CSV_LEAF) {
+		int mid = (from + to) >>> 1;
+		while (mid < to && segment.get(mid - 1) != '\n') mid++;
+		if (mid < to) {
+		    CsvTask right = new CsvTask(segment, base, mid, to);
+		    right.fork();
+		    CsvResult left = new CsvTask(segment, base, from, mid).compute();
+		    CsvResult last = left;
+		    while (last.next != null) last = last.next;
+		    last.next = right.join();
+		    return left;
+		}
+	    }
+	    try {
+		return parse();
+	    } catch (IOException e) {
+		throw new UncheckedIOException(e);
+	    }
+	}
+
+	private CsvResult parse() throws IOException {
+	    Scratch s = SCRATCH.get();
+	    CsvResult res = new CsvResult();
+	    // The shortest line, "1,1,1\n", is 6 bytes
+	    res.codes = new byte[Math.min((to - from) / 6 + 1, BATCH)];
+	    CsvScanner scanner = new CsvScanner(segment, base, from, to);
+	    int n = 0;
+	    while (scanner.nextLine()) {
+		s.a[n] = scanner.nextInt(',');
+		s.b[n] = scanner.nextInt(',');
+		s.c[n] = scanner.nextInt('\n');
+		if (++n == BATCH) {
+		    classify(res, s, n);
+		    n = 0;
+		}
+	    }
+	    classify(res, s, n);
+	    return res;
+	}
+
+	private static void classify(CsvResult res, Scratch s, int n) {
+	    if (res.size + n > res.codes.length) {
+		res.codes = Arrays.copyOf(res.codes, Math.max(res.size + n, res.codes.length * 2));
+	    }
+	    int[] counts = TriangleDetector.classifier().detectTriangles(s.a, s.b, s.c, 0, n, res.codes, res.size);
+	    for (int i = 0; i < counts.length; ++i) res.counts[i] += counts[i];
+	    res.size += n;
+	}
+    }
+
+    /**
+     * Reads the ints of CSV lines from a byte range of a buffer,
+     * without creating any objects.
+     */
+    static final class CsvScanner {
+	final ByteBuffer buf;
+	final long base;
+	int pos;
+	final int limit;
+
+	CsvScanner(ByteBuffer buf, long base, int from, int to) {
+	    this.buf = buf; this.base = base;
+	    this.pos = from; this.limit = to;
+	}
+
+	private static boolean isBlank(int ch) {
+	    return ch == ' ' || ch == '\t' || ch == '\r';
+	}
+
+	private void skipBlanks() {
+	    while (pos < limit && isBlank(buf.get(pos))) pos++;
+	}
+
+	/**
+	 * Skips empty lines.
+	 *
+	 * @return true if there is another line to read.
+	 */
+	boolean nextLine() {
+	    for (;;) {
+		skipBlanks();
+		if (pos == limit) return false;
+		if (buf.get(pos) != '\n') return true;
+		pos++;
+	    }
+	}
+
+	/**
+	 * Reads an int and the separator after it, which for the last
+	 * field is the line end or the end of the range.
+	 */
+	int nextInt(char separator) throws IOException {
+	    skipBlanks();
+	    boolean negative = pos < limit && buf.get(pos) == '-';
+	    if (negative) pos++;
+	    int start = pos;
+	    long value = 0;
+	    for (int ch; pos < limit && (ch = buf.get(pos) - '0') >= 0 && ch <= 9; ++pos) {
+		value = value * 10 + ch;
+		if (value > 1L << 31) throw error("number out of range");
+	    }
+	    if (pos == start) throw error("number expected");
+	    if (negative) value = -value;
+	    if (value > Integer.MAX_VALUE) throw error("number out of range");
+	    skipBlanks();
+	    if (pos < limit ? buf.get(pos) != separator : separator != '\n') {
+		throw error("'" + (separator == '\n' ? "\\n" : separator) + "' expected");
+	    }
+	    if (pos < limit) pos++;
+	    return (int) value;
+	}
+
+	private IOException error(String message) {
+	    return new IOException(String.format("Malformed CSV at byte %d: %s", base + pos, message));
+	}
+    }
+}
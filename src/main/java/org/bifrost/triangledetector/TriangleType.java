@@ -0,0 +1,31 @@
+package org.bifrost.triangledetector;
+
+/**
+ * The classes of TriangleDetector as an enum. The ordinal of each
+ * constant is its TriangleDetector code minus one, so a class can be
+ * used directly as an index into a table, and fromCode turns the
+ * codes of the int and bulk methods into constants without a switch.
+ */
+public enum TriangleType {
+    SCALENE,
+    ISOSCELES,
+    EQUILATERAL,
+    ERROR;
+
+    private static final TriangleType[] BY_CODE = { null, SCALENE, ISOSCELES, EQUILATERAL, ERROR };
+
+    /**
+     * @return the TriangleDetector code of this class, ordinal() + 1.
+     */
+    public int code() {
+	return ordinal() + 1;
+    }
+
+    /**
+     * @return the class with TriangleDetector code code.
+     */
+    public static TriangleType fromCode(int code) {
+	if (code < SCALENE.code() || code > ERROR.code()) throw new IllegalArgumentException("Illegal code: " + code);
+	return BY_CODE[code];
+    }
+}
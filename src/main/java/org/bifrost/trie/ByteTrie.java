@@ -0,0 +1,369 @@
+package org.bifrost.trie;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A Trie keyed by byte sequences, meant for UTF-8 encoded keys that
+ * arrive as bytes and should not be decoded just to be looked up.
+ *
+ * Keys can be given as byte[], slices of byte[] or the remaining
+ * bytes of a ByteBuffer. Lookups neither decode nor allocate, and
+ * the buffer position is left untouched.
+ *
+ * Bytes are compared unsigned, so iteration order is UTF-8 byte
+ * order, which is the same as code point order for valid UTF-8.
+ * A byte-sequence is a prefix of another exactly when the strings
+ * they encode are, so prefix lookups behave as for Trie.
+ *
+ * As the alphabet is only 256 symbols, nodes with many children
+ * switch to a dense child array indexed directly by the byte,
+ * while nodes with few children keep a small sorted label array.
+ *
+ * ByteTrie is not a java.util.Map since byte arrays have identity
+ * equality, but it has the familiar get/put/remove/containsKey api.
+ */
+public class ByteTrie<V> implements Iterable<Map.Entry<byte[], V>> {
+    /** Nodes with more children than this go dense */
+    static final int DENSE_THRESHOLD = 16;
+    private static final byte[] NO_LABELS = new byte[0];
+
+    /**
+     * A node with sparse children keeps labels and children in two
+     * parallel arrays sorted by unsigned label. A dense node has
+     * labels == null and 256 child slots.
+     */
+    static final class Node<V> {
+	final Node<V> parent;
+	final byte label;
+	byte[] labels;
+	Node<V>[] children;
+	int nrChildren;
+	boolean hasPayload;
+	V payload;
+
+	Node(Node<V> parent, byte label) {
+	    this.parent = parent;
+	    this.label = label;
+	    this.labels = NO_LABELS;
+	}
+
+	/**
+	 * @return index of the label b among the sparse children, or (-(insertion point) - 1).
+	 */
+	int indexOf(int b) {
+	    int lo = 0, hi = nrChildren - 1;
+	    while (lo <= hi) {
+		int mid = (lo + hi) >>> 1;
+		int l = labels[mid] & 0xff;
+		if (l < b) {
+		    lo = mid + 1;
+		} else if (l > b) {
+		    hi = mid - 1;
+		} else {
+		    return mid;
+		}
+	    }
+	    return -(lo + 1);
+	}
+
+	Node<V> getChild(byte b) {
+	    if (labels == null) return children[b & 0xff];
+	    int i = indexOf(b & 0xff);
+	    return i >= 0 ? children[i] : null;
+	}
+
+	Node<V> getOrAddChild(byte b) {
+	    Node<V> child = getChild(b);
+	    if (child != null) return child;
+	    child = new Node<V>(this, b);
+	    if (labels == null) {
+		children[b & 0xff] = child;
+	    } else if (nrChildren == DENSE_THRESHOLD) {
+		Node<V>[] dense = newChildren(256);
+		for (int i = 0; i < nrChildren; ++i) {
+		    dense[labels[i] & 0xff] = children[i];
+		}
+		dense[b & 0xff] = child;
+		labels = null;
+		children = dense;
+	    } else {
+		int i = -(indexOf(b & 0xff) + 1);
+		if (nrChildren == labels.length) {
+		    int newLength = nrChildren == 0 ? 2 : Math.min(nrChildren * 2, DENSE_THRESHOLD);
+		    labels = Arrays.copyOf(labels, newLength);
+		    children = children == null ? ByteTrie.<V>newChildren(newLength) : Arrays.copyOf(children, newLength);
+		}
+		System.arraycopy(labels, i, labels, i + 1, nrChildren - i);
+		System.arraycopy(children, i, children, i + 1, nrChildren - i);
+		labels[i] = b;
+		children[i] = child;
+	    }
+	    nrChildren++;
+	    return child;
+	}
+
+	void removeChild(Node<V> child) {
+	    if (labels == null) {
+		children[child.label & 0xff] = null;
+	    } else {
+		int i = indexOf(child.label & 0xff);
+		assert i >= 0 && children[i] == child;
+		System.arraycopy(labels, i + 1, labels, i, nrChildren - i - 1);
+		System.arraycopy(children, i + 1, children, i, nrChildren - i - 1);
+		children[nrChildren - 1] = null;
+	    }
+	    if (--nrChildren == 0) {
+		labels = NO_LABELS;
+		children = null;
+	    }
+	}
+
+	/**
+	 * @return the child with the smallest label not less than b, or null.
+	 */
+	Node<V> childAtOrAfter(int b) {
+	    if (labels == null) {
+		for (; b < 256; ++b) {
+		    if (children[b] != null) return children[b];
+		}
+		return null;
+	    }
+	    int i = indexOf(b);
+	    if (i < 0) i = -(i + 1);
+	    return i < nrChildren ? children[i] : null;
+	}
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> Node<V>[] newChildren(int n) {
+	return (Node<V>[]) new Node<?>[n];
+    }
+
+    Node<V> root;
+    /** Number of keys, see Trie.nrElements */
+    int nrElements;
+
+    public ByteTrie() {
+	root = new Node<V>(null, (byte) 0);
+    }
+
+    public int size() {
+	return nrElements;
+    }
+
+    public boolean isEmpty() {
+	return nrElements == 0;
+    }
+
+    public void clear() {
+	nrElements = 0;
+	root = new Node<V>(null, (byte) 0);
+    }
+
+    Node<V> findNode(byte[] key, int off, int len) {
+	Node<V> node = root;
+	for (int i = off; i < off + len && node != null; ++i) {
+	    node = node.getChild(key[i]);
+	}
+	return node;
+    }
+
+    Node<V> findNode(ByteBuffer key) {
+	Node<V> node = root;
+	for (int i = key.position(); i < key.limit() && node != null; ++i) {
+	    node = node.getChild(key.get(i));
+	}
+	return node;
+    }
+
+    private V payloadOf(Node<V> n) {
+	return n != null && n.hasPayload ? n.payload : null;
+    }
+
+    public V get(byte[] key) {
+	return get(key, 0, key.length);
+    }
+
+    /**
+     * @return the value mapped to the len bytes of key starting at off, or null if there is none.
+     */
+    public V get(byte[] key, int off, int len) {
+	return payloadOf(findNode(key, off, len));
+    }
+
+    /**
+     * @return the value mapped to the remaining bytes of key, or null if there is none.
+     */
+    public V get(ByteBuffer key) {
+	return payloadOf(findNode(key));
+    }
+
+    public boolean containsKey(byte[] key) {
+	return containsKey(key, 0, key.length);
+    }
+
+    public boolean containsKey(byte[] key, int off, int len) {
+	Node<V> n = findNode(key, off, len);
+	return n != null && n.hasPayload;
+    }
+
+    public boolean containsKey(ByteBuffer key) {
+	Node<V> n = findNode(key);
+	return n != null && n.hasPayload;
+    }
+
+    public V put(byte[] key, V value) {
+	return put(key, 0, key.length, value);
+    }
+
+    /**
+     * Maps the len bytes of key starting at off to value. The bytes are not retained.
+     *
+     * @return the previous value or null if there was none.
+     */
+    public V put(byte[] key, int off, int len, V value) {
+	Node<V> node = root;
+	for (int i = off; i < off + len; ++i) {
+	    node = node.getOrAddChild(key[i]);
+	}
+	return setPayload(node, value);
+    }
+
+    /**
+     * Maps the remaining bytes of key to value. The position of key is not changed.
+     *
+     * @return the previous value or null if there was none.
+     */
+    public V put(ByteBuffer key, V value) {
+	Node<V> node = root;
+	for (int i = key.position(); i < key.limit(); ++i) {
+	    node = node.getOrAddChild(key.get(i));
+	}
+	return setPayload(node, value);
+    }
+
+    private V setPayload(Node<V> node, V value) {
+	V old = node.payload;
+	if (!node.hasPayload) {
+	    node.hasPayload = true;
+	    nrElements++;
+	}
+	node.payload = value;
+	return old;
+    }
+
+    public V remove(byte[] key) {
+	return remove(key, 0, key.length);
+    }
+
+    public V remove(byte[] key, int off, int len) {
+	return removeNode(findNode(key, off, len));
+    }
+
+    public V remove(ByteBuffer key) {
+	return removeNode(findNode(key));
+    }
+
+    private V removeNode(Node<V> n) {
+	if (n == null || !n.hasPayload) return null;
+	V old = n.payload;
+	n.hasPayload = false;
+	n.payload = null;
+	nrElements--;
+	while (n.nrChildren == 0 && !n.hasPayload && n.parent != null) {
+	    n.parent.removeChild(n);
+	    n = n.parent;
+	}
+	return old;
+    }
+
+    /**
+     * Iterates over all entries in unsigned byte order. The keys are
+     * rebuilt for every entry. remove() is not supported.
+     */
+    @Override
+    public Iterator<Map.Entry<byte[], V>> iterator() {
+	return new ByteTrieIterator(root, NO_LABELS);
+    }
+
+    /**
+     * Iterates, in unsigned byte order, over the entries whose key
+     * starts with prefix.
+     */
+    public Iterator<Map.Entry<byte[], V>> prefixIterator(byte[] prefix) {
+	Node<V> n = findNode(prefix, 0, prefix.length);
+	return new ByteTrieIterator(n, prefix);
+    }
+
+    /**
+     * Depth-first traversal that remembers, for every level, the node
+     * and the next label to look at.
+     */
+    final class ByteTrieIterator implements Iterator<Map.Entry<byte[], V>> {
+	final int base;
+	Node<V>[] nodes = newChildren(16);
+	int[] nextLabel = new int[16];
+	byte[] path;
+	int depth;
+	Node<V> next;
+
+	ByteTrieIterator(Node<V> start, byte[] prefix) {
+	    base = prefix.length;
+	    path = Arrays.copyOf(prefix, base + 16);
+	    if (start == null) {
+		depth = -1;
+		return;
+	    }
+	    nodes[0] = start;
+	    next = start.hasPayload ? start : advance();
+	}
+
+	private Node<V> advance() {
+	    while (depth >= 0) {
+		Node<V> cur = nodes[depth];
+		Node<V> child = nextLabel[depth] < 256 ? cur.childAtOrAfter(nextLabel[depth]) : null;
+		if (child == null) {
+		    depth--;
+		    continue;
+		}
+		nextLabel[depth] = (child.label & 0xff) + 1;
+		if (++depth == nodes.length) {
+		    nodes = Arrays.copyOf(nodes, depth * 2);
+		    nextLabel = Arrays.copyOf(nextLabel, depth * 2);
+		}
+		if (base + depth > path.length) {
+		    path = Arrays.copyOf(path, path.length * 2);
+		}
+		nodes[depth] = child;
+		nextLabel[depth] = 0;
+		path[base + depth - 1] = child.label;
+		if (child.hasPayload) return child;
+	    }
+	    return null;
+	}
+
+	@Override
+	public boolean hasNext() {
+	    return next != null;
+	}
+
+	@Override
+	public Map.Entry<byte[], V> next() {
+	    if (next == null) throw new NoSuchElementException();
+	    Map.Entry<byte[], V> entry =
+		new AbstractMap.SimpleImmutableEntry<byte[], V>(Arrays.copyOf(path, base + depth), next.payload);
+	    next = advance();
+	    return entry;
+	}
+
+	@Override
+	public void remove() {
+	    throw new UnsupportedOperationException();
+	}
+    }
+}
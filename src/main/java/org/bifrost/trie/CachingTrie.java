@@ -0,0 +1,254 @@
+package org.bifrost.trie;
+
+import java.util.ArrayDeque;
+
+/**
+ * A Trie used as a cache: when the total weight of its entries
+ * exceeds a maximum, entries are evicted with the CLOCK policy, an
+ * approximation of least recently used.
+ *
+ * The policy lives in the nodes themselves: every node with a
+ * payload is on a ring, and has a bit set when it is read. The clock
+ * hand goes round the ring, clearing set bits and evicting the first
+ * entry whose bit is clear. New entries are put on the ring just
+ * behind the hand, so they get a full round before they can go.
+ * Evicted entries are removed like any other, pruning the nodes no
+ * longer needed.
+ *
+ * invalidatePrefix cuts off the whole subtree of a prefix at once,
+ * and takes its entries off the ring on the way, so nothing of it is
+ * left reachable.
+ *
+ * Only get, and replacing the value with put or setValue on an
+ * entry, count as a use of it; containsKey and iteration do not.
+ */
+public class CachingTrie<K extends CharSequence, V> extends Trie<K, V> {
+    /**
+     * Tells the weight of an entry, for example its size in bytes.
+     */
+    public interface Weigher<K, V> {
+	/**
+	 * @return the weight of the mapping, which must not be negative.
+	 */
+	int weigh(K key, V value);
+    }
+
+    /**
+     * A node with its place on the clock ring.
+     */
+    class CacheNode extends Node {
+	/** Neighbours on the ring, null for nodes without payload */
+	CacheNode prev, next;
+	boolean referenced;
+	int weight;
+
+	CacheNode(Node parent) {
+	    super(parent);
+	}
+    }
+
+    private final long maxWeight;
+    private final Weigher<? super K, ? super V> weigher;
+    private CacheNode hand;
+    private long weight;
+    private long hits, misses, evictions;
+
+    /**
+     * Creates a cache of at most maxEntries entries.
+     */
+    public CachingTrie(int maxEntries) {
+	this(maxEntries, null);
+    }
+
+    /**
+     * Creates a cache whose entries weigh at most maxWeight in total.
+     *
+     * @param weigher the weight of an entry, or null for weighing every entry 1.
+     */
+    public CachingTrie(long maxWeight, Weigher<? super K, ? super V> weigher) {
+	if (maxWeight < 0) throw new IllegalArgumentException("Illegal maximum weight: " + maxWeight);
+	this.maxWeight = maxWeight;
+	this.weigher = weigher;
+    }
+
+    @Override
+    Node newNode(Node parent) {
+	return new CacheNode(parent);
+    }
+
+    private int weigh(Node n) {
+	if (weigher == null) return 1;
+	int w = weigher.weigh(n.getPayload().getKey(), n.getPayload().getValue());
+	if (w < 0) throw new IllegalArgumentException("Negative weight " + w + " for " + n.getPayload().getKey());
+	return w;
+    }
+
+    @Override
+    void payloadAdded(Node n) {
+	CacheNode c = (CacheNode) n;
+	c.weight = weigh(c);
+	c.referenced = false;
+	weight += c.weight;
+	if (hand == null) {
+	    c.prev = c.next = c;
+	    hand = c;
+	} else {
+	    c.prev = hand.prev;
+	    c.next = hand;
+	    hand.prev.next = c;
+	    hand.prev = c;
+	}
+    }
+
+    /**
+     * Entries know their node, so setValue on one is weighed like a put.
+     */
+    @Override
+    TrieEntry newEntry(K k, V value, Node node) {
+	return new NodeEntry(k, value, node);
+    }
+
+    /**
+     * Also called for setValue on an entry, which may then need evictions.
+     */
+    @Override
+    void payloadReplaced(Node n) {
+	CacheNode c = (CacheNode) n;
+	int w = weigh(c);
+	weight += w - c.weight;
+	c.weight = w;
+	c.referenced = true;
+	evict();
+    }
+
+    @Override
+    void payloadRemoved(Node n) {
+	CacheNode c = (CacheNode) n;
+	weight -= c.weight;
+	unlink(c);
+    }
+
+    private void unlink(CacheNode c) {
+	if (c.next == c) {
+	    hand = null;
+	} else {
+	    c.prev.next = c.next;
+	    c.next.prev = c.prev;
+	    if (hand == c) hand = c.next;
+	}
+	c.prev = c.next = null;
+    }
+
+    /**
+     * Evicts entries until the weight is within the maximum.
+     */
+    private void evict() {
+	while (weight > maxWeight && hand != null) {
+	    CacheNode c = hand;
+	    if (c.referenced) {
+		c.referenced = false;
+		hand = c.next;
+	    } else {
+		hand = c.next;
+		getRidOfNode(c);
+		evictions++;
+	    }
+	}
+    }
+
+    @Override
+    public V put(K k, V value) {
+	V old = super.put(k, value);
+	evict();
+	return old;
+    }
+
+    @Override
+    public V get(Object k) {
+	Node n = findNode((CharSequence) k);
+	if (n == null || !n.hasPayload()) {
+	    misses++;
+	    return null;
+	}
+	hits++;
+	((CacheNode) n).referenced = true;
+	return n.getPayload().getValue();
+    }
+
+    @Override
+    public void clear() {
+	super.clear();
+	hand = null;
+	weight = 0;
+    }
+
+    /**
+     * Removes every entry whose key starts with prefix. The subtree
+     * of the prefix is cut off as a whole, so this is O(prefix length
+     * + nodes removed), without a lookup or pruning per entry.
+     *
+     * @return the number of entries removed.
+     */
+    public int invalidatePrefix(CharSequence prefix) {
+	Node n = findNode(prefix);
+	if (n == null) return 0;
+	int count = 0;
+	ArrayDeque<Node> stack = new ArrayDeque<Node>();
+	stack.push(n);
+	while (!stack.isEmpty()) {
+	    Node m = stack.pop();
+	    if (m.hasPayload()) {
+		payloadRemoved(m);
+		m.deletePayload();
+		count++;
+	    }
+	    for (Edge e: m.getChildren()) stack.push(e.getTo());
+	}
+	nrElements -= count;
+	if (n.hasParent()) {
+	    Node parent = n.getParent();
+	    for (Edge e: parent.getChildren()) {
+		if (e.getTo() == n) {
+		    parent.getChildren().remove(e);
+		    break;
+		}
+	    }
+	    pruneUpwards(parent);
+	} else {
+	    root = newNode(null);
+	}
+	return count;
+    }
+
+    /**
+     * @return the total weight of the entries.
+     */
+    public long getWeight() {
+	return weight;
+    }
+
+    public long getMaxWeight() {
+	return maxWeight;
+    }
+
+    /**
+     * @return the number of calls to get that found a mapping.
+     */
+    public long getHits() {
+	return hits;
+    }
+
+    /**
+     * @return the number of calls to get that found no mapping.
+     */
+    public long getMisses() {
+	return misses;
+    }
+
+    /**
+     * @return the number of entries evicted to stay within the maximum weight.
+     */
+    public long getEvictions() {
+	return evictions;
+    }
+}
@@ -0,0 +1,147 @@
+package org.bifrost.trie;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * A Trie of weighted keys for autocompletion: topCompletions(prefix,
+ * k) gives the k keys with the highest weights among those starting
+ * with prefix, without looking at all of them.
+ *
+ * The value of a key is its weight. Every node keeps the highest
+ * weight in its subtree, which put, remove and setValue on an entry
+ * update on the path to the root, stopping as soon as a node's
+ * maximum does not change. The
+ * search is best-first from the node of the prefix: a priority queue
+ * holds subtrees by their maximum and entries by their weight, and
+ * whenever an entry is at the head, no key left can weigh more. So
+ * only the subtrees on the way to the k best keys are opened, and a
+ * query costs about O(prefix length + k log k) times the fan-out,
+ * however many keys share the prefix.
+ */
+public class CompletionTrie<K extends CharSequence> extends Trie<K, Long> {
+    /**
+     * A node knowing the highest weight below it, itself included.
+     */
+    class CompletionNode extends Node {
+	long maxWeight = Long.MIN_VALUE;
+
+	CompletionNode(Node parent) {
+	    super(parent);
+	}
+    }
+
+    @Override
+    Node newNode(Node parent) {
+	return new CompletionNode(parent);
+    }
+
+    /**
+     * @throws NullPointerException if weight is null.
+     */
+    @Override
+    public Long put(K k, Long weight) {
+	if (weight == null) throw new NullPointerException("Weight of " + k + " is null");
+	return super.put(k, weight);
+    }
+
+    /**
+     * Entries of entrySet and topCompletions change the weight with
+     * setValue, which updates the maxima like put.
+     */
+    @Override
+    TrieEntry newEntry(K k, Long weight, Node node) {
+	return new NodeEntry(k, weight, node);
+    }
+
+    /**
+     * @throws NullPointerException if weight is null.
+     */
+    @Override
+    Long setEntryValue(NodeEntry entry, Long weight) {
+	if (weight == null) throw new NullPointerException("Weight of " + entry.getKey() + " is null");
+	return super.setEntryValue(entry, weight);
+    }
+
+    @Override
+    void payloadAdded(Node n) {
+	updateUpwards(n);
+    }
+
+    @Override
+    void payloadReplaced(Node n) {
+	updateUpwards(n);
+    }
+
+    @Override
+    void getRidOfNode(Node n) {
+	super.getRidOfNode(n);
+	// n and the nodes pruned above it are out of the trie, but
+	// still know their parents; they just end up with no maximum
+	updateUpwards(n);
+    }
+
+    /**
+     * Recomputes the maximum of n and its ancestors, until one does not change.
+     */
+    private void updateUpwards(Node n) {
+	for (; n != null; n = n.getParent()) {
+	    CompletionNode c = (CompletionNode) n;
+	    long max = c.hasPayload() ? c.getPayload().getValue() : Long.MIN_VALUE;
+	    for (Edge e: c.getChildren()) max = Math.max(max, ((CompletionNode) e.getTo()).maxWeight);
+	    if (max == c.maxWeight) return;
+	    c.maxWeight = max;
+	}
+    }
+
+    /**
+     * A subtree, or just the entry of a node, waiting to be looked at.
+     */
+    private final class Candidate {
+	final CompletionNode node;
+	final boolean entry;
+	final long weight;
+
+	Candidate(CompletionNode node, boolean entry) {
+	    this.node = node;
+	    this.entry = entry;
+	    this.weight = entry ? node.getPayload().getValue() : node.maxWeight;
+	}
+    }
+
+    private final Comparator<Candidate> heaviestFirst = new Comparator<Candidate>() {
+	@Override
+	public int compare(Candidate c1, Candidate c2) {
+	    // Entries before subtrees of the same weight, so they are returned right away
+	    int cmp = Long.compare(c2.weight, c1.weight);
+	    return cmp != 0 ? cmp : Boolean.compare(c2.entry, c1.entry);
+	}
+    };
+
+    /**
+     * @return the (at most) k entries with the highest weights among
+     * those whose key starts with prefix, heaviest first. Entries of
+     * equal weight come in no particular order.
+     */
+    public List<Map.Entry<K, Long>> topCompletions(CharSequence prefix, int k) {
+	Node start = findNode(prefix);
+	if (start == null || k <= 0) return Collections.emptyList();
+	List<Map.Entry<K, Long>> res = new ArrayList<Map.Entry<K, Long>>(Math.min(k, nrElements));
+	PriorityQueue<Candidate> queue = new PriorityQueue<Candidate>(16, heaviestFirst);
+	queue.add(new Candidate((CompletionNode) start, false));
+	while (res.size() < k && !queue.isEmpty()) {
+	    Candidate c = queue.poll();
+	    if (c.entry) {
+		res.add(c.node.getPayload());
+		continue;
+	    }
+	    if (c.node.hasPayload()) queue.add(new Candidate(c.node, true));
+	    for (Edge e: c.node.getChildren()) queue.add(new Candidate((CompletionNode) e.getTo(), false));
+	}
+	return res;
+    }
+}
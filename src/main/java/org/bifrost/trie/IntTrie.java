@@ -0,0 +1,333 @@
+package org.bifrost.trie;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+
+/**
+ * A Trie specialized for int values, typically used for counters and ids.
+ *
+ * Unlike Trie, no TrieEntry and no boxed value is kept per key: the
+ * value is stored inline in the node that terminates the key, and
+ * keys are not stored at all, see PrimitiveTrie.
+ *
+ * Lookups that find no mapping return the missing value given to the
+ * constructor (0 by default), so the primitive api never has to
+ * allocate.
+ */
+public class IntTrie extends PrimitiveTrie<Integer> {
+    static final class IntNode extends Node {
+	int payload;
+
+	IntNode(Node parent, char label) {
+	    super(parent, label);
+	}
+
+	@Override
+	Node newChild(char label) {
+	    return new IntNode(this, label);
+	}
+    }
+
+    private final int missingValue;
+
+    /**
+     * Creates an empty IntTrie returning 0 for missing keys.
+     */
+    public IntTrie() {
+	this(0);
+    }
+
+    /**
+     * Creates an empty IntTrie.
+     *
+     * @param missingValue the value returned by getInt, putInt and removeInt when there is no mapping.
+     */
+    public IntTrie(int missingValue) {
+	this.missingValue = missingValue;
+    }
+
+    @Override
+    Node newRoot() {
+	return new IntNode(null, '\0');
+    }
+
+    public int getMissingValue() {
+	return missingValue;
+    }
+
+    /**
+     * @return the value mapped to key, or the missing value if there is none.
+     */
+    public int getInt(CharSequence key) {
+	IntNode n = (IntNode) findNode(key);
+	return n != null && n.hasPayload ? n.payload : missingValue;
+    }
+
+    /**
+     * Maps key to value.
+     *
+     * @return the previous value mapped to key, or the missing value if there was none.
+     */
+    public int putInt(CharSequence key, int value) {
+	IntNode n = (IntNode) findOrCreateNode(key);
+	int old = n.hasPayload ? n.payload : missingValue;
+	if (!n.hasPayload) {
+	    n.hasPayload = true;
+	    nrElements++;
+	}
+	n.payload = value;
+	return old;
+    }
+
+    /**
+     * Adds increment to the value mapped to key. Keys that are not
+     * present count as zero (not as the missing value), which is what
+     * counting needs.
+     *
+     * @return the new value mapped to key.
+     */
+    public int addTo(CharSequence key, int increment) {
+	return addTo((IntNode) findOrCreateNode(key), increment);
+    }
+
+    /**
+     * Same as addTo(key, 1)
+     */
+    public int increment(CharSequence key) {
+	return addTo(key, 1);
+    }
+
+    int addTo(IntNode n, int increment) {
+	if (!n.hasPayload) {
+	    n.hasPayload = true;
+	    n.payload = 0;
+	    nrElements++;
+	}
+	return n.payload += increment;
+    }
+
+    /**
+     * Adds the values of other to the values of the same keys here,
+     * as addTo does for each of them. Both tries are walked together,
+     * so no key is built.
+     */
+    public void addAll(IntTrie other) {
+	// Pairs of nodes, other's below the one it is added to
+	ArrayDeque<Node> stack = new ArrayDeque<Node>();
+	stack.push(other.root);
+	stack.push(root);
+	while (!stack.isEmpty()) {
+	    IntNode to = (IntNode) stack.pop(), from = (IntNode) stack.pop();
+	    if (from.hasPayload) addTo(to, from.payload);
+	    for (int i = 0; i < from.nrChildren; ++i) {
+		stack.push(from.children[i]);
+		stack.push(getOrAddChild(to, from.children[i].label));
+	    }
+	}
+    }
+
+    /**
+     * Removes the mapping of key.
+     *
+     * @return the value that was mapped to key or the missing value if there was none.
+     */
+    public int removeInt(CharSequence key) {
+	IntNode n = (IntNode) findNode(key);
+	if (n == null || !n.hasPayload) return missingValue;
+	int old = n.payload;
+	removePayload(n);
+	return old;
+    }
+
+    /**
+     * Walks the trie one char at a time, creating nodes as it goes,
+     * for callers that produce keys incrementally (like a tokenizer)
+     * and want to update a value without ever building the key.
+     *
+     * The trie must not be modified by other means while a cursor is
+     * in the middle of a key.
+     */
+    public final class Cursor {
+	IntNode node = (IntNode) root;
+
+	/**
+	 * Goes back to the root, the empty key.
+	 */
+	public void reset() {
+	    node = (IntNode) root;
+	}
+
+	/**
+	 * Appends c to the current key.
+	 */
+	public void descend(char c) {
+	    node = (IntNode) getOrAddChild(node, c);
+	}
+
+	/**
+	 * Same as IntTrie.addTo on the current key.
+	 */
+	public int addTo(int increment) {
+	    return IntTrie.this.addTo(node, increment);
+	}
+
+	/**
+	 * @return the value of the current key, or the missing value if there is none.
+	 */
+	public int getInt() {
+	    return node.hasPayload ? node.payload : missingValue;
+	}
+
+	/**
+	 * Same as IntTrie.putInt on the current key.
+	 */
+	public int putInt(int value) {
+	    int old = getInt();
+	    if (!node.hasPayload) {
+		node.hasPayload = true;
+		nrElements++;
+	    }
+	    node.payload = value;
+	    return old;
+	}
+
+	/**
+	 * @return the current key, built from the labels on the path to the root.
+	 */
+	public String key() {
+	    return keyOf(node);
+	}
+    }
+
+    /**
+     * @return a new cursor at the root.
+     */
+    public Cursor cursor() {
+	return new Cursor();
+    }
+
+    /**
+     * Goes through the mappings in key order, like the entrySet
+     * iterator, but without an entry per mapping: the key is only
+     * built when asked for, so callers that look at the value first
+     * pay for the keys they want only.
+     *
+     * The trie must not be modified while walking it.
+     */
+    public final class Walker extends NodeIterator {
+	private IntNode node;
+	private boolean started;
+
+	/**
+	 * Moves to the next mapping.
+	 *
+	 * @return false when there are no more.
+	 */
+	public boolean next() {
+	    if (started && node == null) return false;
+	    node = (IntNode) (started ? advance() : first());
+	    started = true;
+	    return node != null;
+	}
+
+	/**
+	 * @return the value of the current mapping.
+	 */
+	public int getInt() {
+	    return node.payload;
+	}
+
+	/**
+	 * @return the key of the current mapping.
+	 */
+	@Override
+	public String key() {
+	    return super.key();
+	}
+    }
+
+    /**
+     * @return a new walker, before the first mapping.
+     */
+    public Walker walker() {
+	return new Walker();
+    }
+
+    @Override
+    public Integer get(Object key) {
+	if (!(key instanceof CharSequence)) return null;
+	IntNode n = (IntNode) findNode((CharSequence) key);
+	return n != null && n.hasPayload ? n.payload : null;
+    }
+
+    @Override
+    public Integer put(String key, Integer value) {
+	if (value == null) throw new NullPointerException("Value of " + key + " is null");
+	IntNode n = (IntNode) findOrCreateNode(key);
+	Integer old = n.hasPayload ? n.payload : null;
+	if (!n.hasPayload) {
+	    n.hasPayload = true;
+	    nrElements++;
+	}
+	n.payload = value;
+	return old;
+    }
+
+    @Override
+    public Integer remove(Object key) {
+	if (!containsKey(key)) return null;
+	return removeInt((CharSequence) key);
+    }
+
+    /**
+     * Entries handed out by the entrySet iterator. The key is rebuilt
+     * when the entry is created, the value is read from and written
+     * to the node.
+     */
+    final class IntTrieEntry implements Map.Entry<String, Integer> {
+	final String key;
+	final IntNode node;
+
+	IntTrieEntry(String key, IntNode node) {
+	    this.key = key;
+	    this.node = node;
+	}
+
+	@Override
+	public String getKey() { return key; }
+
+	@Override
+	public Integer getValue() { return node.payload; }
+
+	public int getIntValue() { return node.payload; }
+
+	@Override
+	public Integer setValue(Integer value) {
+	    Integer old = node.payload;
+	    node.payload = value;
+	    return old;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+	    if (!(o instanceof Map.Entry)) return false;
+	    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+	    return key.equals(entry.getKey()) && getValue().equals(entry.getValue());
+	}
+
+	@Override
+	public int hashCode() {
+	    return key.hashCode() ^ node.payload;
+	}
+
+	@Override
+	public String toString() {
+	    return key + "=" + node.payload;
+	}
+    }
+
+    @Override
+    Map.Entry<String, Integer> newEntry(String key, Node n) {
+	return new IntTrieEntry(key, (IntNode) n);
+    }
+}
@@ -0,0 +1,198 @@
+package org.bifrost.trie;
+
+import java.util.Map;
+
+/**
+ * A Trie specialized for long values, typically used for counters and ids.
+ *
+ * Unlike Trie, no TrieEntry and no boxed value is kept per key: the
+ * value is stored inline in the node that terminates the key, and
+ * keys are not stored at all, see PrimitiveTrie.
+ *
+ * Lookups that find no mapping return the missing value given to the
+ * constructor (0 by default), so the primitive api never has to
+ * allocate.
+ */
+public class LongTrie extends PrimitiveTrie<Long> {
+    static final class LongNode extends Node {
+	long payload;
+
+	LongNode(Node parent, char label) {
+	    super(parent, label);
+	}
+
+	@Override
+	Node newChild(char label) {
+	    return new LongNode(this, label);
+	}
+    }
+
+    private final long missingValue;
+
+    /**
+     * Creates an empty LongTrie returning 0 for missing keys.
+     */
+    public LongTrie() {
+	this(0);
+    }
+
+    /**
+     * Creates an empty LongTrie.
+     *
+     * @param missingValue the value returned by getLong, putLong and removeLong when there is no mapping.
+     */
+    public LongTrie(long missingValue) {
+	this.missingValue = missingValue;
+    }
+
+    @Override
+    Node newRoot() {
+	return new LongNode(null, '\0');
+    }
+
+    public long getMissingValue() {
+	return missingValue;
+    }
+
+    /**
+     * @return the value mapped to key, or the missing value if there is none.
+     */
+    public long getLong(CharSequence key) {
+	LongNode n = (LongNode) findNode(key);
+	return n != null && n.hasPayload ? n.payload : missingValue;
+    }
+
+    /**
+     * Maps key to value.
+     *
+     * @return the previous value mapped to key, or the missing value if there was none.
+     */
+    public long putLong(CharSequence key, long value) {
+	LongNode n = (LongNode) findOrCreateNode(key);
+	long old = n.hasPayload ? n.payload : missingValue;
+	if (!n.hasPayload) {
+	    n.hasPayload = true;
+	    nrElements++;
+	}
+	n.payload = value;
+	return old;
+    }
+
+    /**
+     * Adds increment to the value mapped to key. Keys that are not
+     * present count as zero (not as the missing value), which is what
+     * counting needs.
+     *
+     * @return the new value mapped to key.
+     */
+    public long addTo(CharSequence key, long increment) {
+	return addTo((LongNode) findOrCreateNode(key), increment);
+    }
+
+    /**
+     * Same as addTo(key, 1)
+     */
+    public long increment(CharSequence key) {
+	return addTo(key, 1);
+    }
+
+    long addTo(LongNode n, long increment) {
+	if (!n.hasPayload) {
+	    n.hasPayload = true;
+	    n.payload = 0;
+	    nrElements++;
+	}
+	return n.payload += increment;
+    }
+
+    /**
+     * Removes the mapping of key.
+     *
+     * @return the value that was mapped to key or the missing value if there was none.
+     */
+    public long removeLong(CharSequence key) {
+	LongNode n = (LongNode) findNode(key);
+	if (n == null || !n.hasPayload) return missingValue;
+	long old = n.payload;
+	removePayload(n);
+	return old;
+    }
+
+    @Override
+    public Long get(Object key) {
+	if (!(key instanceof CharSequence)) return null;
+	LongNode n = (LongNode) findNode((CharSequence) key);
+	return n != null && n.hasPayload ? n.payload : null;
+    }
+
+    @Override
+    public Long put(String key, Long value) {
+	if (value == null) throw new NullPointerException("Value of " + key + " is null");
+	LongNode n = (LongNode) findOrCreateNode(key);
+	Long old = n.hasPayload ? n.payload : null;
+	if (!n.hasPayload) {
+	    n.hasPayload = true;
+	    nrElements++;
+	}
+	n.payload = value;
+	return old;
+    }
+
+    @Override
+    public Long remove(Object key) {
+	if (!containsKey(key)) return null;
+	return removeLong((CharSequence) key);
+    }
+
+    /**
+     * Entries handed out by the entrySet iterator. The key is rebuilt
+     * when the entry is created, the value is read from and written
+     * to the node.
+     */
+    final class LongTrieEntry implements Map.Entry<String, Long> {
+	final String key;
+	final LongNode node;
+
+	LongTrieEntry(String key, LongNode node) {
+	    this.key = key;
+	    this.node = node;
+	}
+
+	@Override
+	public String getKey() { return key; }
+
+	@Override
+	public Long getValue() { return node.payload; }
+
+	public long getLongValue() { return node.payload; }
+
+	@Override
+	public Long setValue(Long value) {
+	    Long old = node.payload;
+	    node.payload = value;
+	    return old;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+	    if (!(o instanceof Map.Entry)) return false;
+	    Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+	    return key.equals(entry.getKey()) && getValue().equals(entry.getValue());
+	}
+
+	@Override
+	public int hashCode() {
+	    return key.hashCode() ^ Long.hashCode(node.payload);
+	}
+
+	@Override
+	public String toString() {
+	    return key + "=" + node.payload;
+	}
+    }
+
+    @Override
+    Map.Entry<String, Long> newEntry(String key, Node n) {
+	return new LongTrieEntry(key, (LongNode) n);
+    }
+}
@@ -0,0 +1,286 @@
+package org.bifrost.trie;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * What IntTrie and LongTrie have in common: the nodes without their
+ * payload, lookup, pruning and iteration. The subclasses add the
+ * payload to the node and the primitive api on top.
+ *
+ * Keys are not stored at all. Instead they are reconstructed from the
+ * edge labels when iterating, which is also why keys come out as
+ * Strings in alphabetical (UTF-16) order.
+ */
+abstract class PrimitiveTrie<V> extends AbstractMap<String, V> {
+    static final Node[] NO_CHILDREN = new Node[0];
+
+    /**
+     * A node knows the label of the edge leading to it, which saves
+     * us the Edge objects of Trie.  Children are kept in an array
+     * sorted by label, so they can be binary searched and iterated in
+     * order.
+     */
+    abstract static class Node {
+	final Node parent;
+	final char label;
+	Node[] children;
+	int nrChildren;
+	boolean hasPayload;
+
+	Node(Node parent, char label) {
+	    this.parent = parent;
+	    this.label = label;
+	    this.children = NO_CHILDREN;
+	}
+
+	/**
+	 * @return a new node of the same kind, with this as parent.
+	 */
+	abstract Node newChild(char label);
+
+	/**
+	 * @return the index of the child with label c, or (-(insertion point) - 1) if there is none.
+	 */
+	int indexOf(char c) {
+	    int lo = 0, hi = nrChildren - 1;
+	    while (lo <= hi) {
+		int mid = (lo + hi) >>> 1;
+		char l = children[mid].label;
+		if (l < c) {
+		    lo = mid + 1;
+		} else if (l > c) {
+		    hi = mid - 1;
+		} else {
+		    return mid;
+		}
+	    }
+	    return -(lo + 1);
+	}
+
+	Node getChild(char c) {
+	    int i = indexOf(c);
+	    return i >= 0 ? children[i] : null;
+	}
+
+	Node getOrAddChild(char c) {
+	    int i = indexOf(c);
+	    if (i >= 0) return children[i];
+	    i = -(i + 1);
+	    if (nrChildren == children.length) {
+		children = Arrays.copyOf(children, nrChildren == 0 ? 2 : nrChildren * 2);
+	    }
+	    System.arraycopy(children, i, children, i + 1, nrChildren - i);
+	    Node child = newChild(c);
+	    children[i] = child;
+	    nrChildren++;
+	    return child;
+	}
+
+	void removeChild(Node child) {
+	    int i = indexOf(child.label);
+	    assert i >= 0 && children[i] == child;
+	    System.arraycopy(children, i + 1, children, i, nrChildren - i - 1);
+	    children[--nrChildren] = null;
+	    if (nrChildren == 0) children = NO_CHILDREN;
+	}
+    }
+
+    Node root;
+    /** Number of keys, see Trie.nrElements */
+    int nrElements;
+    /** Number of nodes, the root included */
+    int nrNodes = 1;
+
+    PrimitiveTrie() {
+	root = newRoot();
+    }
+
+    abstract Node newRoot();
+
+    /**
+     * @return the entry handed out by the entrySet iterator for n.
+     */
+    abstract Map.Entry<String, V> newEntry(String key, Node n);
+
+    Node findNode(CharSequence s) {
+	Node node = root;
+	for (int i = 0; i < s.length() && node != null; ++i) {
+	    node = node.getChild(s.charAt(i));
+	}
+	return node;
+    }
+
+    Node findOrCreateNode(CharSequence s) {
+	Node node = root;
+	for (int i = 0; i < s.length(); ++i) {
+	    node = getOrAddChild(node, s.charAt(i));
+	}
+	return node;
+    }
+
+    /**
+     * Same as n.getOrAddChild(c), counting the node if it is new.
+     */
+    Node getOrAddChild(Node n, char c) {
+	int before = n.nrChildren;
+	Node child = n.getOrAddChild(c);
+	nrNodes += n.nrChildren - before;
+	return child;
+    }
+
+    /**
+     * Takes the payload off n, and the nodes no longer needed out of the trie.
+     */
+    void removePayload(Node n) {
+	n.hasPayload = false;
+	pruneUpwards(n);
+	nrElements--;
+    }
+
+    void pruneUpwards(Node n) {
+	while (n.nrChildren == 0 && !n.hasPayload && n.parent != null) {
+	    n.parent.removeChild(n);
+	    nrNodes--;
+	    n = n.parent;
+	}
+    }
+
+    /**
+     * Builds the key of n by following the parent pointers to the root.
+     */
+    static String keyOf(Node n) {
+	int len = 0;
+	for (Node m = n; m.parent != null; m = m.parent) len++;
+	char[] key = new char[len];
+	for (Node m = n; m.parent != null; m = m.parent) key[--len] = m.label;
+	return new String(key);
+    }
+
+    public boolean containsKey(CharSequence key) {
+	Node n = findNode(key);
+	return n != null && n.hasPayload;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+	return key instanceof CharSequence && containsKey((CharSequence) key);
+    }
+
+    @Override
+    public int size() {
+	return nrElements;
+    }
+
+    /**
+     * @return the number of nodes, which grows with the number of
+     * distinct prefixes of the keys rather than with their total
+     * length; for estimating the memory used.
+     */
+    public int getNodeCount() {
+	return nrNodes;
+    }
+
+    @Override
+    public void clear() {
+	nrElements = 0;
+	nrNodes = 1;
+	root = newRoot();
+    }
+
+    /**
+     * Depth-first walk over the nodes with a payload, in label order.
+     * The current path is kept in a char buffer, so building a key
+     * costs only the String.
+     */
+    class NodeIterator {
+	Node[] nodes = new Node[16];
+	int[] childIndex = new int[16];
+	char[] path = new char[16];
+	int depth = 0;
+
+	NodeIterator() {
+	    nodes[0] = root;
+	}
+
+	/**
+	 * Moves to the next node carrying a payload, or returns null when there are none.
+	 */
+	Node advance() {
+	    while (depth >= 0) {
+		Node cur = nodes[depth];
+		if (childIndex[depth] < cur.nrChildren) {
+		    Node child = cur.children[childIndex[depth]++];
+		    if (++depth == nodes.length) {
+			nodes = Arrays.copyOf(nodes, depth * 2);
+			childIndex = Arrays.copyOf(childIndex, depth * 2);
+			path = Arrays.copyOf(path, depth * 2);
+		    }
+		    nodes[depth] = child;
+		    childIndex[depth] = 0;
+		    path[depth - 1] = child.label;
+		    if (child.hasPayload) return child;
+		} else {
+		    depth--;
+		}
+	    }
+	    return null;
+	}
+
+	/**
+	 * @return the first node, which is the root if it has a payload.
+	 */
+	Node first() {
+	    return root.hasPayload ? root : advance();
+	}
+
+	/**
+	 * @return the key of the node advance or first returned last.
+	 */
+	String key() {
+	    return new String(path, 0, depth);
+	}
+    }
+
+    final class EntryIterator extends NodeIterator implements Iterator<Map.Entry<String, V>> {
+	Node next = first();
+
+	@Override
+	public boolean hasNext() {
+	    return next != null;
+	}
+
+	@Override
+	public Map.Entry<String, V> next() {
+	    if (next == null) throw new NoSuchElementException();
+	    Map.Entry<String, V> entry = newEntry(key(), next);
+	    next = advance();
+	    return entry;
+	}
+
+	@Override
+	public void remove() {
+	    throw new UnsupportedOperationException();
+	}
+    }
+
+    @Override
+    public Set<Map.Entry<String, V>> entrySet() {
+	return new AbstractSet<Map.Entry<String, V>>() {
+	    @Override
+	    public int size() {
+		return nrElements;
+	    }
+
+	    @Override
+	    public Iterator<Map.Entry<String, V>> iterator() {
+		return new EntryIterator();
+	    }
+	};
+    }
+}
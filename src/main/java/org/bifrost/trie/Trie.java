@@ -1,14 +1,18 @@
 package org.bifrost.trie;
 
 import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.AbstractSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.List;
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.Stack;
+import org.bifrost.metrics.Metrics;
 
 /**
  * A trie or a prefix tree is a map-datastructure that is very well-suited for mapping
@@ -54,7 +58,11 @@ public class Trie<K extends CharSequence, V> extends AbstractMap<K, V> {
      */ 
     class Node {
 	final Node parent;
-	final LinkedList<Edge> children; 
+	/**
+	 * A LinkedList while the trie is built. After compact() an
+	 * exactly sized ArrayList, or the shared empty list for leaves.
+	 */
+	List<Edge> children; 
 	boolean hasPayload;
 	TrieEntry payload;
 	
@@ -84,6 +92,7 @@ public class Trie<K extends CharSequence, V> extends AbstractMap<K, V> {
 	}
 
 	public void addChild(Edge child) { 
+	    if (children == Collections.EMPTY_LIST) children = new LinkedList<Edge>();
 	    children.add(child);
 	}
 	
@@ -138,49 +147,127 @@ public class Trie<K extends CharSequence, V> extends AbstractMap<K, V> {
 	
 	/**
 	 * We have a guarantee that the mapping still exists in the map, so this is basically just a payload exchange.
-	 * if the mapping does not exist we are undefined (but will generally pull out allright anyway).
+	 * if the mapping does not exist only the entry changes.
+	 *
+	 * @return the old value.
 	 */
 	@Override 
 	public V setValue(V v) {
+	    V old = this.v;
 	    this.v = v;
-	    return this.getValue();
+	    return old;
+	}
+    }
+
+    /**
+     * An entry that knows its node, for subtries that keep something
+     * derived from the values: setValue is a payload exchange they
+     * hear of through payloadReplaced, as long as the mapping is still
+     * in the trie. Plain tries do without, see newEntry.
+     */
+    class NodeEntry extends TrieEntry {
+	/** The node this is the payload of, or was until removed */
+	final Node node;
+
+	NodeEntry(K k, V v, Node node) {
+	    super(k, v);
+	    this.node = node;
+	}
+
+	@Override
+	public V setValue(V v) {
+	    return setEntryValue(this, v);
 	}
     }
 
     public Trie() {
 	nrElements = 0;
-	root = new Node(null);
+	root = newNode(null);
     }
 
     @Override
     public void clear() { 
 	nrElements = 0;
-	root = new Node(null);
+	root = newNode(null);
+    }
+
+    /**
+     * Creates every node of the trie, so subclasses can keep more in them.
+     */
+    Node newNode(Node parent) {
+	return new Node(parent);
+    }
+
+    /**
+     * Called when n is given a payload it did not have.
+     */
+    void payloadAdded(Node n) {
+    }
+
+    /**
+     * Called when the payload of n is replaced.
+     */
+    void payloadReplaced(Node n) {
+    }
+
+    /**
+     * Called just before the payload of n is deleted.
+     */
+    void payloadRemoved(Node n) {
+    }
+
+    /**
+     * Creates the payload of node. Subtries that must hear of setValue
+     * on their entries return a NodeEntry.
+     */
+    TrieEntry newEntry(K k, V value, Node node) {
+	return new TrieEntry(k, value);
+    }
+
+    /**
+     * Sets the value of an entry handed out by entrySet.
+     *
+     * @return the old value.
+     */
+    V setEntryValue(NodeEntry entry, V value) {
+	V old = entry.v;
+	entry.v = value;
+	if (entry.node.getPayload() == entry) payloadReplaced(entry.node);
+	return old;
     }
 
     @Override
     public V put(K k, V value) { 
 	Node node = root;
 	CharSequence key = (CharSequence) k;
+	int depth = key.length();
 	outer: for (int i = 0; i < key.length(); ++i ) {
 	    // Traverse until we have knocked of as much prefix as exists in the trie from k.
 	    char c = key.charAt(i);
+	    int scanned = 0;
 	    for(Edge child: node.getChildren()) {
+		if (Metrics.ENABLED) scanned++;
 		if (child.getLabel() == c) {
 		    node = child.getTo();
+		    if (Metrics.ENABLED) Metrics.TRIE_SIBLING_SCAN.record(scanned);
 		    continue outer;
 		}
 	    } 
+	    if (Metrics.ENABLED) Metrics.TRIE_SIBLING_SCAN.record(scanned);
+	    depth = i;
 	    
 	    // Key is novel, all prefix of k we could eat has been eaten.
 	    for (;i < key.length(); ++i) {
-		Node newNode = new Node(node);
+		Node newNode = newNode(node);
 		Edge e = new Edge(key.charAt(i), newNode);
 		node.addChild(e);
 		node = newNode;
 	    }
 	}
 	
+	// The prefix followed, all of the key if it was there
+	if (Metrics.ENABLED) Metrics.TRIE_DESCENT_DEPTH.record(depth);
+
 	//Finally add payload
 	TrieEntry oldPayload = null;
 	if (node.hasPayload()) { 
@@ -188,7 +275,12 @@ public class Trie<K extends CharSequence, V> extends AbstractMap<K, V> {
 	} else {
 	    nrElements++;
 	}
-	node.setPayload(new TrieEntry (k, value));
+	node.setPayload(newEntry(k, value, node));
+	if (oldPayload == null) {
+	    payloadAdded(node);
+	} else {
+	    payloadReplaced(node);
+	}
 	return oldPayload == null ? null : oldPayload.getValue();
     }
 
@@ -317,19 +409,28 @@ public class Trie<K extends CharSequence, V> extends AbstractMap<K, V> {
 	Node node = root;
 	outer: for (int i = 0; i < s.length(); ++i) {
 	    char c = s.charAt(i);
+	    int scanned = 0;
 	    for (Edge child: node.getChildren()) {
+		if (Metrics.ENABLED) scanned++;
 		if (child.getLabel() == c) {
 		    node = child.getTo();
+		    if (Metrics.ENABLED) Metrics.TRIE_SIBLING_SCAN.record(scanned);
 		    continue outer;
 		}
 	    } 
+	    if (Metrics.ENABLED) {
+		Metrics.TRIE_SIBLING_SCAN.record(scanned);
+		Metrics.TRIE_DESCENT_DEPTH.record(i);
+	    }
 	    return null;
 	}
+	if (Metrics.ENABLED) Metrics.TRIE_DESCENT_DEPTH.record(s.length());
 	return node;
     }
 
     void getRidOfNode(Node n) {
 	assert n.hasPayload();
+	payloadRemoved(n);
 	n.deletePayload();
 	pruneUpwards(n);
 	nrElements--;
@@ -338,15 +439,104 @@ public class Trie<K extends CharSequence, V> extends AbstractMap<K, V> {
     void pruneUpwards(Node n) { 
 	while (n.getChildren().isEmpty() && !n.hasPayload() && n.hasParent()) {
 	    Node parent = n.getParent();
-	    int i = 0;
-	    Collection<Edge> children = parent.getChildren();
-	    for(Edge e: children) {
-		if (e.getTo() == n) break;
-		++i;
+	    boolean removed = false;
+	    for (Iterator<Edge> it = parent.getChildren().iterator(); it.hasNext(); ) {
+		if (it.next().getTo() == n) {
+		    it.remove();
+		    removed = true;
+		    break;
+		}
 	    }
-	    assert i < children.size();
-	    children.remove(i);
+	    assert removed;
 	    n = parent;
 	}
     }
+
+    /*
+     * Estimated sizes of the parts of a trie, with 12 byte object
+     * headers, 4 byte references and 8 byte alignment.
+     */
+    static final int NODE_BYTES = 32;
+    static final int EDGE_BYTES = 24;
+    static final int ENTRY_BYTES = 24;
+    static final int NODE_ENTRY_BYTES = 32;
+    static final int LINKED_LIST_BYTES = 32;
+    static final int LINKED_LIST_NODE_BYTES = 24;
+    static final int ARRAY_LIST_BYTES = 24;
+
+    static long arrayBytes(int length) {
+	return (16 + 4L * length + 7) & ~7;
+    }
+
+    static long childListBytes(List<?> children) {
+	if (children == Collections.EMPTY_LIST) return 0;
+	if (children instanceof LinkedList) return LINKED_LIST_BYTES + children.size() * LINKED_LIST_NODE_BYTES;
+	// An ArrayList, assumed to be trimmed
+	return ARRAY_LIST_BYTES + (children.isEmpty() ? 0 : arrayBytes(children.size()));
+    }
+
+    /**
+     * Walks the whole trie, so this is O(number of nodes).
+     *
+     * @return the shape and estimated size of the trie.
+     */
+    public TrieStats getStats() {
+	long nodes = 0, payloads = 0, chainNodes = 0, depthSum = 0, bytes = 0;
+	int maxDepth = 0;
+	long[] fanOut = new long[1];
+	ArrayDeque<Node> stack = new ArrayDeque<Node>();
+	ArrayDeque<Integer> depths = new ArrayDeque<Integer>();
+	stack.push(root);
+	depths.push(0);
+	while (!stack.isEmpty()) {
+	    Node n = stack.pop();
+	    int depth = depths.pop();
+	    int nrChildren = n.getChildren().size();
+	    nodes++;
+	    maxDepth = Math.max(maxDepth, depth);
+	    if (nrChildren >= fanOut.length) fanOut = Arrays.copyOf(fanOut, nrChildren + 1);
+	    fanOut[nrChildren]++;
+	    bytes += NODE_BYTES + nrChildren * EDGE_BYTES + childListBytes(n.getChildren());
+	    if (n.hasPayload()) {
+		payloads++;
+		depthSum += depth;
+		bytes += n.getPayload() instanceof Trie.NodeEntry ? NODE_ENTRY_BYTES : ENTRY_BYTES;
+	    } else if (nrChildren == 1) {
+		chainNodes++;
+	    }
+	    for (Edge e: n.getChildren()) {
+		stack.push(e.getTo());
+		depths.push(depth + 1);
+	    }
+	}
+	return new TrieStats(nodes, payloads, chainNodes, maxDepth, payloads == 0 ? 0 : (double) depthSum / payloads,
+			     fanOut, bytes);
+    }
+
+    /**
+     * Rebuilds the child list of every node as an ArrayList of
+     * exactly its size, which takes less memory than the LinkedLists
+     * the nodes are built with, and lets leaves share one empty list.
+     * The mappings and the iteration order stay the same. Nodes
+     * created or given their first child later get LinkedLists again.
+     *
+     * Chains of single-child nodes are left as they are, since every
+     * edge of a Trie is a single char; getStats().getChainNodeCount()
+     * tells how many there are.
+     */
+    public void compact() {
+	ArrayDeque<Node> stack = new ArrayDeque<Node>();
+	stack.push(root);
+	while (!stack.isEmpty()) {
+	    Node n = stack.pop();
+	    if (n.children.isEmpty()) {
+		n.children = Collections.<Edge>emptyList();
+	    } else if (n.children instanceof LinkedList) {
+		n.children = new ArrayList<Edge>(n.children);
+	    } else {
+		((ArrayList<Edge>) n.children).trimToSize();
+	    }
+	    for (Edge e: n.children) stack.push(e.getTo());
+	}
+    }
 }
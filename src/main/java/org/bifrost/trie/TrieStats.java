@@ -0,0 +1,74 @@
+package org.bifrost.trie;
+
+import java.util.Arrays;
+
+/**
+ * A snapshot of the shape of a Trie, see Trie.getStats().
+ *
+ * The retained size is an estimate for a 64 bit JVM with compressed
+ * references: it counts the nodes, edges, child lists and entries of
+ * the trie, but not the keys and values, which are shared with the
+ * caller.
+ */
+public final class TrieStats {
+    private final long nodeCount;
+    private final long payloadCount;
+    private final long chainNodeCount;
+    private final int maxDepth;
+    private final double averageDepth;
+    private final long[] fanOut;
+    private final long estimatedBytes;
+
+    TrieStats(long nodeCount, long payloadCount, long chainNodeCount, int maxDepth, double averageDepth,
+	      long[] fanOut, long estimatedBytes) {
+	this.nodeCount = nodeCount;
+	this.payloadCount = payloadCount;
+	this.chainNodeCount = chainNodeCount;
+	this.maxDepth = maxDepth;
+	this.averageDepth = averageDepth;
+	this.fanOut = fanOut;
+	this.estimatedBytes = estimatedBytes;
+    }
+
+    /** @return the number of nodes, the root included. */
+    public long getNodeCount() { return nodeCount; }
+
+    /** @return the number of nodes holding a value, that is the size of the map. */
+    public long getPayloadCount() { return payloadCount; }
+
+    /** @return the length of the longest key, or of the longest path if that is longer. */
+    public int getMaxDepth() { return maxDepth; }
+
+    /** @return the average length of the keys. */
+    public double getAverageDepth() { return averageDepth; }
+
+    /**
+     * @return the number of nodes with exactly n children.
+     */
+    public long getFanOut(int n) {
+	return n < fanOut.length ? fanOut[n] : 0;
+    }
+
+    /**
+     * @return the fan-out histogram: element n is the number of nodes with exactly n children.
+     */
+    public long[] getFanOutHistogram() {
+	return fanOut.clone();
+    }
+
+    /**
+     * @return the number of nodes with exactly one child and no
+     * value, the links of the chains a radix tree would collapse.
+     */
+    public long getChainNodeCount() { return chainNodeCount; }
+
+    /** @return the estimated number of bytes retained by the trie structure. */
+    public long getEstimatedBytes() { return estimatedBytes; }
+
+    @Override
+    public String toString() {
+	return String.format("[TrieStats: %d nodes, %d payloads, %d chain nodes, depth max %d avg %.2f, ~%d bytes, fan-out %s]",
+			     nodeCount, payloadCount, chainNodeCount, maxDepth, averageDepth, estimatedBytes,
+			     Arrays.toString(fanOut));
+    }
+}
@@ -0,0 +1,227 @@
+package org.bifrost.wordcounter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.function.BiConsumer;
+import org.bifrost.wordcounter.WordCounter.Word;
+
+/**
+ * Non-blocking word counting, with the words of
+ * WordCounter.DEFAULT_WORD_REGEX and the result of
+ * WordCounter.getMostCommonWords.
+ *
+ * The text is counted with a WordScanner as it arrives, either read
+ * chunk by chunk from a file with an AsynchronousFileChannel, or
+ * handed over by a Flow.Publisher. Only one chunk is asked for at a
+ * time, so memory use is bounded by the chunk size and the number of
+ * distinct words, not by the size of the text. No thread is blocked
+ * waiting for input; the counting is done by the threads delivering
+ * the chunks.
+ */
+public class AsyncWordCounter {
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private final int chunkSize;
+
+    public AsyncWordCounter() {
+	this(DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize the number of bytes read from a file at a time.
+     */
+    public AsyncWordCounter(int chunkSize) {
+	if (chunkSize < 1) throw new IllegalArgumentException("Illegal chunk size: " + chunkSize);
+	this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Reads and counts the file at path, one chunk at a time.
+     *
+     * @return a future completed with the nrWords most common words, or with the IOException reading failed with.
+     */
+    public CompletableFuture<List<Word>> countFile(Path path, Charset charset, int nrWords) {
+	CompletableFuture<List<Word>> result = new CompletableFuture<List<Word>>();
+	AsynchronousFileChannel channel;
+	try {
+	    channel = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+	} catch (IOException e) {
+	    result.completeExceptionally(e);
+	    return result;
+	}
+	new FileReader(channel, new DecodingScanner(charset), nrWords, result).read();
+	return result;
+    }
+
+    /**
+     * Reads the next chunk when the previous one has been counted.
+     */
+    final class FileReader implements CompletionHandler<Integer, Void> {
+	final AsynchronousFileChannel channel;
+	final DecodingScanner scanner;
+	final int nrWords;
+	final CompletableFuture<List<Word>> result;
+	final ByteBuffer buffer = ByteBuffer.allocate(chunkSize);
+	long position;
+
+	FileReader(AsynchronousFileChannel channel, DecodingScanner scanner, int nrWords,
+		   CompletableFuture<List<Word>> result) {
+	    this.channel = channel;
+	    this.scanner = scanner;
+	    this.nrWords = nrWords;
+	    this.result = result;
+	}
+
+	void read() {
+	    if (result.isDone()) {
+		// Cancelled
+		close();
+		return;
+	    }
+	    channel.read(buffer, position, null, this);
+	}
+
+	@Override
+	public void completed(Integer n, Void attachment) {
+	    try {
+		if (n < 0) {
+		    close();
+		    scanner.finish();
+		    result.complete(WordCounter.mostCommon(scanner.counts, nrWords));
+		    return;
+		}
+		position += n;
+		buffer.flip();
+		scanner.feed(buffer);
+		buffer.clear();
+	    } catch (RuntimeException e) {
+		failed(e, attachment);
+		return;
+	    }
+	    read();
+	}
+
+	@Override
+	public void failed(Throwable e, Void attachment) {
+	    close();
+	    result.completeExceptionally(e);
+	}
+
+	private void close() {
+	    try {
+		channel.close();
+	    } catch (IOException e) {
+		// Nothing more to read anyway
+	    }
+	}
+    }
+
+    /**
+     * Counts the text published as CharBuffers. The buffers are
+     * consumed before the next one is requested, so the publisher may
+     * reuse them.
+     *
+     * @return a future completed with the nrWords most common words
+     * when the publisher completes, or exceptionally if it fails.
+     * Cancelling the future cancels the subscription.
+     */
+    public CompletableFuture<List<Word>> countChars(Flow.Publisher<? extends CharBuffer> publisher, int nrWords) {
+	CountingSubscriber<CharBuffer> subscriber = new CountingSubscriber<CharBuffer>(null, nrWords) {
+	    @Override
+	    void feed(CharBuffer chunk) {
+		scanner.feed(chunk);
+	    }
+	};
+	publisher.subscribe(subscriber);
+	return subscriber.result;
+    }
+
+    /**
+     * Counts the text published as ByteBuffers of text encoded with
+     * charset. Chunks may end in the middle of a char. The buffers are
+     * consumed before the next one is requested.
+     *
+     * @see #countChars(Flow.Publisher, int)
+     */
+    public CompletableFuture<List<Word>> countBytes(Flow.Publisher<? extends ByteBuffer> publisher, Charset charset,
+						    int nrWords) {
+	CountingSubscriber<ByteBuffer> subscriber = new CountingSubscriber<ByteBuffer>(charset, nrWords) {
+	    @Override
+	    void feed(ByteBuffer chunk) {
+		scanner.feed(chunk);
+	    }
+	};
+	publisher.subscribe(subscriber);
+	return subscriber.result;
+    }
+
+    /**
+     * Requests one chunk at a time, counting it before asking for the next.
+     */
+    abstract static class CountingSubscriber<T> implements Flow.Subscriber<T> {
+	final DecodingScanner scanner;
+	final int nrWords;
+	final CompletableFuture<List<Word>> result = new CompletableFuture<List<Word>>();
+	Flow.Subscription subscription;
+
+	CountingSubscriber(Charset charset, int nrWords) {
+	    this.scanner = new DecodingScanner(charset == null ? Charset.defaultCharset() : charset);
+	    this.nrWords = nrWords;
+	}
+
+	abstract void feed(T chunk);
+
+	@Override
+	public void onSubscribe(final Flow.Subscription s) {
+	    if (subscription != null) {
+		s.cancel();
+		return;
+	    }
+	    subscription = s;
+	    result.whenComplete(new BiConsumer<List<Word>, Throwable>() {
+		    @Override
+		    public void accept(List<Word> words, Throwable e) {
+			if (e != null) s.cancel();
+		    }
+		});
+	    s.request(1);
+	}
+
+	@Override
+	public void onNext(T chunk) {
+	    if (result.isDone()) return;
+	    try {
+		feed(chunk);
+	    } catch (RuntimeException e) {
+		result.completeExceptionally(e);
+		return;
+	    }
+	    subscription.request(1);
+	}
+
+	@Override
+	public void onError(Throwable e) {
+	    result.completeExceptionally(e);
+	}
+
+	@Override
+	public void onComplete() {
+	    if (result.isDone()) return;
+	    try {
+		scanner.finish();
+		result.complete(WordCounter.mostCommon(scanner.counts, nrWords));
+	    } catch (RuntimeException e) {
+		result.completeExceptionally(e);
+	    }
+	}
+    }
+}
@@ -0,0 +1,22 @@
+package org.bifrost.wordcounter;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A growable byte array.
+ */
+final class Bytes {
+    byte[] buf = new byte[64];
+    int size;
+
+    void write(byte[] b, int off, int len) {
+	if (size + len > buf.length) buf = Arrays.copyOf(buf, Math.max(size + len, buf.length * 2));
+	System.arraycopy(b, off, buf, size, len);
+	size += len;
+    }
+
+    ByteBuffer buffer() {
+	return ByteBuffer.wrap(buf, 0, size);
+    }
+}
@@ -0,0 +1,118 @@
+package org.bifrost.wordcounter;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import org.bifrost.trie.IntTrie;
+
+/**
+ * A WordScanner fed with chunks of encoded bytes. Chars split
+ * between two chunks are put together from a small carry buffer, so
+ * chunks can end anywhere. Malformed input is replaced, as
+ * new String(bytes, charset) does.
+ */
+final class DecodingScanner {
+    static final int CHAR_BUFFER_SIZE = 8192;
+    /** Room for the start of a char that continues in the next chunk */
+    private static final int CARRY_SIZE = 32;
+
+    final IntTrie counts;
+    final WordScanner scanner;
+    private final CharsetDecoder decoder;
+    private final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+    private final ByteBuffer carry = ByteBuffer.allocate(CARRY_SIZE);
+
+    DecodingScanner(Charset charset) {
+	this(charset, new IntTrie());
+    }
+
+    /**
+     * @param counts where the words are counted.
+     */
+    DecodingScanner(Charset charset, IntTrie counts) {
+	this.counts = counts;
+	this.scanner = new WordScanner(counts);
+	decoder = charset.newDecoder()
+	    .onMalformedInput(CodingErrorAction.REPLACE)
+	    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * @return true if the scanner is between words after any byte
+     * isSeparator accepts, because charset encodes ASCII as itself and
+     * nothing else with bytes below 0x80. Text in such a charset can
+     * be cut after a separator and the parts scanned on their own.
+     */
+    static boolean splitsAtSeparators(Charset charset) {
+	return charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII)
+	    || charset.equals(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @return true if b is an ASCII char that is not a letter, dot,
+     * dash or line end, after which WordScanner is never in a word.
+     */
+    static boolean isSeparator(byte b) {
+	return b >= 0 && (char) ((b | 0x20) - 'a') > 'z' - 'a' && b != '.' && b != '-' && b != '\r' && b != '\n';
+    }
+
+    /**
+     * Scans the remaining bytes of in, consuming all of them.
+     */
+    void feed(ByteBuffer in) {
+	while (carry.position() > 0 && in.hasRemaining()) {
+	    carry.put(in.get());
+	    carry.flip();
+	    decode(carry, false);
+	    carry.compact();
+	}
+	decode(in, false);
+	if (in.hasRemaining()) carry.put(in);
+    }
+
+    /**
+     * Scans the remaining chars of in.
+     */
+    void feed(CharBuffer in) {
+	if (in.hasArray()) {
+	    scanner.feed(in.array(), in.arrayOffset() + in.position(), in.remaining());
+	} else {
+	    // As a CharSequence, a CharBuffer starts at its position
+	    scanner.feed(in, 0, in.remaining());
+	}
+	in.position(in.limit());
+    }
+
+    /**
+     * Decodes what is left and ends the last word.
+     */
+    void finish() {
+	carry.flip();
+	decode(carry, true);
+	carry.clear();
+	CoderResult res;
+	do {
+	    res = decoder.flush(chars);
+	    drain();
+	} while (res.isOverflow());
+	scanner.finish();
+    }
+
+    private void decode(ByteBuffer in, boolean endOfInput) {
+	CoderResult res;
+	do {
+	    res = decoder.decode(in, chars, endOfInput);
+	    drain();
+	} while (res.isOverflow());
+    }
+
+    private void drain() {
+	chars.flip();
+	scanner.feed(chars.array(), chars.arrayOffset(), chars.limit());
+	chars.clear();
+    }
+}
@@ -0,0 +1,374 @@
+package org.bifrost.wordcounter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import org.bifrost.trie.IntTrie;
+
+/**
+ * Counts the words of a gzip file with WordScanner, decompressing
+ * straight into the scanner so the text never exists as a whole.
+ *
+ * A gzip file is a chain of members, each compressed on its own;
+ * block-compressed files (bgzip) and concatenated or parallel gzip
+ * output have many of them. Members can only be found by their
+ * header, 1f 8b 08, and the same bytes can also occur inside
+ * compressed data, so members are found speculatively: the file is
+ * divided in ranges, and a fork/join worker per range inflates from
+ * the first of those headers in its range that turns out to be a
+ * whole member, with the right CRC and size, and on through the
+ * members following it until past the end of its range. The ranges
+ * are then put together in file order, keeping only those that
+ * start where the previous one ended. Whatever is not covered that
+ * way, say a single-member file, is inflated in sequence, as
+ * GZIPInputStream would.
+ *
+ * A range is counted with a scanner of its own, which works since
+ * the scanner is between words after any char that is not an ASCII
+ * letter, dot, dash or line end (a separator). The text of a range
+ * up to its first separator and after its last one is kept aside and
+ * scanned in sequence when the ranges are put together, so words
+ * split between ranges come out as in the decompressed text. Cutting
+ * the text at bytes like that is only safe in charsets that encode
+ * ASCII as itself and nothing else with bytes below 0x80; other
+ * charsets are always inflated in sequence.
+ */
+final class GzipWordCounter {
+    /** Compressed bytes per fork/join leaf */
+    static final int RANGE = 1 << 20;
+    static final int BUFFER = 64 * 1024;
+
+    private static final int FHCRC = 2, FEXTRA = 4, FNAME = 8, FCOMMENT = 16;
+
+    private GzipWordCounter() {
+    }
+
+    /**
+     * @return the count of every word in the decompressed text of the gzip file path.
+     */
+    static IntTrie count(Path path, Charset charset) throws IOException {
+	IntTrie counts = new IntTrie();
+	DecodingScanner scanner = new DecodingScanner(charset, counts);
+	try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+	    long length = channel.size();
+	    long pos = 0;
+	    if (DecodingScanner.splitsAtSeparators(charset)) {
+		Segment segments;
+		try {
+		    segments = new RangeTask(channel, charset, length, 0, length).invoke();
+		} catch (UncheckedIOException e) {
+		    throw e.getCause();
+		}
+		for (Segment s = segments; s != null; s = s.next) {
+		    // Not on the chain of members, or inside a member already counted
+		    if (s.start < pos) continue;
+		    if (s.start > pos) break;
+		    s.addTo(counts, scanner);
+		    pos = s.end;
+		}
+	    }
+	    // Trailing bytes that are not a member are ignored, as GZIPInputStream does
+	    if (pos == 0 || pos < length && new Source(channel).header(pos)) {
+		inflate(Channels.newInputStream(channel.position(pos)), scanner);
+	    }
+	}
+	scanner.finish();
+	return counts;
+    }
+
+    /**
+     * Inflates the members of in one after the other into scanner.
+     */
+    private static void inflate(InputStream in, DecodingScanner scanner) throws IOException {
+	GZIPInputStream gzip = new GZIPInputStream(in, BUFFER);
+	byte[] buf = new byte[BUFFER];
+	for (int n; (n = gzip.read(buf)) >= 0; ) {
+	    scanner.feed(ByteBuffer.wrap(buf, 0, n));
+	}
+    }
+
+    /**
+     * The decompressed text of the members from file offset start to
+     * end: the head up to and including its first separator, the words
+     * between that and the last separator counted, and the tail after
+     * it. Without a separator all of the text is in the head.
+     */
+    static final class Segment {
+	long start, end;
+	final Bytes head = new Bytes(), tail = new Bytes();
+	final DecodingScanner middle;
+	boolean hasSeparator;
+	Segment next;
+
+	Segment(Charset charset, long start) {
+	    this.start = start;
+	    this.middle = new DecodingScanner(charset);
+	}
+
+	void accept(byte[] b, int off, int len) {
+	    int end = off + len;
+	    if (!hasSeparator) {
+		while (off < end && !DecodingScanner.isSeparator(b[off])) off++;
+		if (off == end) {
+		    head.write(b, end - len, len);
+		    return;
+		}
+		head.write(b, end - len, off + 1 - (end - len));
+		hasSeparator = true;
+		off++;
+	    }
+	    int last = end - 1;
+	    while (last >= off && !DecodingScanner.isSeparator(b[last])) last--;
+	    if (last >= off) {
+		middle.feed(tail.buffer());
+		tail.size = 0;
+		middle.feed(ByteBuffer.wrap(b, off, last + 1 - off));
+		off = last + 1;
+	    }
+	    tail.write(b, off, end - off);
+	}
+
+	/**
+	 * Takes over the text of other, which starts where this ends.
+	 * What other counted is added to the counts of this, and the
+	 * text where they meet is scanned.
+	 */
+	void append(Segment other) {
+	    accept(other.head.buf, 0, other.head.size);
+	    if (other.hasSeparator) {
+		// The head ends with a separator, so the tail of this is empty now
+		middle.counts.addAll(other.middle.counts);
+		tail.write(other.tail.buf, 0, other.tail.size);
+	    }
+	    end = other.end;
+	}
+
+	/**
+	 * Adds the counts of the segment, scanning its head and tail with scanner.
+	 */
+	void addTo(IntTrie counts, DecodingScanner scanner) {
+	    scanner.feed(head.buffer());
+	    counts.addAll(middle.counts);
+	    scanner.feed(tail.buffer());
+	}
+    }
+
+    /**
+     * Buffered positional reads from a channel, so workers can share it.
+     */
+    static final class Source {
+	final FileChannel channel;
+	final byte[] buf = new byte[BUFFER];
+	long bufStart;
+	int pos, limit;
+
+	Source(FileChannel channel) {
+	    this.channel = channel;
+	}
+
+	void seek(long offset) {
+	    bufStart = offset;
+	    pos = limit = 0;
+	}
+
+	long position() {
+	    return bufStart + pos;
+	}
+
+	/**
+	 * Reads the bytes following the buffer, which must be used up.
+	 *
+	 * @return false at the end of the file.
+	 */
+	boolean fill() throws IOException {
+	    bufStart += limit;
+	    pos = limit = 0;
+	    ByteBuffer bb = ByteBuffer.wrap(buf);
+	    while (bb.hasRemaining() && channel.read(bb, bufStart + bb.position()) >= 0) {
+	    }
+	    limit = bb.position();
+	    return limit > 0;
+	}
+
+	int read() throws IOException {
+	    if (pos == limit && !fill()) return -1;
+	    return buf[pos++] & 0xff;
+	}
+
+	private boolean skip(int n) throws IOException {
+	    while (n-- > 0) {
+		if (read() < 0) return false;
+	    }
+	    return true;
+	}
+
+	private boolean skipString() throws IOException {
+	    for (int b; (b = read()) != 0; ) {
+		if (b < 0) return false;
+	    }
+	    return true;
+	}
+
+	private long readInt() throws IOException {
+	    long v = 0;
+	    for (int i = 0; i < 4; ++i) {
+		int b = read();
+		if (b < 0) return -1;
+		v |= (long) b << (8 * i);
+	    }
+	    return v;
+	}
+
+	/**
+	 * Reads a member header at offset, see RFC 1952.
+	 *
+	 * @return false if there is none.
+	 */
+	boolean header(long offset) throws IOException {
+	    seek(offset);
+	    if (read() != 0x1f || read() != 0x8b || read() != 8) return false;
+	    int flags = read();
+	    if (flags < 0 || (flags & 0xe0) != 0 || !skip(6)) return false;
+	    if ((flags & FEXTRA) != 0) {
+		int lo = read(), hi = read();
+		if (hi < 0 || !skip(lo | hi << 8)) return false;
+	    }
+	    if ((flags & FNAME) != 0 && !skipString()) return false;
+	    if ((flags & FCOMMENT) != 0 && !skipString()) return false;
+	    return (flags & FHCRC) == 0 || skip(2);
+	}
+
+	/**
+	 * Inflates the member at offset into segment.
+	 *
+	 * @return the offset after the member, or -1 if there is no whole member there.
+	 */
+	long member(long offset, Segment segment, Inflater inflater, byte[] out) throws IOException {
+	    if (!header(offset)) return -1;
+	    inflater.reset();
+	    CRC32 crc = new CRC32();
+	    long size = 0;
+	    try {
+		while (!inflater.finished()) {
+		    if (inflater.needsInput()) {
+			if (pos == limit && !fill()) return -1;
+			inflater.setInput(buf, pos, limit - pos);
+			pos = limit;
+		    }
+		    int n = inflater.inflate(out);
+		    if (n == 0 && inflater.needsDictionary()) return -1;
+		    crc.update(out, 0, n);
+		    size += n;
+		    segment.accept(out, 0, n);
+		}
+	    } catch (DataFormatException e) {
+		return -1;
+	    }
+	    pos -= inflater.getRemaining();
+	    if (readInt() != crc.getValue() || readInt() != (size & 0xffffffffL)) return -1;
+	    return position();
+	}
+    }
+
+    /**
+     * Counts the members starting in bytes [from, to) of the file, and
+     * those following them. The result is a chain of segments in file
+     * order, where segments that follow each other in the file are
+     * merged as they are joined, so a file of members that all are
+     * found ends up as a single segment.
+     */
+    static final class RangeTask extends RecursiveTask<Segment> {
+	private static final long serialVersionUID = 1L;
+
+	final FileChannel channel;
+	final Charset charset;
+	final long length, from, to;
+
+	RangeTask(FileChannel channel, Charset charset, long length, long from, long to) {
+	    this.channel = channel; this.charset = charset; this.length = length;
+	    this.from = from; this.to = to;
+	}
+
+	@Override
+	protected Segment compute() {
+	    if (to - from > RANGE) {
+		long mid = (from + to) >>> 1;
+		RangeTask right = new RangeTask(channel, charset, length, mid, to);
+		right.fork();
+		Segment left = new RangeTask(channel, charset, length, from, mid).compute();
+		return join(left, right.join());
+	    }
+	    try {
+		return count();
+	    } catch (IOException e) {
+		throw new UncheckedIOException(e);
+	    }
+	}
+
+	/**
+	 * Appends the chain right to the chain left, merging the last
+	 * segment of left with the first of right if they are adjacent.
+	 */
+	private static Segment join(Segment left, Segment right) {
+	    Segment last = left;
+	    while (last.next != null) last = last.next;
+	    if (last.start >= 0) {
+		// Inside a member of last, or no member at all: count() would skip these anyway
+		while (right != null && right.start < last.end) right = right.next;
+		if (right != null && right.start == last.end) {
+		    last.append(right);
+		    right = right.next;
+		}
+	    }
+	    last.next = right;
+	    return left;
+	}
+
+	private Segment count() throws IOException {
+	    // The range, and the rest of a header starting at its end
+	    ByteBuffer range = ByteBuffer.allocate((int) (Math.min(to + 3, length) - from));
+	    while (range.hasRemaining() && channel.read(range, from + range.position()) >= 0) {
+	    }
+	    byte[] bytes = range.array();
+	    Source members = new Source(channel);
+	    Inflater inflater = new Inflater(true);
+	    byte[] out = new byte[BUFFER];
+	    try {
+		for (int i = 0; i < to - from && i + 3 < bytes.length; ++i) {
+		    if (bytes[i] != 0x1f || bytes[i + 1] != (byte) 0x8b || bytes[i + 2] != 8 || (bytes[i + 3] & 0xe0) != 0) {
+			continue;
+		    }
+		    long offset = from + i;
+		    Segment segment = new Segment(charset, offset);
+		    long end = members.member(offset, segment, inflater, out);
+		    if (end < 0) continue;
+		    while (end < to && end < length) {
+			long next = members.member(end, segment, inflater, out);
+			if (next < 0) {
+			    // Part of a bad member went into the segment, leave it all to the sequential inflate
+			    segment.start = -1;
+			    break;
+			}
+			end = next;
+		    }
+		    segment.end = end;
+		    return segment;
+		}
+		return new Segment(charset, -1);
+	    } finally {
+		inflater.end();
+	    }
+	}
+    }
+}
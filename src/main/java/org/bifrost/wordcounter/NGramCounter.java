@@ -0,0 +1,272 @@
+package org.bifrost.wordcounter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.bifrost.trie.IntTrie;
+import org.bifrost.wordcounter.WordCounter.Word;
+
+/**
+ * Counts the n-grams, runs of n consecutive words, of a text.
+ *
+ * Every distinct word gets a dense id, from 1 up, kept as the value
+ * of its node in an IntTrie, so a word fed from WordScanner is
+ * interned without building its String. The ids of the last n words
+ * are packed in a long, 64 / n bits each, which is counted in a
+ * primitive hash table. Only the n-grams that make it into the
+ * result are turned back into Strings, their words joined by a
+ * single space.
+ *
+ * When there are more distinct words than 64 / n bits can tell
+ * apart (65535 for 4-grams), the counts are packed again, 32 bits
+ * per id in two longs, and counting goes on with the wider keys.
+ *
+ * N-grams run across everything between the words, punctuation and
+ * line ends included, as the words are all the text is made of here.
+ */
+final class NGramCounter implements WordScanner.TokenListener {
+    static final int MAX_N = 4;
+    /** Bits per id when a key takes two longs */
+    private static final int WIDE_BITS = 32;
+
+    final int n;
+    private int bits;
+    private long windowMask;
+    /** Mask of the high long of the window, for wide keys only */
+    private long highMask;
+    private int maxId;
+    final IntTrie ids = new IntTrie();
+    private int nrIds;
+    private long window, windowHigh;
+    private int filled;
+    LongCounts counts = new LongCounts(1, 16);
+
+    NGramCounter(int n) {
+	if (n < 1 || n > MAX_N) throw new IllegalArgumentException("n must be between 1 and " + MAX_N + ": " + n);
+	this.n = n;
+	this.bits = 64 / n;
+	this.windowMask = n * bits == 64 ? -1L : (1L << (n * bits)) - 1;
+	this.maxId = (int) Math.min(Integer.MAX_VALUE, (1L << Math.min(bits, 62)) - 1);
+    }
+
+    @Override
+    public void token(IntTrie.Cursor word) {
+	int id = word.getInt();
+	if (id == 0) {
+	    id = newId();
+	    word.putInt(id);
+	}
+	add(id);
+    }
+
+    /**
+     * Same as token(Cursor), for a word found by other means.
+     */
+    void token(String word) {
+	int id = ids.getInt(word);
+	if (id == 0) {
+	    id = newId();
+	    ids.putInt(word, id);
+	}
+	add(id);
+    }
+
+    private int newId() {
+	if (nrIds == maxId) {
+	    if (bits >= WIDE_BITS) {
+		throw new IllegalStateException("More than " + maxId + " distinct words, too many for " + n + "-grams");
+	    }
+	    widen();
+	}
+	return ++nrIds;
+    }
+
+    /**
+     * Packs the counted keys and the window again, WIDE_BITS per id.
+     */
+    private void widen() {
+	LongCounts wide = new LongCounts(2, counts.capacity());
+	for (int slot = 0; slot < counts.capacity(); ++slot) {
+	    if (!counts.used(slot)) continue;
+	    long key = counts.low(slot), low = 0, high = 0;
+	    for (int i = n - 1; i >= 0; --i) {
+		high = high << WIDE_BITS | low >>> WIDE_BITS;
+		low = low << WIDE_BITS | idAt(key, 0, i);
+	    }
+	    wide.add(low, high, counts.counts[slot]);
+	}
+	long low = 0, high = 0;
+	for (int i = n - 1; i >= 0; --i) {
+	    high = high << WIDE_BITS | low >>> WIDE_BITS;
+	    low = low << WIDE_BITS | idAt(window, 0, i);
+	}
+	window = low;
+	windowHigh = high;
+	counts = wide;
+	bits = WIDE_BITS;
+	windowMask = -1L;
+	highMask = n * bits == 128 ? -1L : (1L << (n * bits - 64)) - 1;
+	maxId = Integer.MAX_VALUE;
+    }
+
+    private void add(int id) {
+	if (counts.width == 2) {
+	    windowHigh = (windowHigh << WIDE_BITS | window >>> WIDE_BITS) & highMask;
+	    window = window << WIDE_BITS | id;
+	} else {
+	    window = bits == 64 ? id : (window << bits | id) & windowMask;
+	}
+	if (filled < n) filled++;
+	if (filled == n) counts.increment(window, windowHigh);
+    }
+
+    /**
+     * @return the id of the i'th last word of the n-gram key made of low and high.
+     */
+    private int idAt(long low, long high, int i) {
+	if (bits == 64) return (int) low;
+	int shift = i * bits;
+	long word = shift < 64 ? low >>> shift : high >>> (shift - 64);
+	return (int) (word & ((1L << bits) - 1));
+    }
+
+    /**
+     * @return the nrNGrams most common n-grams, ordered as by
+     * WordCounter.getMostCommonWords; all of them if nrNGrams is zero
+     * or negative.
+     */
+    List<Word> mostCommon(int nrNGrams) {
+	int size = counts.size();
+	// Every n-gram counted at least as often as the nrNGrams'th is a candidate
+	int threshold = 0;
+	if (nrNGrams > 0 && nrNGrams < size) {
+	    int[] sorted = new int[size];
+	    int i = 0;
+	    for (int slot = 0; slot < counts.capacity(); ++slot) {
+		if (counts.used(slot)) sorted[i++] = counts.counts[slot];
+	    }
+	    Arrays.sort(sorted);
+	    threshold = sorted[size - nrNGrams];
+	}
+
+	boolean[] wanted = new boolean[nrIds + 1];
+	int nrCandidates = 0;
+	for (int slot = 0; slot < counts.capacity(); ++slot) {
+	    if (counts.used(slot) && counts.counts[slot] >= threshold) {
+		nrCandidates++;
+		for (int i = 0; i < n; ++i) wanted[idAt(counts.low(slot), counts.high(slot), i)] = true;
+	    }
+	}
+	// Only the words of the candidates are built as Strings
+	String[] names = new String[nrIds + 1];
+	for (IntTrie.Walker walker = ids.walker(); walker.next(); ) {
+	    if (wanted[walker.getInt()]) names[walker.getInt()] = walker.key();
+	}
+
+	List<Word> res = new ArrayList<Word>(nrCandidates);
+	StringBuilder sb = new StringBuilder();
+	for (int slot = 0; slot < counts.capacity(); ++slot) {
+	    if (!counts.used(slot) || counts.counts[slot] < threshold) continue;
+	    sb.setLength(0);
+	    for (int i = n - 1; i >= 0; --i) {
+		if (sb.length() > 0) sb.append(' ');
+		sb.append(names[idAt(counts.low(slot), counts.high(slot), i)]);
+	    }
+	    res.add(new Word(sb.toString(), counts.counts[slot]));
+	}
+	Collections.sort(res, new WordCounter.WordComparator());
+	if (nrNGrams <= 0 || nrNGrams >= res.size()) return res;
+	return res.subList(0, nrNGrams);
+    }
+
+    /**
+     * Counts of keys of width longs each, with linear probing like
+     * LongHashSet. The low long of a key is never zero, as it holds
+     * the id of the last word, so zero marks an empty slot.
+     */
+    static final class LongCounts {
+	/** 2^64 / golden ratio */
+	private static final long LONG_PHI = 0x9E3779B97F4A7C15L;
+	private static final float LOAD_FACTOR = 0.5f;
+
+	final int width;
+	/** The key of slot i is at keys[i * width], its high long (if any) after it */
+	long[] keys;
+	int[] counts;
+	private int size;
+
+	LongCounts(int width, int capacity) {
+	    this.width = width;
+	    keys = new long[capacity * width];
+	    counts = new int[capacity];
+	}
+
+	private static int hash(long low, long high) {
+	    long h = (low + high * LONG_PHI) * LONG_PHI;
+	    h ^= h >>> 32;
+	    return (int) (h ^ (h >>> 16));
+	}
+
+	int size() {
+	    return size;
+	}
+
+	int capacity() {
+	    return counts.length;
+	}
+
+	boolean used(int slot) {
+	    return keys[slot * width] != 0;
+	}
+
+	long low(int slot) {
+	    return keys[slot * width];
+	}
+
+	long high(int slot) {
+	    return width == 1 ? 0 : keys[slot * width + 1];
+	}
+
+	void increment(long low, long high) {
+	    add(low, high, 1);
+	}
+
+	/**
+	 * Adds count to the count of the key made of low and high, high being ignored for keys of one long.
+	 */
+	void add(long low, long high, int count) {
+	    assert low != 0;
+	    int mask = counts.length - 1;
+	    int pos = hash(low, width == 1 ? 0 : high) & mask;
+	    for (long cur; (cur = keys[pos * width]) != 0; pos = (pos + 1) & mask) {
+		if (cur == low && (width == 1 || keys[pos * width + 1] == high)) {
+		    counts[pos] += count;
+		    return;
+		}
+	    }
+	    keys[pos * width] = low;
+	    if (width == 2) keys[pos * width + 1] = high;
+	    counts[pos] = count;
+	    if (++size > counts.length * LOAD_FACTOR) rehash(counts.length * 2);
+	}
+
+	private void rehash(int capacity) {
+	    long[] oldKeys = keys;
+	    int[] oldCounts = counts;
+	    keys = new long[capacity * width];
+	    counts = new int[capacity];
+	    int mask = capacity - 1;
+	    for (int i = 0; i < oldCounts.length; ++i) {
+		long low = oldKeys[i * width];
+		if (low == 0) continue;
+		long high = width == 1 ? 0 : oldKeys[i * width + 1];
+		int pos = hash(low, high) & mask;
+		while (keys[pos * width] != 0) pos = (pos + 1) & mask;
+		keys[pos * width] = low;
+		if (width == 2) keys[pos * width + 1] = high;
+		counts[pos] = oldCounts[i];
+	    }
+	}
+    }
+}
@@ -0,0 +1,253 @@
+package org.bifrost.wordcounter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import org.bifrost.trie.IntTrie;
+import org.bifrost.wordcounter.WordCounter.Word;
+
+/**
+ * Word counts of files that are counted again and again, like log
+ * files, with the words of WordCounter.DEFAULT_WORD_REGEX.
+ *
+ * The count of every word of a file is kept, with the file's
+ * identity (its fileKey, the inode on unix), size and modification
+ * time. A file that has not changed is not read again, and one that
+ * has only grown is only read from where it ended. Anything else, a
+ * file that is replaced (rotated), truncated or rewritten, is counted
+ * again from the start. To tell growth from a replacement where the
+ * file system has no file keys or reuses them, the last bytes before
+ * the old end are checked as well.
+ *
+ * The counts only cover the text up to the last separator (see
+ * DecodingScanner.isSeparator), where no word can continue; the bytes
+ * after it, the start of a word that may go on in what is appended
+ * next, are kept and scanned again with the appended bytes. Only
+ * charsets whose text can be cut like that are counted incrementally,
+ * files in other charsets are counted again whenever they change.
+ *
+ * Entries are evicted, least recently used first, when their
+ * estimated size exceeds the memory budget.
+ *
+ * All methods are synchronized.
+ */
+public class WordCountCache {
+    static final int BUFFER = 64 * 1024;
+    /** Bytes before the old end of a file that must not have changed for it to count as grown */
+    static final int CHECKED_BYTES = 4096;
+    /** Rough size of an IntTrie node and its share of a child array */
+    static final int BYTES_PER_NODE = 48;
+    /** Rough size of an entry without its words: the scanner buffers and the entry itself */
+    static final int ENTRY_BYTES = 2 * DecodingScanner.CHAR_BUFFER_SIZE + 512;
+
+    /**
+     * The counts of one file.
+     */
+    static final class Entry {
+	final Charset charset;
+	final Object fileKey;
+	final DecodingScanner scanner;
+	/** Bytes after the last separator, not yet scanned */
+	final Bytes pending = new Bytes();
+	final boolean incremental;
+	long size;
+	FileTime modified;
+	long checkedFrom;
+	long checksum;
+	long memory;
+
+	Entry(Charset charset, Object fileKey) {
+	    this.charset = charset;
+	    this.fileKey = fileKey;
+	    this.scanner = new DecodingScanner(charset);
+	    this.incremental = DecodingScanner.splitsAtSeparators(charset);
+	}
+    }
+
+    private final long memoryBudget;
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<Path, Entry>(16, 0.75f, true);
+    private long memoryUsage;
+    private long hits, incrementalCounts, fullCounts;
+
+    /**
+     * @param memoryBudget the estimated number of bytes the cached counts may use.
+     */
+    public WordCountCache(long memoryBudget) {
+	if (memoryBudget < 0) throw new IllegalArgumentException("Illegal memory budget: " + memoryBudget);
+	this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Same as WordCounter.getMostCommonWordsFromFile, reading only
+     * what changed since the file was last counted.
+     *
+     * @param file file to search
+     * @param charset charset file is presumed to be in
+     * @param nrWords The max number of words to return, all of them if zero or negative.
+     */
+    public synchronized List<Word> getMostCommonWords(Path file, Charset charset, int nrWords) throws IOException {
+	Path key = file.toAbsolutePath().normalize();
+	BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+	Entry entry = entries.get(key);
+	try (FileChannel channel = FileChannel.open(key, StandardOpenOption.READ)) {
+	    long size = attributes.size();
+	    if (entry != null && entry.charset.equals(charset) && sameFile(entry, attributes)
+		&& size == entry.size && attributes.lastModifiedTime().equals(entry.modified)) {
+		hits++;
+	    } else if (entry != null && entry.incremental && entry.charset.equals(charset)
+		       && sameFile(entry, attributes) && size > entry.size
+		       && checksum(channel, entry.checkedFrom, entry.size) == entry.checksum) {
+		incrementalCounts++;
+		read(channel, entry, size);
+		updateMemory(entry);
+	    } else {
+		fullCounts++;
+		remove(key);
+		entry = new Entry(charset, attributes.fileKey());
+		read(channel, entry, size);
+		entries.put(key, entry);
+		updateMemory(entry);
+	    }
+	    entry.modified = attributes.lastModifiedTime();
+	}
+
+	List<Word> res = mostCommon(entry, nrWords);
+	evict();
+	return res;
+    }
+
+    private void updateMemory(Entry entry) {
+	memoryUsage -= entry.memory;
+	entry.memory = ENTRY_BYTES + entry.pending.buf.length + (long) entry.scanner.counts.getNodeCount() * BYTES_PER_NODE;
+	memoryUsage += entry.memory;
+    }
+
+    private static boolean sameFile(Entry entry, BasicFileAttributes attributes) {
+	return entry.fileKey == null ? attributes.fileKey() == null : entry.fileKey.equals(attributes.fileKey());
+    }
+
+    /**
+     * Reads bytes [entry.size, size) of channel into entry.
+     */
+    private static void read(FileChannel channel, Entry entry, long size) throws IOException {
+	ByteBuffer buf = ByteBuffer.allocate(BUFFER);
+	byte[] b = buf.array();
+	for (long pos = entry.size; pos < size; ) {
+	    buf.clear();
+	    buf.limit((int) Math.min(BUFFER, size - pos));
+	    int n = channel.read(buf, pos);
+	    if (n < 0) throw new IOException("File shrunk while counting it");
+	    pos += n;
+	    if (!entry.incremental) {
+		entry.scanner.feed(ByteBuffer.wrap(b, 0, n));
+		continue;
+	    }
+	    int last = n - 1;
+	    while (last >= 0 && !DecodingScanner.isSeparator(b[last])) last--;
+	    if (last >= 0) {
+		entry.scanner.feed(entry.pending.buffer());
+		entry.pending.size = 0;
+		entry.scanner.feed(ByteBuffer.wrap(b, 0, last + 1));
+	    }
+	    entry.pending.write(b, last + 1, n - last - 1);
+	}
+	if (!entry.incremental) entry.scanner.finish();
+	entry.size = size;
+	entry.checkedFrom = Math.max(0, size - CHECKED_BYTES);
+	entry.checksum = checksum(channel, entry.checkedFrom, size);
+    }
+
+    private static long checksum(FileChannel channel, long from, long to) throws IOException {
+	ByteBuffer buf = ByteBuffer.allocate((int) (to - from));
+	while (buf.hasRemaining()) {
+	    if (channel.read(buf, from + buf.position()) < 0) return -1;
+	}
+	CRC32 crc = new CRC32();
+	crc.update(buf.array(), 0, buf.capacity());
+	return crc.getValue();
+    }
+
+    /**
+     * The most common words of the counts and the pending bytes. The
+     * words of the pending bytes are added to the counts for the
+     * result and then taken out again.
+     */
+    private static List<Word> mostCommon(Entry entry, int nrWords) {
+	IntTrie counts = entry.scanner.counts;
+	if (entry.pending.size == 0) return WordCounter.mostCommon(counts, nrWords);
+	DecodingScanner rest = new DecodingScanner(entry.charset);
+	rest.feed(entry.pending.buffer());
+	rest.finish();
+	for (Map.Entry<String, Integer> e: rest.counts.entrySet()) counts.addTo(e.getKey(), e.getValue());
+	List<Word> res = WordCounter.mostCommon(counts, nrWords);
+	for (Map.Entry<String, Integer> e: rest.counts.entrySet()) {
+	    if (counts.addTo(e.getKey(), -e.getValue()) == 0) counts.removeInt(e.getKey());
+	}
+	return res;
+    }
+
+    private void evict() {
+	for (Iterator<Entry> it = entries.values().iterator(); memoryUsage > memoryBudget && it.hasNext(); ) {
+	    memoryUsage -= it.next().memory;
+	    it.remove();
+	}
+    }
+
+    private void remove(Path key) {
+	Entry entry = entries.remove(key);
+	if (entry != null) memoryUsage -= entry.memory;
+    }
+
+    /**
+     * Forgets the counts of file.
+     */
+    public synchronized void invalidate(Path file) {
+	remove(file.toAbsolutePath().normalize());
+    }
+
+    /**
+     * @return the number of files whose counts are cached.
+     */
+    public synchronized int size() {
+	return entries.size();
+    }
+
+    /**
+     * @return the estimated number of bytes used by the cached counts.
+     */
+    public synchronized long getMemoryUsage() {
+	return memoryUsage;
+    }
+
+    /**
+     * @return the number of times a file had not changed since it was counted.
+     */
+    public synchronized long getHits() {
+	return hits;
+    }
+
+    /**
+     * @return the number of times only the end of a grown file was read.
+     */
+    public synchronized long getIncrementalCounts() {
+	return incrementalCounts;
+    }
+
+    /**
+     * @return the number of times a file was counted from the start.
+     */
+    public synchronized long getFullCounts() {
+	return fullCounts;
+    }
+}
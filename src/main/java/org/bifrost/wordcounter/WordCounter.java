@@ -9,8 +9,16 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Map;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPInputStream;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.bifrost.metrics.Metrics;
+import org.bifrost.metrics.WordCountEvent;
+import org.bifrost.trie.IntTrie;
 
 public class WordCounter { 
     /**
@@ -31,6 +39,21 @@ public class WordCounter {
 	Pattern.compile("- (?: \r \n | [\r\n] )".replaceAll(" ", ""));
 
     private final Pattern wordRegex;
+    private final Mode mode;
+
+    /**
+     * How words are found and counted.
+     */
+    public enum Mode {
+	/** Match wordRegex, build a String per match and count in a HashMap */
+	REGEX,
+	/**
+	 * Scan with WordScanner, counting in an IntTrie while reading,
+	 * so no String is built per match. Only available with
+	 * DEFAULT_WORD_REGEX, which WordScanner replicates.
+	 */
+	FUSED
+    }
     
     /** 
      * Default constructor. Creates a wordCounter using the DEFAULT_WORD_REGEX
@@ -38,6 +61,14 @@ public class WordCounter {
     public WordCounter() { 
 	this(DEFAULT_WORD_REGEX);
     }
+
+    /**
+     * Creates a wordCounter using the DEFAULT_WORD_REGEX, counting as mode says.
+     */
+    public WordCounter(Mode mode) {
+	this.wordRegex = DEFAULT_WORD_REGEX;
+	this.mode = mode;
+    }
     
     /**
      * Constructor taking a custom regex, that will be used for finding words.
@@ -45,12 +76,12 @@ public class WordCounter {
      */
     public WordCounter(Pattern wordRegex ) { 
 	this.wordRegex = wordRegex;
+	this.mode = Mode.REGEX;
     }
     
-    public static class WordComparator implements Comparator {
+    public static class WordComparator implements Comparator<Word> {
 	@Override 
-	public int compare(Object o1, Object o2) {
-	    Word w1 = (Word) o1; Word w2 = (Word) o2;
+	public int compare(Word w1, Word w2) {
 	    return w1.getOccurence() < w2.getOccurence() ? 1 : 
 		   w1.getOccurence() > w2.getOccurence() ? -1 : w1.getName().compareTo(w2.getName());
 	}
@@ -67,7 +98,13 @@ public class WordCounter {
      * @return A list of all words in sorted order.
      */
     private List<Word> createWordList(String text) { 
+	WordCountEvent event = new WordCountEvent();
+	boolean timed = Metrics.ENABLED || event.isEnabled();
+	long start = timed ? System.nanoTime() : 0;
+	event.begin();
+	if (mode == Mode.FUSED) return createWordListFused(text, event, timed, start);
 	Matcher m = wordRegex.matcher(text);
+	long tokens = 0;
 
 	// Numbers are not scientifically determined. 
 	final int AVG_WORD_SIZE = 5; final int AVG_NUMBER_OF_TIMES_PER_WORD = 2; final int FUZZ_FACTOR = 2;
@@ -80,18 +117,101 @@ public class WordCounter {
 	    String match = DASH_NEWLINE_REGEX.matcher(m.group().toLowerCase()).replaceAll("");
 	    Integer oldval = map.get(match);
 	    map.put(match, (oldval == null ? 0 : oldval) + 1);
+	    tokens++;
 	}
+	long scanned = timed ? System.nanoTime() : 0;
 	
 	// Convert words to Word-class and put them in a list.
 	ArrayList<Word> res = new ArrayList<Word>(map.size());
 	for(Map.Entry<String, Integer> entry: map.entrySet()) {
 	    res.add(new Word(entry.getKey(), entry.getValue()));
 	}
+	long collected = timed ? System.nanoTime() : 0;
 
 	// Sort the list
 	Collections.sort(res, new WordComparator());
+
+	if (timed) record(event, text.length(), tokens, res.size(), start, scanned, collected, System.nanoTime());
+	return res;
+    }
+
+    /**
+     * Orders words by occurence only. Sorting a list that is in
+     * alphabetical order with it gives the WordComparator order, as
+     * the sort is stable.
+     */
+    static final Comparator<Word> BY_OCCURENCE = new Comparator<Word>() {
+	@Override
+	public int compare(Word w1, Word w2) {
+	    return w1.getOccurence() < w2.getOccurence() ? 1 : w1.getOccurence() > w2.getOccurence() ? -1 : 0;
+	}
+    };
+
+    /**
+     * createWordList for Mode.FUSED. The IntTrie is iterated in
+     * alphabetical order, so only the occurences need sorting.
+     */
+    private List<Word> createWordListFused(String text, WordCountEvent event, boolean timed, long start) {
+	IntTrie counts = new IntTrie();
+	WordScanner scanner = new WordScanner(counts);
+	scanner.feed(text);
+	scanner.finish();
+	long scanned = timed ? System.nanoTime() : 0;
+
+	List<Word> res = toWordList(counts);
+	long collected = timed ? System.nanoTime() : 0;
+
+	Collections.sort(res, BY_OCCURENCE);
+
+	if (timed) record(event, text.length(), scanner.getTokens(), res.size(), start, scanned, collected, System.nanoTime());
 	return res;
     }
+
+    /**
+     * @return the words of counts in alphabetical order.
+     */
+    static List<Word> toWordList(IntTrie counts) {
+	ArrayList<Word> res = new ArrayList<Word>(counts.size());
+	for (Map.Entry<String, Integer> entry: counts.entrySet()) {
+	    res.add(new Word(entry.getKey(), entry.getValue()));
+	}
+	return res;
+    }
+
+    /**
+     * @return the nrWords most common words of counts, all of them if nrWords is zero or negative.
+     */
+    static List<Word> mostCommon(IntTrie counts, int nrWords) {
+	List<Word> res = toWordList(counts);
+	Collections.sort(res, BY_OCCURENCE);
+	if (nrWords <= 0 || nrWords >= res.size()) return res;
+	return res.subList(0, nrWords);
+    }
+
+    /**
+     * Reports a run of createWordList to Metrics and the flight recorder.
+     */
+    private static void record(WordCountEvent event, long chars, long tokens, long distinct,
+			       long start, long scanned, long collected, long sorted) {
+	if (Metrics.ENABLED) {
+	    Metrics.WORD_COUNT_RUNS.increment();
+	    Metrics.WORD_COUNT_CHARS.add(chars);
+	    Metrics.WORD_COUNT_TOKENS.add(tokens);
+	    Metrics.WORD_COUNT_DISTINCT.add(distinct);
+	    Metrics.WORD_COUNT_SCAN_NANOS.record(scanned - start);
+	    Metrics.WORD_COUNT_COLLECT_NANOS.record(collected - scanned);
+	    Metrics.WORD_COUNT_SORT_NANOS.record(sorted - collected);
+	}
+	if (event.shouldCommit()) {
+	    event.charsScanned = chars;
+	    event.tokens = tokens;
+	    event.distinctWords = distinct;
+	    event.scanNanos = scanned - start;
+	    event.collectNanos = collected - scanned;
+	    event.sortNanos = sorted - collected;
+	    event.commit();
+	}
+    }
     
     /**
      * Class for keeping track of words found 
@@ -160,7 +280,7 @@ public class WordCounter {
      * under the constraints mentioned in getMostCommonWords(String text, int nrWords);
      * 
      * Notice that the file-reading methods are deliberately space-inefficient, for simplicity of implementation.
-     * (If very large files were to be read, they should be read chunk by chunk, and not all at once).
+     * (Very large files are better counted chunk by chunk with AsyncWordCounter.countFile).
      *
      * @param f file to search
      * @param encoding encoding file is presumed to be in
@@ -173,6 +293,97 @@ public class WordCounter {
 	return getMostCommonWords(text, nrWords);
     }
 
+    /**
+     * Returns the nrNGrams most common n-grams, runs of n consecutive
+     * words, found in text. Words are found as by getMostCommonWords,
+     * so with n = 1 the result is the same; an n-gram is returned as
+     * a Word whose name is its words separated by single spaces.
+     *
+     * Words are interned to int ids while scanning and n-grams are
+     * counted as packed longs (two per n-gram if there are many
+     * distinct words), so only the n-grams returned are built as
+     * Strings. See NGramCounter.
+     *
+     * @param text The text to search after n-grams.
+     * @param n the number of words in an n-gram, from 1 to 4.
+     * @param nrNGrams max number of n-grams to be found, if zero or negative return all of them.
+     *
+     * @return List of n-grams found in order of most common first.
+     */
+    public List<Word> getMostCommonNGrams(String text, int n, int nrNGrams) {
+	NGramCounter counter = new NGramCounter(n);
+	if (wordRegex == DEFAULT_WORD_REGEX) {
+	    WordScanner scanner = new WordScanner(counter.ids, counter);
+	    scanner.feed(text);
+	    scanner.finish();
+	} else {
+	    Matcher m = wordRegex.matcher(text);
+	    while (m.find()) {
+		counter.token(DASH_NEWLINE_REGEX.matcher(m.group().toLowerCase()).replaceAll(""));
+	    }
+	}
+	return counter.mostCommon(nrNGrams);
+    }
+
+    /**
+     * Counts every word found in text. Unlike the most common words,
+     * histograms of several texts can be merged, see WordHistogram.
+     *
+     * @param text The text to search after words.
+     *
+     * @return the count of every word found.
+     */
+    public WordHistogram getHistogram(String text) {
+	IntTrie counts = new IntTrie();
+	if (mode == Mode.FUSED) {
+	    WordScanner scanner = new WordScanner(counts);
+	    scanner.feed(text);
+	    scanner.finish();
+	} else {
+	    Matcher m = wordRegex.matcher(text);
+	    while (m.find()) {
+		counts.increment(DASH_NEWLINE_REGEX.matcher(m.group().toLowerCase()).replaceAll(""));
+	    }
+	}
+	return WordHistogram.of(counts);
+    }
+
+    /**
+     * Reads file f using encoding encoding and counts every word, see getHistogram(String text).
+     */
+    public WordHistogram getHistogramFromFile(File f, String encoding) throws IOException {
+	return getHistogram(FileUtils.readFileToString(f, encoding));
+    }
+
+    /**
+     * Reads the gzip compressed file f, whose text is in encoding
+     * encoding, and finds the nrWords most common words, under the
+     * constraints mentioned in getMostCommonWords(String text, int nrWords).
+     *
+     * With DEFAULT_WORD_REGEX the text is decompressed straight into
+     * a WordScanner, and the members of multi-member files (like those
+     * of bgzip or pigz) are decompressed and counted in parallel when
+     * the encoding is UTF-8, US-ASCII or ISO-8859-1. See GzipWordCounter.
+     * With a custom regex the text is decompressed into a String first.
+     *
+     * @param f file to search
+     * @param encoding encoding the decompressed text is presumed to be in
+     * @param nrWords The max number of words to return
+     *
+     * @return the result of getMostCommonWords on the decompressed text of file
+     */
+    public List<Word> getMostCommonWordsFromGzipFile(File f, String encoding, int nrWords) throws IOException {
+	if (wordRegex != DEFAULT_WORD_REGEX) {
+	    InputStream in = new GZIPInputStream(new FileInputStream(f));
+	    try {
+		return getMostCommonWords(IOUtils.toString(in, encoding), nrWords);
+	    } finally {
+		in.close();
+	    }
+	}
+	return mostCommon(GzipWordCounter.count(f.toPath(), Charset.forName(encoding)), nrWords);
+    }
+
     /**
      * Reads file f using encoding encoding and finds the 10 most common words,
      * under the constraints mentioned in getMostCommonWords(String text);
@@ -0,0 +1,419 @@
+package org.bifrost.wordcounter;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import org.bifrost.trie.IntTrie;
+import org.bifrost.wordcounter.WordCounter.Word;
+
+/**
+ * The count of every word of a text, not just the most common ones,
+ * so that the counts of several texts (or several parts of one) can
+ * be added up.
+ *
+ * Histograms are written in a compact binary form:
+ *
+ *   magic    the bytes 'B' 'W' 'H' 1
+ *   entries  for every word, in ascending String order:
+ *              varint  length in bytes of the suffix + 1
+ *              varint  number of chars shared with the previous word
+ *              bytes   the rest of the word, in UTF-8
+ *              varint  the count
+ *   end      varint 0
+ *
+ * Words are sorted, so a Reader goes through an encoded histogram
+ * one word at a time, and any number of them are merged by a k-way
+ * merge that only holds the current word of each, see mergeTo and
+ * mergeMostCommon.
+ */
+public final class WordHistogram {
+    private static final byte[] MAGIC = { 'B', 'W', 'H', 1 };
+
+    private final String[] words;
+    private final long[] counts;
+
+    private WordHistogram(String[] words, long[] counts) {
+	this.words = words;
+	this.counts = counts;
+    }
+
+    /**
+     * @return the histogram of the counts of an IntTrie, like the one counted by WordScanner.
+     */
+    public static WordHistogram of(IntTrie counts) {
+	String[] words = new String[counts.size()];
+	long[] values = new long[counts.size()];
+	int i = 0;
+	// IntTrie iterates in String order already
+	for (Map.Entry<String, Integer> entry: counts.entrySet()) {
+	    words[i] = entry.getKey();
+	    values[i++] = entry.getValue();
+	}
+	return new WordHistogram(words, values);
+    }
+
+    /**
+     * @return the number of distinct words.
+     */
+    public int size() {
+	return words.length;
+    }
+
+    /**
+     * @return the i'th word, in String order.
+     */
+    public String getWord(int i) {
+	return words[i];
+    }
+
+    public long getCount(int i) {
+	return counts[i];
+    }
+
+    /**
+     * @return the count of word, 0 if it is not there.
+     */
+    public long getCount(String word) {
+	int i = Arrays.binarySearch(words, word);
+	return i >= 0 ? counts[i] : 0;
+    }
+
+    /**
+     * @return the sum of all counts.
+     */
+    public long getTotal() {
+	long total = 0;
+	for (long c: counts) total += c;
+	return total;
+    }
+
+    /**
+     * Same as WordCounter.getMostCommonWords, for the words of this histogram.
+     */
+    public List<Word> getMostCommonWords(int nrWords) {
+	TopWords top = new TopWords(nrWords);
+	for (int i = 0; i < words.length; ++i) top.offer(words[i], counts[i]);
+	return top.toList();
+    }
+
+    /**
+     * Writes the encoded histogram to out.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+	Writer writer = new Writer(out);
+	for (int i = 0; i < words.length; ++i) writer.add(words[i], counts[i]);
+	writer.finish();
+    }
+
+    public byte[] toByteArray() {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	try {
+	    writeTo(out);
+	} catch (IOException e) {
+	    throw new AssertionError(e);
+	}
+	return out.toByteArray();
+    }
+
+    /**
+     * Reads an encoded histogram, leaving in open and positioned
+     * just after it, so whatever follows can be read from in. No
+     * byte past the end marker is read, which also means in is read
+     * a byte at a time: give it a buffered stream if that is slow.
+     */
+    public static WordHistogram readFrom(InputStream in) throws IOException {
+	Reader reader = new Reader(in);
+	List<String> words = new ArrayList<String>();
+	long[] counts = new long[16];
+	while (reader.next()) {
+	    if (words.size() == counts.length) counts = Arrays.copyOf(counts, counts.length * 2);
+	    counts[words.size()] = reader.count();
+	    words.add(reader.word());
+	}
+	return new WordHistogram(words.toArray(new String[words.size()]), Arrays.copyOf(counts, words.size()));
+    }
+
+    public static WordHistogram fromByteArray(byte[] bytes) throws IOException {
+	return readFrom(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Writes a histogram one word at a time. Words must be added in
+     * strictly ascending String order.
+     */
+    public static final class Writer {
+	private final OutputStream out;
+	private String previous;
+	private boolean finished;
+
+	public Writer(OutputStream out) throws IOException {
+	    this.out = out;
+	    out.write(MAGIC);
+	}
+
+	public void add(String word, long count) throws IOException {
+	    if (finished) throw new IllegalStateException("Writer is finished");
+	    if (count < 0) throw new IllegalArgumentException("Negative count for " + word + ": " + count);
+	    int shared = 0;
+	    if (previous != null) {
+		if (previous.compareTo(word) >= 0) {
+		    throw new IllegalArgumentException("Words out of order: " + previous + ", " + word);
+		}
+		int max = Math.min(previous.length(), word.length());
+		while (shared < max && previous.charAt(shared) == word.charAt(shared)) shared++;
+		// Never split a surrogate pair, the suffix must be valid UTF-16
+		if (shared > 0 && Character.isHighSurrogate(word.charAt(shared - 1))) shared--;
+	    }
+	    byte[] suffix = word.substring(shared).getBytes(StandardCharsets.UTF_8);
+	    writeVarLong(out, suffix.length + 1L);
+	    writeVarLong(out, shared);
+	    out.write(suffix);
+	    writeVarLong(out, count);
+	    previous = word;
+	}
+
+	/**
+	 * Writes the end marker. The stream is not closed.
+	 */
+	public void finish() throws IOException {
+	    if (finished) return;
+	    finished = true;
+	    writeVarLong(out, 0);
+	    out.flush();
+	}
+    }
+
+    /**
+     * Reads an encoded histogram one word at a time. The Reader does
+     * no buffering of its own, so it never reads past the end marker,
+     * see readFrom.
+     */
+    public static final class Reader implements Closeable {
+	private final InputStream in;
+	private String word;
+	private long count;
+	private boolean done;
+
+	public Reader(InputStream in) throws IOException {
+	    this.in = in;
+	    byte[] magic = new byte[MAGIC.length];
+	    readFully(in, magic);
+	    if (!Arrays.equals(magic, MAGIC)) throw new IOException("Not a word histogram");
+	}
+
+	/**
+	 * Moves to the next word.
+	 *
+	 * @return false at the end of the histogram.
+	 */
+	public boolean next() throws IOException {
+	    if (done) return false;
+	    long tag = readVarLong(in);
+	    if (tag == 0) {
+		done = true;
+		word = null;
+		return false;
+	    }
+	    long shared = readVarLong(in);
+	    if (tag - 1 > Integer.MAX_VALUE || shared > (word == null ? 0 : word.length())) {
+		throw new IOException("Corrupt word histogram");
+	    }
+	    byte[] suffix = new byte[(int) (tag - 1)];
+	    readFully(in, suffix);
+	    String rest = new String(suffix, StandardCharsets.UTF_8);
+	    word = shared == 0 ? rest : word.substring(0, (int) shared) + rest;
+	    count = readVarLong(in);
+	    return true;
+	}
+
+	/**
+	 * @return the current word, null before the first and after the last call to next.
+	 */
+	public String word() {
+	    return word;
+	}
+
+	public long count() {
+	    return count;
+	}
+
+	@Override
+	public void close() throws IOException {
+	    in.close();
+	}
+    }
+
+    private static final Comparator<Reader> BY_WORD = new Comparator<Reader>() {
+	@Override
+	public int compare(Reader r1, Reader r2) {
+	    return r1.word().compareTo(r2.word());
+	}
+    };
+
+    /**
+     * Merges encoded histograms word by word, calling sink with
+     * every word and the sum of its counts, in String order. The
+     * inputs are closed.
+     */
+    private static void merge(List<? extends InputStream> inputs, Sink sink) throws IOException {
+	PriorityQueue<Reader> queue = new PriorityQueue<Reader>(Math.max(1, inputs.size()), BY_WORD);
+	List<Reader> readers = new ArrayList<Reader>(inputs.size());
+	try {
+	    for (InputStream in: inputs) {
+		// The inputs are ours to close, so reading ahead is fine
+		Reader reader = new Reader(in instanceof BufferedInputStream || in instanceof ByteArrayInputStream
+					   ? in : new BufferedInputStream(in));
+		readers.add(reader);
+		if (reader.next()) queue.add(reader);
+	    }
+	    while (!queue.isEmpty()) {
+		Reader reader = queue.poll();
+		String word = reader.word();
+		long count = reader.count();
+		if (reader.next()) queue.add(reader);
+		while (!queue.isEmpty() && queue.peek().word().equals(word)) {
+		    reader = queue.poll();
+		    count += reader.count();
+		    if (reader.next()) queue.add(reader);
+		}
+		sink.accept(word, count);
+	    }
+	} finally {
+	    for (InputStream in: inputs) in.close();
+	}
+    }
+
+    private interface Sink {
+	void accept(String word, long count) throws IOException;
+    }
+
+    /**
+     * Merges encoded histograms into one, written to out. Only the
+     * current word of each input is held in memory. The inputs are
+     * closed, out is not.
+     */
+    public static void mergeTo(List<? extends InputStream> inputs, OutputStream out) throws IOException {
+	final Writer writer = new Writer(out);
+	merge(inputs, new Sink() {
+		@Override
+		public void accept(String word, long count) throws IOException {
+		    writer.add(word, count);
+		}
+	    });
+	writer.finish();
+    }
+
+    /**
+     * Merges encoded histograms and returns the nrWords most common
+     * words of the sum, in the order of WordCounter.getMostCommonWords.
+     * Besides the current word of each input, only the nrWords best
+     * words so far are held in memory; if nrWords is zero or negative
+     * every word is returned, and held. The inputs are closed.
+     *
+     * @throws ArithmeticException if a returned count does not fit an int.
+     */
+    public static List<Word> mergeMostCommon(List<? extends InputStream> inputs, int nrWords) throws IOException {
+	final TopWords top = new TopWords(nrWords);
+	merge(inputs, new Sink() {
+		@Override
+		public void accept(String word, long count) {
+		    top.offer(word, count);
+		}
+	    });
+	return top.toList();
+    }
+
+    /**
+     * The nrWords most common of the words offered, which must come
+     * in String order. The worst word kept is at the head of a heap,
+     * and as words come in order, a word that only ties with it on
+     * count sorts after it and is not kept.
+     */
+    static final class TopWords {
+	final int nrWords;
+	final PriorityQueue<Word> heap;
+	final List<Word> all;
+
+	/** The reverse of WordComparator, without the int limit on counts */
+	private static final Comparator<Word> WORST_FIRST = new Comparator<Word>() {
+	    @Override
+	    public int compare(Word w1, Word w2) {
+		return w1.getOccurence() < w2.getOccurence() ? -1 :
+		    w1.getOccurence() > w2.getOccurence() ? 1 : w2.getName().compareTo(w1.getName());
+	    }
+	};
+
+	TopWords(int nrWords) {
+	    this.nrWords = nrWords;
+	    if (nrWords > 0) {
+		heap = new PriorityQueue<Word>(Math.min(nrWords, 1024) + 1, WORST_FIRST);
+		all = null;
+	    } else {
+		heap = null;
+		all = new ArrayList<Word>();
+	    }
+	}
+
+	void offer(String word, long count) {
+	    if (all != null) {
+		all.add(new Word(word, Math.toIntExact(count)));
+	    } else if (heap.size() < nrWords) {
+		heap.add(new Word(word, Math.toIntExact(count)));
+	    } else if (count > heap.peek().getOccurence()) {
+		heap.poll();
+		heap.add(new Word(word, Math.toIntExact(count)));
+	    }
+	}
+
+	List<Word> toList() {
+	    if (all != null) {
+		// Already in String order, which the stable sort keeps within equal counts
+		Collections.sort(all, WordCounter.BY_OCCURENCE);
+		return all;
+	    }
+	    List<Word> res = new ArrayList<Word>(heap);
+	    Collections.sort(res, Collections.reverseOrder(WORST_FIRST));
+	    return res;
+	}
+    }
+
+    static void writeVarLong(OutputStream out, long v) throws IOException {
+	while ((v & ~0x7fL) != 0) {
+	    out.write((int) (v & 0x7f) | 0x80);
+	    v >>>= 7;
+	}
+	out.write((int) v);
+    }
+
+    static long readVarLong(InputStream in) throws IOException {
+	long v = 0;
+	for (int shift = 0; shift < 64; shift += 7) {
+	    int b = in.read();
+	    if (b < 0) throw new EOFException("Truncated word histogram");
+	    v |= (long) (b & 0x7f) << shift;
+	    if ((b & 0x80) == 0) return v;
+	}
+	throw new IOException("Corrupt word histogram: varint too long");
+    }
+
+    private static void readFully(InputStream in, byte[] b) throws IOException {
+	for (int off = 0; off < b.length; ) {
+	    int n = in.read(b, off, b.length - off);
+	    if (n < 0) throw new EOFException("Truncated word histogram");
+	    off += n;
+	}
+    }
+}
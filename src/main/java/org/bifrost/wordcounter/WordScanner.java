@@ -0,0 +1,234 @@
+package org.bifrost.wordcounter;
+
+import org.bifrost.trie.IntTrie;
+
+/**
+ * A tokenizer equivalent to WordCounter's DEFAULT_WORD_REGEX followed
+ * by lower-casing and DASH_NEWLINE_REGEX, fused with the counting:
+ * every char of a word is fed straight to an IntTrie.Cursor as it is
+ * read, and the count is incremented in the node the word ends in.
+ * No String (or any other object) is created per token; only the
+ * trie nodes for words not seen before.
+ *
+ * The regex is replicated as a state machine, with these cases:
+ *
+ * - a letter followed by a dot and a letter starts an acronym, a
+ *   chain of single letters separated by single dots, optionally
+ *   ended by a dot ("U.S.A." or "e.g").
+ *
+ * - any other letter starts a word of letters and dashes, where a
+ *   dash may be followed by \r, \n or \r\n. Those dash-newlines are
+ *   dropped from the word, other dashes are kept.
+ *
+ * As the regex, it only knows ASCII letters, and lower-cases them
+ * as in the ROOT locale.
+ *
+ * Text can be fed in any number of pieces, split anywhere (also in
+ * the middle of a word); finish() ends the last word.
+ */
+public final class WordScanner {
+    /** Not in a word */
+    private static final int IDLE = 0;
+    /** Read the first letter of a word or acronym */
+    private static final int FIRST = 1;
+    /** Read a letter and a dot, an acronym if a letter follows */
+    private static final int DOT1 = 2;
+    /** Read a letter of an acronym */
+    private static final int ACRONYM = 3;
+    /** Read a dot after a letter of an acronym, the dot ending it unless a letter follows */
+    private static final int DOT2 = 4;
+    /** In a word, after a letter or a dash-newline */
+    private static final int WORD = 5;
+    /** Read a dash in a word, dropped if a newline follows */
+    private static final int DASH = 6;
+    /** Read a dash and a \r, which may be followed by \n */
+    private static final int DASH_CR = 7;
+
+    /**
+     * Told about every word instead of having it counted.
+     */
+    interface TokenListener {
+	/**
+	 * @param word a cursor at the word, which may be read or updated but not moved.
+	 */
+	void token(IntTrie.Cursor word);
+    }
+
+    private final IntTrie.Cursor cursor;
+    private final TokenListener listener;
+    private int state = IDLE;
+    private long tokens;
+
+    /**
+     * @param counts where the words are counted.
+     */
+    public WordScanner(IntTrie counts) {
+	this(counts, null);
+    }
+
+    /**
+     * @param words the trie the words are looked up in.
+     * @param listener called with every word, in text order, which is then not counted.
+     */
+    WordScanner(IntTrie words, TokenListener listener) {
+	this.cursor = words.cursor();
+	this.listener = listener;
+    }
+
+    /**
+     * @return the number of words found so far.
+     */
+    public long getTokens() {
+	return tokens;
+    }
+
+    /**
+     * @return true if the text fed so far ends in the middle of a word.
+     */
+    public boolean inWord() {
+	return state != IDLE;
+    }
+
+    public void feed(CharSequence text) {
+	feed(text, 0, text.length());
+    }
+
+    /**
+     * Scans chars [from, to) of text.
+     */
+    public void feed(CharSequence text, int from, int to) {
+	for (int i = from; i < to; ++i) accept(text.charAt(i));
+    }
+
+    /**
+     * Scans len chars of buf starting at off.
+     */
+    public void feed(char[] buf, int off, int len) {
+	for (int i = off; i < off + len; ++i) accept(buf[i]);
+    }
+
+    /**
+     * Ends the word in progress, if any, as the end of the text does.
+     */
+    public void finish() {
+	switch (state) {
+	case DOT2:
+	    cursor.descend('.');
+	    break;
+	case DASH:
+	    cursor.descend('-');
+	    break;
+	default:
+	    break;
+	}
+	if (state != IDLE) emit();
+    }
+
+    private static boolean isAlpha(char c) {
+	return (char) ((c | 0x20) - 'a') <= 'z' - 'a';
+    }
+
+    private static char toLower(char c) {
+	return (char) (c | 0x20);
+    }
+
+    private void emit() {
+	if (listener != null) {
+	    listener.token(cursor);
+	} else {
+	    cursor.addTo(1);
+	}
+	tokens++;
+	state = IDLE;
+    }
+
+    /**
+     * Advances the state machine over c. When c ends a word without
+     * belonging to it, the word is emitted and c is looked at again
+     * in the IDLE state, as the regex would start its next match
+     * there.
+     */
+    void accept(char c) {
+	for (;;) {
+	    switch (state) {
+	    case IDLE:
+		if (isAlpha(c)) {
+		    cursor.reset();
+		    cursor.descend(toLower(c));
+		    state = FIRST;
+		}
+		return;
+	    case FIRST:
+		if (isAlpha(c)) {
+		    cursor.descend(toLower(c));
+		    state = WORD;
+		    return;
+		} else if (c == '-') {
+		    state = DASH;
+		    return;
+		} else if (c == '.') {
+		    state = DOT1;
+		    return;
+		}
+		break;
+	    case DOT1:
+		if (isAlpha(c)) {
+		    cursor.descend('.');
+		    cursor.descend(toLower(c));
+		    state = ACRONYM;
+		    return;
+		}
+		// Just the letter, the dot is not part of it
+		break;
+	    case ACRONYM:
+		if (c == '.') {
+		    state = DOT2;
+		    return;
+		}
+		break;
+	    case DOT2:
+		cursor.descend('.');
+		if (isAlpha(c)) {
+		    cursor.descend(toLower(c));
+		    state = ACRONYM;
+		    return;
+		}
+		break;
+	    case WORD:
+		if (isAlpha(c)) {
+		    cursor.descend(toLower(c));
+		    return;
+		} else if (c == '-') {
+		    state = DASH;
+		    return;
+		}
+		break;
+	    case DASH:
+		if (c == '\r') {
+		    state = DASH_CR;
+		    return;
+		} else if (c == '\n') {
+		    state = WORD;
+		    return;
+		}
+		cursor.descend('-');
+		if (isAlpha(c)) {
+		    cursor.descend(toLower(c));
+		    state = WORD;
+		    return;
+		} else if (c == '-') {
+		    return;
+		}
+		break;
+	    case DASH_CR:
+		state = WORD;
+		if (c == '\n') return;
+		// The word may go on after the dash-\r
+		continue;
+	    default:
+		throw new IllegalStateException("state " + state);
+	    }
+	    emit();
+	}
+    }
+}
@@ -0,0 +1,114 @@
+package org.bifrost;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.framework.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.SubmissionPublisher;
+import org.bifrost.wordcounter.AsyncWordCounter;
+import org.bifrost.wordcounter.WordCounter;
+
+public class AsyncWordCounterTest extends TestCase
+{
+    public AsyncWordCounterTest() {
+	super("AsyncWordCounterTest");
+    }
+
+    public static Test suite() {
+	return new TestSuite(AsyncWordCounterTest.class);
+    }
+
+    private static void assertSameCounts(List<WordCounter.Word> expected, List<WordCounter.Word> actual) {
+	assertEquals(expected.size(), actual.size());
+	for (int i = 0; i < expected.size(); ++i) {
+	    assertEquals(expected.get(i).getName(), actual.get(i).getName());
+	    assertEquals(expected.get(i).getOccurence(), actual.get(i).getOccurence());
+	}
+    }
+
+    /**
+     * Generated text with some multi-byte chars between the words,
+     * so that small chunks split them.
+     */
+    private static String generateText() {
+	String text = new WordCounterTest.TextGenerator().generateText(20000).getText();
+	return text.replace("\r\n ", " æøå ").replace("\n ", " €😀 ");
+    }
+
+    public void testFile() throws Exception {
+	File f = new File(getClass().getClassLoader().getResource("wordcounttest/gettysburg.txt").getFile());
+	assertSameCounts(new WordCounter().getMostCommonWordsFromFile(f, "UTF-8"),
+			 new AsyncWordCounter().countFile(f.toPath(), StandardCharsets.UTF_8, 10).get());
+
+	String text = generateText();
+	List<WordCounter.Word> expected = new WordCounter().getMostCommonWords(text, 0);
+	Path p = Files.createTempFile("words", ".txt");
+	try {
+	    Files.write(p, text.getBytes(StandardCharsets.UTF_8));
+	    for (int chunkSize: new int[] { 1, 7, 4096 }) {
+		assertSameCounts(expected, new AsyncWordCounter(chunkSize).countFile(p, StandardCharsets.UTF_8, 0).get());
+	    }
+	} finally {
+	    Files.delete(p);
+	}
+
+	try {
+	    new AsyncWordCounter().countFile(p, StandardCharsets.UTF_8, 0).get();
+	    fail();
+	} catch (ExecutionException e) {
+	    assert(e.getCause() instanceof NoSuchFileException);
+	}
+    }
+
+    public void testPublisher() throws Exception {
+	String text = generateText();
+	List<WordCounter.Word> expected = new WordCounter().getMostCommonWords(text, 0);
+	Random rng = new Random();
+
+	byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+	// A small buffer makes submit wait for the counter
+	SubmissionPublisher<ByteBuffer> bytePublisher = new SubmissionPublisher<ByteBuffer>(Runnable::run, 4);
+	CompletableFuture<List<WordCounter.Word>> res =
+	    new AsyncWordCounter().countBytes(bytePublisher, StandardCharsets.UTF_8, 0);
+	for (int pos = 0; pos < bytes.length; ) {
+	    int end = Math.min(bytes.length, pos + rng.nextInt(100));
+	    bytePublisher.submit(ByteBuffer.wrap(bytes, pos, end - pos));
+	    pos = end;
+	}
+	bytePublisher.close();
+	assertSameCounts(expected, res.get());
+
+	SubmissionPublisher<CharBuffer> charPublisher = new SubmissionPublisher<CharBuffer>();
+	res = new AsyncWordCounter().countChars(charPublisher, 5);
+	for (int pos = 0; pos < text.length(); ) {
+	    int end = Math.min(text.length(), pos + rng.nextInt(100));
+	    charPublisher.submit(CharBuffer.wrap(text, pos, end));
+	    pos = end;
+	}
+	charPublisher.close();
+	assertSameCounts(expected.subList(0, 5), res.get());
+
+	charPublisher = new SubmissionPublisher<CharBuffer>();
+	res = new AsyncWordCounter().countChars(charPublisher, 5);
+	charPublisher.submit(CharBuffer.wrap("some words"));
+	charPublisher.closeExceptionally(new IOException("broken"));
+	try {
+	    res.get();
+	    fail();
+	} catch (ExecutionException e) {
+	    assertEquals("broken", e.getCause().getMessage());
+	}
+    }
+}
@@ -0,0 +1,101 @@
+package org.bifrost;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.framework.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import org.bifrost.trie.ByteTrie;
+
+public class ByteTrieTest extends TestCase
+{
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public ByteTrieTest() {
+	super("ByteTrieTest");
+    }
+
+    public static Test suite() {
+	return new TestSuite(ByteTrieTest.class);
+    }
+
+    static byte[] utf8(String s) {
+	return s.getBytes(UTF8);
+    }
+
+    public void testPutGetRemove() {
+	ByteTrie<String> trie = new ByteTrie<String>();
+	assertEquals(null, trie.put(utf8("Hello there"), "I am"));
+	assertEquals(null, trie.put(utf8("Hæ"), "its here"));
+	assertEquals("I am", trie.put(utf8("Hello there"), "Fine by me"));
+	assertEquals(2, trie.size());
+
+	byte[] packet = utf8("xxHello therexx");
+	assertEquals("Fine by me", trie.get(packet, 2, 11));
+	assertEquals(null, trie.get(packet, 2, 10));
+
+	ByteBuffer buf = ByteBuffer.wrap(packet);
+	buf.position(2); buf.limit(13);
+	assertEquals("Fine by me", trie.get(buf));
+	assertEquals(2, buf.position());
+
+	ByteBuffer direct = ByteBuffer.allocateDirect(8);
+	direct.put(utf8("Hæ")).flip();
+	assert(trie.containsKey(direct));
+
+	assertEquals("its here", trie.remove(utf8("Hæ")));
+	assertEquals(null, trie.remove(utf8("Hæ")));
+	assert(!trie.containsKey(utf8("H")));
+	assertEquals(1, trie.size());
+    }
+
+    /**
+     * Iteration must follow UTF-8 byte order, which is the code point order of the keys.
+     */
+    public void testOrderingAndDenseNodes() {
+	ByteTrie<Integer> trie = new ByteTrie<Integer>();
+	TreeSet<String> expected = new TreeSet<String>();
+	Random rng = new Random();
+	String alphabet = "abcdefghijklmnopqrstuvwxyzæøåÿĀ中";
+	for (int i = 0; i < 2000; ++i) {
+	    StringBuilder b = new StringBuilder();
+	    int len = rng.nextInt(4);
+	    for (int j = 0; j < len; ++j) b.append(alphabet.charAt(rng.nextInt(alphabet.length())));
+	    expected.add(b.toString());
+	    trie.put(utf8(b.toString()), i);
+	}
+	assertEquals(expected.size(), trie.size());
+
+	ArrayList<String> keys = new ArrayList<String>();
+	for (Map.Entry<byte[], Integer> entry : trie) {
+	    keys.add(new String(entry.getKey(), UTF8));
+	}
+	assertEquals(new ArrayList<String>(expected), keys);
+
+	for (String s : new ArrayList<String>(expected)) {
+	    assert(trie.remove(utf8(s)) != null);
+	}
+	assert(trie.isEmpty());
+	assert(!trie.iterator().hasNext());
+    }
+
+    public void testPrefixIterator() {
+	ByteTrie<Integer> trie = new ByteTrie<Integer>();
+	trie.put(utf8("car"), 1); trie.put(utf8("cart"), 2);
+	trie.put(utf8("carp"), 3); trie.put(utf8("cat"), 4);
+	ArrayList<String> keys = new ArrayList<String>();
+	Iterator<Map.Entry<byte[], Integer>> iter = trie.prefixIterator(utf8("car"));
+	while (iter.hasNext()) keys.add(new String(iter.next().getKey(), UTF8));
+	ArrayList<String> expected = new ArrayList<String>();
+	Collections.addAll(expected, "car", "carp", "cart");
+	assertEquals(expected, keys);
+	assert(!trie.prefixIterator(utf8("dog")).hasNext());
+    }
+}
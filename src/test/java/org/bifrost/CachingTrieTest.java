@@ -0,0 +1,167 @@
+package org.bifrost;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.framework.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.bifrost.trie.CachingTrie;
+
+public class CachingTrieTest extends TestCase
+{
+    public CachingTrieTest() {
+	super("CachingTrieTest");
+    }
+
+    public static Test suite() {
+	return new TestSuite(CachingTrieTest.class);
+    }
+
+    public void testEviction() {
+	CachingTrie<String, Integer> cache = new CachingTrie<String, Integer>(100);
+	cache.put("hot", -1);
+	for (int i = 0; i < 1000; ++i) {
+	    cache.put("key" + i, i);
+	    assertEquals(Integer.valueOf(-1), cache.get("hot"));
+	    assert(cache.size() <= 100);
+	}
+	assertEquals(100, cache.size());
+	assertEquals(901, cache.getEvictions());
+	assertEquals(1000, cache.getHits());
+	assertEquals(null, cache.get("key0"));
+	assertEquals(Integer.valueOf(999), cache.get("key999"));
+	assertEquals(1, cache.getMisses());
+	// Every entry still there is right, and nothing else is left
+	int found = 0;
+	for (Map.Entry<String, Integer> e: cache.entrySet()) {
+	    assertEquals(e.getValue(), e.getKey().equals("hot") ? Integer.valueOf(-1) : Integer.valueOf(e.getKey().substring(3)));
+	    found++;
+	}
+	assertEquals(100, found);
+	assertEquals(100, cache.getWeight());
+    }
+
+    /**
+     * Evicted entries take their nodes with them, so the trie stays
+     * as small as its entries need.
+     */
+    public void testNodesBounded() {
+	CachingTrie<String, Integer> cache = new CachingTrie<String, Integer>(10);
+	for (int i = 0; i < 100000; ++i) cache.put(Integer.toString(i), i);
+	assertEquals(10, cache.size());
+	assertEquals(10, cache.getStats().getPayloadCount());
+	// The root and at most the 5 or 6 digits of each key
+	assert(cache.getStats().getNodeCount() <= 1 + 10 * 6);
+
+	cache.invalidatePrefix("");
+	assertEquals(1, cache.getStats().getNodeCount());
+    }
+
+    public void testWeight() {
+	CachingTrie<String, String> cache = new CachingTrie<String, String>(1000, new CachingTrie.Weigher<String, String>() {
+		public int weigh(String key, String value) {
+		    return value.length();
+		}
+	    });
+	Random rng = new Random();
+	for (int i = 0; i < 10000; ++i) {
+	    StringBuilder sb = new StringBuilder();
+	    for (int j = rng.nextInt(50); j > 0; --j) sb.append('x');
+	    cache.put("k" + rng.nextInt(500), sb.toString());
+	    assert(cache.getWeight() <= 1000);
+	}
+	long weight = 0;
+	for (String v: cache.values()) weight += v.length();
+	assertEquals(weight, cache.getWeight());
+	cache.put("big", new String(new char[2000]));
+	assertEquals(null, cache.get("big"));
+    }
+
+    public void testSetValue() {
+	CachingTrie<String, String> cache = new CachingTrie<String, String>(10, new CachingTrie.Weigher<String, String>() {
+		public int weigh(String key, String value) {
+		    return value.length();
+		}
+	    });
+	cache.put("a", "xx");
+	cache.put("b", "yy");
+	cache.put("c", "zz");
+	Map.Entry<String, String> a = null, b = null;
+	for (Map.Entry<String, String> e: cache.entrySet()) {
+	    if (e.getKey().equals("a")) a = e;
+	    if (e.getKey().equals("b")) b = e;
+	}
+	assertEquals("xx", a.setValue("xxxx"));
+	assertEquals(8, cache.getWeight());
+	assertEquals("xxxx", cache.get("a"));
+	// Too heavy now, so something else has to go
+	b.setValue("yyyyyy");
+	assert(cache.getWeight() <= 10);
+	long weight = 0;
+	for (String v: cache.values()) weight += v.length();
+	assertEquals(weight, cache.getWeight());
+	assertEquals(1, cache.getEvictions());
+
+	// Entries no longer in the cache do not count
+	cache.invalidatePrefix("");
+	assertEquals(0, cache.getWeight());
+	a.setValue("xxxxxxxx");
+	assertEquals(0, cache.getWeight());
+	assertEquals(null, cache.get("a"));
+	cache.put("d", "dd");
+	assertEquals(2, cache.getWeight());
+	assertEquals(1, cache.size());
+    }
+
+    public void testInvalidatePrefix() {
+	CachingTrie<String, Integer> cache = new CachingTrie<String, Integer>(10000);
+	HashMap<String, Integer> reference = new HashMap<String, Integer>();
+	Random rng = new Random();
+	String[] dirs = { "/var/log/", "/var/lib/", "/usr/", "/usr/lib/", "/home/a/", "/home/b/" };
+	for (int i = 0; i < 5000; ++i) {
+	    String path = dirs[rng.nextInt(dirs.length)] + rng.nextInt(1000);
+	    cache.put(path, i);
+	    reference.put(path, i);
+	}
+	int before = cache.size();
+	int removed = cache.invalidatePrefix("/var/l");
+	assertEquals(0, cache.invalidatePrefix("/var/l"));
+	assertEquals(0, cache.invalidatePrefix("/nope"));
+	int expected = 0;
+	for (String k: new HashMap<String, Integer>(reference).keySet()) {
+	    if (k.startsWith("/var/l")) {
+		reference.remove(k);
+		expected++;
+	    }
+	}
+	assertEquals(expected, removed);
+	assertEquals(before - removed, cache.size());
+	assertEquals(reference, new HashMap<String, Integer>(cache));
+	assertEquals(null, cache.get("/var/log/1"));
+
+	cache.invalidatePrefix("/usr/lib/");
+	for (String k: new HashMap<String, Integer>(reference).keySet()) {
+	    if (k.startsWith("/usr/lib/")) reference.remove(k);
+	}
+	assertEquals(reference, new HashMap<String, Integer>(cache));
+	assertEquals(reference.size(), cache.getWeight());
+
+	// Fill up, so the clock hand goes all round the ring
+	for (int i = 0; i < 20000; ++i) {
+	    String path = "/var/log/" + i;
+	    cache.put(path, i);
+	    assert(cache.size() <= 10000);
+	}
+	assertEquals(10000, cache.size());
+	assertEquals(10000, cache.getWeight());
+	assertEquals(Integer.valueOf(19999), cache.get("/var/log/19999"));
+
+	cache.invalidatePrefix("");
+	assertEquals(0, cache.size());
+	assertEquals(0, cache.getWeight());
+	cache.put("a", 1);
+	assertEquals(Integer.valueOf(1), cache.get("a"));
+    }
+}
@@ -0,0 +1,123 @@
+package org.bifrost;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.framework.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.function.Predicate;
+import org.bifrost.simplehashset.CompactSimpleHashSet;
+
+public class CompactSimpleHashSetTest extends TestCase
+{
+    public CompactSimpleHashSetTest() {
+	super("CompactSimpleHashSetTest");
+    }
+
+    public static Test suite() {
+	return new TestSuite(CompactSimpleHashSetTest.class);
+    }
+
+    public void testInsertionOrder() {
+	CompactSimpleHashSet<String> hashSet = new CompactSimpleHashSet<String>();
+	hashSet.add("c"); hashSet.add("a"); hashSet.add(null); hashSet.add("b"); hashSet.add("a");
+	assertEquals(Arrays.asList("c", "a", null, "b"), new ArrayList<String>(hashSet));
+	assert(hashSet.remove("a"));
+	assert(!hashSet.remove("a"));
+	hashSet.add("a");
+	assertEquals(Arrays.asList("c", null, "b", "a"), new ArrayList<String>(hashSet));
+	assert(hashSet.contains(null));
+	assert(hashSet.remove(null));
+	assert(!hashSet.contains(null));
+	assertEquals(3, hashSet.size());
+    }
+
+    public void testComparedToLinkedHashSet() {
+	CompactSimpleHashSet<Integer> hashSet = new CompactSimpleHashSet<Integer>(4);
+	LinkedHashSet<Integer> reference = new LinkedHashSet<Integer>();
+	Random rng = new Random();
+	for (int i = 0; i < 200000; ++i) {
+	    int n = rng.nextInt(3000);
+	    if (rng.nextInt(3) == 0) {
+		assertEquals(reference.remove(n), hashSet.remove(n));
+	    } else {
+		assertEquals(reference.add(n), hashSet.add(n));
+	    }
+	    if (i % 10000 == 0) assertEquals(new ArrayList<Integer>(reference), new ArrayList<Integer>(hashSet));
+	}
+	assertEquals(new ArrayList<Integer>(reference), new ArrayList<Integer>(hashSet));
+	assertEquals(reference, hashSet);
+    }
+
+    public void testIteratorRemove() {
+	CompactSimpleHashSet<Integer> hashSet = new CompactSimpleHashSet<Integer>();
+	for (int i = 0; i < 1000; ++i) hashSet.add(i);
+	int expected = 0;
+	for (Iterator<Integer> it = hashSet.iterator(); it.hasNext(); ++expected) {
+	    int n = it.next();
+	    assertEquals(expected, n);
+	    if (n % 2 == 0) it.remove();
+	}
+	assertEquals(1000, expected);
+	assertEquals(500, hashSet.size());
+	for (int i = 0; i < 1000; ++i) assertEquals(i % 2 == 1, hashSet.contains(i));
+    }
+
+    public void testShrink() {
+	CompactSimpleHashSet<Integer> hashSet = new CompactSimpleHashSet<Integer>();
+	for (int i = 0; i < 100000; ++i) hashSet.add(i);
+	int peak = hashSet.capacity();
+	for (int i = 0; i < 99000; ++i) hashSet.remove(i);
+	assert(hashSet.capacity() < peak / 16);
+	hashSet.trimToSize();
+	assert(hashSet.capacity() < 2000);
+
+	hashSet.removeIf(new Predicate<Integer>() {
+		public boolean test(Integer i) {
+		    return i < 99990;
+		}
+	    });
+	assertEquals(10, hashSet.size());
+	assert(hashSet.capacity() < 100);
+	int expected = 99990;
+	for (int n: hashSet) assertEquals(expected++, n);
+    }
+
+    public void testRemoveIfThrows() {
+	CompactSimpleHashSet<Integer> hashSet = new CompactSimpleHashSet<Integer>();
+	for (int i = 0; i < 100; ++i) hashSet.add(i);
+	Iterator<Integer> before = hashSet.iterator();
+	try {
+	    hashSet.removeIf(new Predicate<Integer>() {
+		    public boolean test(Integer i) {
+			if (i == 50) throw new IllegalStateException();
+			return i % 2 == 0;
+		    }
+		});
+	    fail();
+	} catch (IllegalStateException e) {
+	}
+	// What was removed before the exception stays removed, and counts as a modification
+	assertEquals(75, hashSet.size());
+	try {
+	    before.next();
+	    fail();
+	} catch (ConcurrentModificationException e) {
+	}
+	for (int i = 0; i < 100; ++i) assertEquals(i >= 50 || i % 2 == 1, hashSet.contains(i));
+	int count = 0;
+	for (int n: hashSet) {
+	    assert(n >= 50 || n % 2 == 1);
+	    count++;
+	}
+	assertEquals(75, count);
+	assert(hashSet.add(0));
+	assert(!hashSet.add(1));
+	assertEquals(76, hashSet.size());
+    }
+}
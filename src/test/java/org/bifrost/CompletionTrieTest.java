@@ -0,0 +1,128 @@
+package org.bifrost;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.framework.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.bifrost.trie.CompletionTrie;
+
+public class CompletionTrieTest extends TestCase
+{
+    public CompletionTrieTest() {
+	super("CompletionTrieTest");
+    }
+
+    public static Test suite() {
+	return new TestSuite(CompletionTrieTest.class);
+    }
+
+    /**
+     * Checks the weights of topCompletions against sorting every matching key.
+     */
+    private static void check(CompletionTrie<String> trie, Map<String, Long> reference, String prefix, int k) {
+	List<Long> expected = new ArrayList<Long>();
+	for (Map.Entry<String, Long> e: reference.entrySet()) {
+	    if (e.getKey().startsWith(prefix)) expected.add(e.getValue());
+	}
+	Collections.sort(expected, Collections.reverseOrder());
+	if (expected.size() > k) expected = expected.subList(0, k);
+	List<Long> actual = new ArrayList<Long>();
+	for (Map.Entry<String, Long> e: trie.topCompletions(prefix, k)) {
+	    assert(e.getKey().startsWith(prefix));
+	    assertEquals(reference.get(e.getKey()), e.getValue());
+	    actual.add(e.getValue());
+	}
+	assertEquals(expected, actual);
+    }
+
+    public void testTopCompletions() {
+	CompletionTrie<String> trie = new CompletionTrie<String>();
+	trie.put("car", 10L);
+	trie.put("cart", 30L);
+	trie.put("carbon", 20L);
+	trie.put("cat", 25L);
+	trie.put("dog", 100L);
+	List<Map.Entry<String, Long>> top = trie.topCompletions("ca", 3);
+	assertEquals("cart", top.get(0).getKey());
+	assertEquals("cat", top.get(1).getKey());
+	assertEquals("carbon", top.get(2).getKey());
+	assertEquals(0, trie.topCompletions("x", 3).size());
+	assertEquals(0, trie.topCompletions("ca", 0).size());
+	assertEquals(5, trie.topCompletions("", 10).size());
+
+	trie.remove("cart");
+	trie.put("car", 40L);
+	top = trie.topCompletions("car", 2);
+	assertEquals("car", top.get(0).getKey());
+	assertEquals("carbon", top.get(1).getKey());
+	try {
+	    trie.put("null", null);
+	    fail();
+	} catch (NullPointerException e) {
+	}
+    }
+
+    public void testSetValue() {
+	CompletionTrie<String> trie = new CompletionTrie<String>();
+	HashMap<String, Long> reference = new HashMap<String, Long>();
+	for (int i = 0; i < 1000; ++i) {
+	    trie.put("k" + i, (long) i);
+	    reference.put("k" + i, (long) i);
+	}
+	Random rng = new Random();
+	for (int i = 0; i < 200; ++i) {
+	    List<Map.Entry<String, Long>> top = trie.topCompletions("k", 5);
+	    // Change the weights of entries of both kinds: from the search and from iteration
+	    Map.Entry<String, Long> entry = top.get(rng.nextInt(top.size()));
+	    long weight = rng.nextInt(2000);
+	    assertEquals(reference.put(entry.getKey(), weight), entry.setValue(weight));
+	    for (Map.Entry<String, Long> e: trie.entrySet()) {
+		if (rng.nextInt(100) == 0) {
+		    weight = rng.nextInt(2000);
+		    reference.put(e.getKey(), weight);
+		    e.setValue(weight);
+		}
+	    }
+	    check(trie, reference, "k", 5);
+	    check(trie, reference, "k1", 3);
+	}
+	try {
+	    trie.topCompletions("k", 1).get(0).setValue(null);
+	    fail();
+	} catch (NullPointerException e) {
+	}
+	check(trie, reference, "", 10);
+    }
+
+    public void testComparedToSorting() {
+	CompletionTrie<String> trie = new CompletionTrie<String>();
+	HashMap<String, Long> reference = new HashMap<String, Long>();
+	Random rng = new Random();
+	String letters = "abcd";
+	for (int i = 0; i < 20000; ++i) {
+	    StringBuilder sb = new StringBuilder();
+	    for (int j = rng.nextInt(7); j >= 0; --j) sb.append(letters.charAt(rng.nextInt(letters.length())));
+	    String key = sb.toString();
+	    if (rng.nextInt(4) == 0) {
+		assertEquals(reference.remove(key), trie.remove(key));
+	    } else {
+		long weight = rng.nextInt(1000) - 100;
+		assertEquals(reference.put(key, weight), trie.put(key, weight));
+	    }
+	    if (i % 500 == 0) {
+		String prefix = key.substring(0, rng.nextInt(key.length() + 1));
+		check(trie, reference, prefix, 1 + rng.nextInt(20));
+	    }
+	}
+	for (String prefix: new String[] { "", "a", "ab", "dcb", "abcdabcd" }) {
+	    check(trie, reference, prefix, 10);
+	    check(trie, reference, prefix, 100000);
+	}
+    }
+}
@@ -0,0 +1,66 @@
+package org.bifrost;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import org.bifrost.simplehashset.ConcurrentSimpleHashSet;
+import org.bifrost.simplehashset.SimpleHashSet;
+
+/**
+ * Compares throughput of ConcurrentSimpleHashSet and a synchronized
+ * SimpleHashSet for a mixed add/contains/remove load at increasing
+ * thread counts. Not run as part of the tests, start it by hand:
+ *
+ * java -cp target/classes:target/test-classes org.bifrost.ConcurrentSimpleHashSetBenchmark
+ */
+public class ConcurrentSimpleHashSetBenchmark {
+    static final int OPERATIONS_PER_THREAD = 2000000;
+    static final int KEY_SPACE = 1 << 20;
+
+    static long run(final Set<Integer> set, int nrThreads) throws InterruptedException {
+	final CountDownLatch start = new CountDownLatch(1);
+	Thread[] threads = new Thread[nrThreads];
+	for (int t = 0; t < nrThreads; ++t) {
+	    final int seed = t * 0x9E3779B9;
+	    threads[t] = new Thread() {
+		    public void run() {
+			try {
+			    start.await();
+			} catch (InterruptedException e) {
+			    return;
+			}
+			int x = seed;
+			for (int i = 0; i < OPERATIONS_PER_THREAD; ++i) {
+			    x ^= x << 13; x ^= x >>> 17; x ^= x << 5;
+			    Integer k = x & (KEY_SPACE - 1);
+			    switch (i & 7) {
+			    case 0: set.add(k); break;
+			    case 1: set.remove(k); break;
+			    default: set.contains(k);
+			    }
+			}
+		    }
+		};
+	    threads[t].start();
+	}
+	long before = System.nanoTime();
+	start.countDown();
+	for (Thread thread: threads) thread.join();
+	return System.nanoTime() - before;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+	int maxThreads = Runtime.getRuntime().availableProcessors();
+	for (int nrThreads = 1; nrThreads <= maxThreads; nrThreads *= 2) {
+	    for (int warmup = 0; warmup < 2; ++warmup) {
+		run(new ConcurrentSimpleHashSet<Integer>(), nrThreads);
+		run(Collections.synchronizedSet(new SimpleHashSet<Integer>()), nrThreads);
+	    }
+	    long concurrent = run(new ConcurrentSimpleHashSet<Integer>(), nrThreads);
+	    long synchronizedSet = run(Collections.synchronizedSet(new SimpleHashSet<Integer>()), nrThreads);
+	    double ops = (double) nrThreads * OPERATIONS_PER_THREAD;
+	    System.out.println(String.format("%2d threads: concurrent %6.1f Mops/s, synchronized %6.1f Mops/s",
+					     nrThreads, ops * 1e3 / concurrent, ops * 1e3 / synchronizedSet));
+	}
+    }
+}
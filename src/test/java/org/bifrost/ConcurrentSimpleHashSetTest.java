@@ -0,0 +1,111 @@
+package org.bifrost;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.framework.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.bifrost.simplehashset.ConcurrentSimpleHashSet;
+
+public class ConcurrentSimpleHashSetTest extends TestCase
+{
+    public ConcurrentSimpleHashSetTest() {
+	super("ConcurrentSimpleHashSetTest");
+    }
+
+    public static Test suite() {
+	return new TestSuite(ConcurrentSimpleHashSetTest.class);
+    }
+
+    public void testSingleThreaded() {
+	ConcurrentSimpleHashSet<Integer> hashSet = new ConcurrentSimpleHashSet<Integer>();
+	assert(hashSet.add(1)); assert(hashSet.add(2)); assert(!hashSet.add(2));
+	assert(hashSet.add(null)); assert(!hashSet.add(null));
+	assert(hashSet.contains(null));
+	assertEquals(3, hashSet.size());
+	assert(hashSet.remove(null)); assert(!hashSet.remove(null));
+	assert(hashSet.remove(1)); assert(!hashSet.remove(1));
+	assertEquals(1, hashSet.size());
+	hashSet.clear();
+	assert(hashSet.isEmpty());
+    }
+
+    /**
+     * Many threads add overlapping ranges, every element must be reported as added exactly once.
+     * Then the threads remove them again, again exactly once each.
+     */
+    public void testConcurrentAddRemove() throws InterruptedException {
+	final int nrThreads = 8, nrElements = 100000;
+	final ConcurrentSimpleHashSet<Integer> hashSet = new ConcurrentSimpleHashSet<Integer>(16);
+	final AtomicInteger added = new AtomicInteger(), removed = new AtomicInteger();
+	final CountDownLatch start = new CountDownLatch(1), addsDone = new CountDownLatch(nrThreads);
+	List<Thread> threads = new ArrayList<Thread>();
+
+	for (int t = 0; t < nrThreads; ++t) {
+	    final int offset = t * 997;
+	    Thread thread = new Thread() {
+		    public void run() {
+			try {
+			    start.await();
+			    for (int i = 0; i < nrElements; ++i) {
+				if (hashSet.add((i + offset) % nrElements)) added.incrementAndGet();
+			    }
+			    addsDone.countDown();
+			    addsDone.await();
+			    for (int i = 0; i < nrElements; ++i) {
+				if (hashSet.remove((i + offset) % nrElements)) removed.incrementAndGet();
+			    }
+			} catch (InterruptedException e) {
+			    throw new RuntimeException(e);
+			}
+		    }
+		};
+	    threads.add(thread);
+	    thread.start();
+	}
+
+	start.countDown();
+	addsDone.await();
+	for (Thread thread: threads) thread.join();
+	assertEquals(nrElements, added.get());
+	assertEquals(nrElements, removed.get());
+	assert(hashSet.isEmpty());
+    }
+
+    /**
+     * Iterating while other threads modify the set must neither throw nor return duplicates,
+     * and elements that are never removed must always be seen.
+     */
+    public void testWeaklyConsistentIteration() throws InterruptedException {
+	final ConcurrentSimpleHashSet<Integer> hashSet = new ConcurrentSimpleHashSet<Integer>();
+	for (int i = 0; i < 1000; ++i) hashSet.add(-i - 1);
+	final AtomicInteger stop = new AtomicInteger();
+	Thread writer = new Thread() {
+		public void run() {
+		    for (int i = 0; stop.get() == 0; i = (i + 1) % 100000) {
+			hashSet.add(i);
+			hashSet.remove((i + 99950) % 100000);
+		    }
+		}
+	    };
+	writer.start();
+	try {
+	    for (int round = 0; round < 50; ++round) {
+		HashSet<Integer> seen = new HashSet<Integer>();
+		int permanent = 0;
+		for (Integer i: hashSet) {
+		    assert(seen.add(i));
+		    if (i < 0) permanent++;
+		}
+		assertEquals(1000, permanent);
+	    }
+	} finally {
+	    stop.set(1);
+	    writer.join();
+	}
+    }
+}
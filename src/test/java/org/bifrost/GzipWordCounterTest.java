@@ -0,0 +1,138 @@
+package org.bifrost;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.framework.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import org.bifrost.wordcounter.WordCounter;
+
+public class GzipWordCounterTest extends TestCase
+{
+    private File dir;
+
+    public GzipWordCounterTest() {
+	super("GzipWordCounterTest");
+    }
+
+    public static Test suite() {
+	return new TestSuite(GzipWordCounterTest.class);
+    }
+
+    @Override
+    protected void setUp() throws IOException {
+	dir = Files.createTempDirectory("gzip").toFile();
+    }
+
+    @Override
+    protected void tearDown() {
+	for (File f: dir.listFiles()) f.delete();
+	dir.delete();
+    }
+
+    private static void assertSameCounts(List<WordCounter.Word> expected, List<WordCounter.Word> actual) {
+	assertEquals(expected.size(), actual.size());
+	for (int i = 0; i < expected.size(); ++i) {
+	    assertEquals(expected.get(i).getName(), actual.get(i).getName());
+	    assertEquals(expected.get(i).getOccurence(), actual.get(i).getOccurence());
+	}
+    }
+
+    private static byte[] gzip(byte[] bytes, int off, int len, final int level) throws IOException {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	OutputStream gzip = new GZIPOutputStream(out) {
+		{
+		    def.setLevel(level);
+		}
+	    };
+	gzip.write(bytes, off, len);
+	gzip.close();
+	return out.toByteArray();
+    }
+
+    /**
+     * Compresses bytes as members of at most memberSize bytes, cut anywhere.
+     */
+    private static byte[] gzipMembers(byte[] bytes, int memberSize, int level) throws IOException {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	for (int pos = 0; pos < bytes.length; pos += memberSize) {
+	    out.write(gzip(bytes, pos, Math.min(memberSize, bytes.length - pos), level));
+	}
+	return out.toByteArray();
+    }
+
+    private void check(String text, String encoding, byte[] compressed) throws IOException {
+	File f = new File(dir, "text.gz");
+	Files.write(f.toPath(), compressed);
+	WordCounter wc = new WordCounter();
+	assertSameCounts(wc.getMostCommonWords(text, 0), wc.getMostCommonWordsFromGzipFile(f, encoding, 0));
+	WordCounter custom = new WordCounter(Pattern.compile("\\p{Alpha}+"));
+	assertSameCounts(custom.getMostCommonWords(text, 10), custom.getMostCommonWordsFromGzipFile(f, encoding, 10));
+    }
+
+    public void testMembers() throws IOException {
+	Random rng = new Random();
+	WordCounterTest.TextGenerator generator = new WordCounterTest.TextGenerator();
+	StringBuilder sb = new StringBuilder();
+	while (sb.length() < 3 << 20) {
+	    sb.append(generator.generateText(50000).getText());
+	    // Multi-byte chars, and the bytes of a gzip header in ISO-8859-1
+	    sb.append(" æøå€ U.S.A-\r\n \u001f\u008b\u0008\u0000 ");
+	}
+	String text = sb.toString();
+	for (String encoding: new String[] { "UTF-8", "ISO-8859-1", "UTF-16LE" }) {
+	    byte[] bytes = text.getBytes(Charset.forName(encoding));
+	    check(text, encoding, gzip(bytes, 0, bytes.length, Deflater.DEFAULT_COMPRESSION));
+	    // Stored blocks, so the text itself is in the file
+	    check(text, encoding, gzipMembers(bytes, 65536 + rng.nextInt(1000), Deflater.NO_COMPRESSION));
+	    check(text, encoding, gzipMembers(bytes, 10000 + rng.nextInt(1000), Deflater.BEST_SPEED));
+	}
+	byte[] bytes = "No separator-\nat all".getBytes("UTF-8");
+	check("No separator-\nat all", "UTF-8", gzipMembers(bytes, 3, Deflater.DEFAULT_COMPRESSION));
+	bytes = gzipMembers(text.getBytes("UTF-8"), 100000, Deflater.BEST_SPEED);
+	check(text, "UTF-8", Arrays.copyOf(bytes, bytes.length + 10));
+
+	// A word longer than a range, so ranges without a separator are joined
+	char[] word = new char[5 << 19];
+	Arrays.fill(word, 'x');
+	String longWord = "some words " + new String(word) + " and then some words";
+	File f = new File(dir, "long.gz");
+	Files.write(f.toPath(), gzipMembers(longWord.getBytes("UTF-8"), 65536, Deflater.NO_COMPRESSION));
+	// The regex would recurse once per char of the word
+	WordCounter fused = new WordCounter(WordCounter.Mode.FUSED);
+	assertSameCounts(fused.getMostCommonWords(longWord, 0), fused.getMostCommonWordsFromGzipFile(f, "UTF-8", 0));
+    }
+
+    public void testCorrupt() throws IOException {
+	String text = new WordCounterTest.TextGenerator().generateText(100000).getText();
+	byte[] bytes = gzipMembers(text.getBytes("UTF-8"), 100000, Deflater.BEST_SPEED);
+	File f = new File(dir, "corrupt.gz");
+	for (int at: new int[] { 0, bytes.length / 2, bytes.length - 3 }) {
+	    byte[] corrupt = bytes.clone();
+	    corrupt[at] ^= 0x55;
+	    Files.write(f.toPath(), corrupt);
+	    try {
+		new WordCounter().getMostCommonWordsFromGzipFile(f, "UTF-8", 10);
+		fail("Corrupted at " + at);
+	    } catch (IOException e) {
+	    }
+	}
+	Files.write(f.toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+	try {
+	    new WordCounter().getMostCommonWordsFromGzipFile(f, "UTF-8", 10);
+	    fail();
+	} catch (IOException e) {
+	}
+    }
+}
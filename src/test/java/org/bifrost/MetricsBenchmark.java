@@ -0,0 +1,89 @@
+package org.bifrost;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.bifrost.metrics.Metrics;
+import org.bifrost.simplehashset.SimpleHashSet;
+import org.bifrost.trie.Trie;
+import org.bifrost.wordcounter.WordCounter;
+
+/**
+ * Measures the instrumented paths with metrics switched off and on.
+ *
+ * Run without arguments, it starts itself twice in fresh JVMs, once
+ * with -Dbifrost.metrics=false and once with true, and prints the
+ * timings side by side. Metrics.ENABLED is a static final constant,
+ * so the off timings are those of uninstrumented code.
+ *
+ *   java -cp target/classes:target/test-classes org.bifrost.MetricsBenchmark
+ */
+public class MetricsBenchmark {
+    static final int ROUNDS = 10;
+
+    public static void main(String[] args) throws Exception {
+	if (args.length > 0 && args[0].equals("child")) {
+	    runWorkloads();
+	    return;
+	}
+	List<String> off = runChild(false), on = runChild(true);
+	System.out.println(String.format("%-20s %14s %14s %9s", "workload", "metrics off", "metrics on", "overhead"));
+	for (int i = 0; i < off.size(); ++i) {
+	    String[] a = off.get(i).split(" "), b = on.get(i).split(" ");
+	    double offNanos = Double.parseDouble(a[1]), onNanos = Double.parseDouble(b[1]);
+	    System.out.println(String.format("%-20s %11.2f ns %11.2f ns %8.1f%%", a[0], offNanos, onNanos,
+					     100 * (onNanos - offNanos) / offNanos));
+	}
+    }
+
+    private static List<String> runChild(boolean enabled) throws Exception {
+	String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+	Process p = new ProcessBuilder(java, "-Dbifrost.metrics=" + enabled, "-cp", System.getProperty("java.class.path"),
+				       MetricsBenchmark.class.getName(), "child")
+	    .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+	List<String> lines = new ArrayList<String>();
+	BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream(), "UTF-8"));
+	for (String line; (line = reader.readLine()) != null; ) lines.add(line);
+	if (p.waitFor() != 0) throw new IllegalStateException("Benchmark child failed");
+	return lines;
+    }
+
+    /**
+     * Prints "workload nanos-per-operation" lines, the best of ROUNDS rounds.
+     */
+    private static void runWorkloads() {
+	Random rng = new Random(42);
+	List<String> keys = new ArrayList<String>();
+	for (int i = 0; i < 100000; ++i) keys.add(Integer.toString(rng.nextInt(), 36));
+	Trie<String, Integer> trie = new Trie<String, Integer>();
+	for (String k: keys) trie.put(k, 1);
+	StringBuilder text = new StringBuilder();
+	for (int i = 0; i < 200000; ++i) text.append(keys.get(rng.nextInt(1000)).replaceAll("[0-9]", "")).append(' ');
+	String textString = text.toString();
+
+	double trieGet = Double.MAX_VALUE, hashSetAdd = Double.MAX_VALUE, wordCount = Double.MAX_VALUE;
+	long sink = 0;
+	for (int round = 0; round < ROUNDS; ++round) {
+	    long start = System.nanoTime();
+	    for (String k: keys) sink += trie.get(k);
+	    trieGet = Math.min(trieGet, (System.nanoTime() - start) / (double) keys.size());
+
+	    start = System.nanoTime();
+	    SimpleHashSet<Integer> hashSet = new SimpleHashSet<Integer>();
+	    for (int i = 0; i < 1000000; ++i) hashSet.add(i);
+	    sink += hashSet.size();
+	    hashSetAdd = Math.min(hashSetAdd, (System.nanoTime() - start) / 1e6);
+
+	    start = System.nanoTime();
+	    sink += new WordCounter().getMostCommonWords(textString).size();
+	    wordCount = Math.min(wordCount, (System.nanoTime() - start) / (double) textString.length());
+	}
+	System.out.println("trie.get " + trieGet);
+	System.out.println("simplehashset.add " + hashSetAdd);
+	System.out.println("wordcounter/char " + wordCount);
+	System.err.println("metrics " + (Metrics.ENABLED ? "on" : "off") + " (" + sink + ")");
+    }
+}
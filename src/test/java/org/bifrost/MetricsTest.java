@@ -0,0 +1,143 @@
+package org.bifrost;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.framework.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.bifrost.metrics.Histogram;
+import org.bifrost.metrics.Metrics;
+import org.bifrost.simplehashset.SimpleHashSet;
+import org.bifrost.trie.Trie;
+import org.bifrost.wordcounter.WordCounter;
+
+public class MetricsTest extends TestCase
+{
+    public MetricsTest() {
+	super("MetricsTest");
+    }
+
+    public static Test suite() {
+	return new TestSuite(MetricsTest.class);
+    }
+
+    public void testHistogram() {
+	Histogram h = new Histogram("test");
+	assertEquals(0, h.getPercentile(0.5));
+	for (int i = 0; i < 100; ++i) h.record(i);
+	h.record(-5);
+	assertEquals(101, h.getCount());
+	assertEquals(4950, h.getSum());
+	assertEquals(2, h.getBucket(0));
+	assertEquals(1, h.getBucket(1));
+	assertEquals(2, h.getBucket(2));
+	assertEquals(36, h.getBucket(7));
+	assertEquals(63, h.getPercentile(0.5));
+	assertEquals(127, h.getPercentile(1));
+	h.reset();
+	assertEquals(0, h.getCount());
+	assertEquals(0, h.getBucket(7));
+    }
+
+    /**
+     * The tests are run with -Dbifrost.metrics=true and false, see the pom.
+     */
+    public void testMetrics() {
+	if (!Metrics.ENABLED) {
+	    checkDisabled();
+	    return;
+	}
+	Metrics.reset();
+	new WordCounter().getMostCommonWords("to be or not to be");
+	assertEquals(1, Metrics.WORD_COUNT_RUNS.get());
+	assertEquals(18, Metrics.WORD_COUNT_CHARS.get());
+	assertEquals(6, Metrics.WORD_COUNT_TOKENS.get());
+	assertEquals(4, Metrics.WORD_COUNT_DISTINCT.get());
+	assertEquals(1, Metrics.WORD_COUNT_SORT_NANOS.getCount());
+
+	Trie<String, Integer> trie = new Trie<String, Integer>();
+	trie.put("abc", 1); trie.put("abd", 2);
+	Metrics.reset();
+	trie.get("abd");
+	assertEquals(1, Metrics.TRIE_DESCENT_DEPTH.getCount());
+	assertEquals(3, Metrics.TRIE_DESCENT_DEPTH.getSum());
+	assertEquals(3, Metrics.TRIE_SIBLING_SCAN.getCount());
+	assertEquals(4, Metrics.TRIE_SIBLING_SCAN.getSum());
+	trie.get("b");
+	assertEquals(1, Metrics.TRIE_DESCENT_DEPTH.getBucket(0));
+	assertEquals(2, Metrics.TRIE_DESCENT_DEPTH.getCount());
+
+	SimpleHashSet<Integer> hashSet = new SimpleHashSet<Integer>(4);
+	for (int i = 0; i < 100; ++i) hashSet.add(i);
+	assert(Metrics.HASHSET_RESIZES.get() > 0);
+	assertEquals(Metrics.HASHSET_RESIZES.get(), Metrics.HASHSET_RESIZE_NANOS.getCount());
+	assert(Metrics.report().contains("simplehashset.resizes: " + Metrics.HASHSET_RESIZES.get()));
+
+	// put records the depth whether the key is new or not
+	trie.put("abd", 3);
+	assertEquals(3, Metrics.TRIE_DESCENT_DEPTH.getCount());
+	assertEquals(6, Metrics.TRIE_DESCENT_DEPTH.getSum());
+	trie.put("abe", 4);
+	assertEquals(4, Metrics.TRIE_DESCENT_DEPTH.getCount());
+	assertEquals(8, Metrics.TRIE_DESCENT_DEPTH.getSum());
+    }
+
+    /**
+     * Without -Dbifrost.metrics=true nothing is recorded.
+     */
+    private void checkDisabled() {
+	Metrics.reset();
+	new WordCounter().getMostCommonWords("to be or not to be");
+	Trie<String, Integer> trie = new Trie<String, Integer>();
+	trie.put("abc", 1);
+	trie.get("abc");
+	SimpleHashSet<Integer> hashSet = new SimpleHashSet<Integer>(4);
+	for (int i = 0; i < 100; ++i) hashSet.add(i);
+	assertEquals(0, Metrics.WORD_COUNT_RUNS.get());
+	assertEquals(0, Metrics.WORD_COUNT_SORT_NANOS.getCount());
+	assertEquals(0, Metrics.TRIE_DESCENT_DEPTH.getCount());
+	assertEquals(0, Metrics.TRIE_SIBLING_SCAN.getCount());
+	assertEquals(0, Metrics.HASHSET_RESIZES.get());
+    }
+
+    public void testFlightRecorderEvents() throws IOException {
+	Path file = Files.createTempFile("metrics", ".jfr");
+	try {
+	    Recording recording = new Recording();
+	    recording.enable("org.bifrost.WordCount");
+	    recording.enable("org.bifrost.HashSetResize");
+	    recording.start();
+	    new WordCounter().getMostCommonWords("to be or not to be");
+	    SimpleHashSet<Integer> hashSet = new SimpleHashSet<Integer>(4);
+	    for (int i = 0; i < 100; ++i) hashSet.add(i);
+	    recording.stop();
+	    recording.dump(file);
+	    recording.close();
+
+	    List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+	    int wordCounts = 0, resizes = 0;
+	    for (RecordedEvent event: events) {
+		String name = event.getEventType().getName();
+		if (name.equals("org.bifrost.WordCount")) {
+		    wordCounts++;
+		    assertEquals(6, event.getLong("tokens"));
+		    assertEquals(4, event.getLong("distinctWords"));
+		} else if (name.equals("org.bifrost.HashSetResize")) {
+		    resizes++;
+		    assertEquals(2 * event.getInt("oldCapacity"), event.getInt("newCapacity"));
+		}
+	    }
+	    assertEquals(1, wordCounts);
+	    assert(resizes > 0);
+	} finally {
+	    Files.delete(file);
+	}
+    }
+}
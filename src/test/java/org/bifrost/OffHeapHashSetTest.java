@@ -0,0 +1,110 @@
+package org.bifrost;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.framework.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Random;
+import org.bifrost.simplehashset.OffHeapHashSet;
+
+public class OffHeapHashSetTest extends TestCase
+{
+    public OffHeapHashSetTest() {
+	super("OffHeapHashSetTest");
+    }
+
+    public static Test suite() {
+	return new TestSuite(OffHeapHashSetTest.class);
+    }
+
+    public void testLongKeys() {
+	OffHeapHashSet hashSet = OffHeapHashSet.allocate(8, 4);
+	try {
+	    HashSet<Long> reference = new HashSet<Long>();
+	    Random rng = new Random();
+	    for (int i = 0; i < 100000; ++i) {
+		long n = rng.nextInt(5000) - 2500;
+		if (rng.nextInt(3) == 0) {
+		    assertEquals(reference.remove(n), hashSet.remove(n));
+		} else {
+		    assertEquals(reference.add(n), hashSet.add(n));
+		}
+	    }
+	    assertEquals(reference.size(), hashSet.size());
+	    for (long n = -2500; n < 2500; ++n) {
+		assertEquals(reference.contains(n), hashSet.contains(n));
+	    }
+	    hashSet.clear();
+	    assert(hashSet.isEmpty());
+	    assert(!hashSet.contains(reference.iterator().next()));
+	} finally {
+	    hashSet.close();
+	}
+    }
+
+    public void testByteKeys() {
+	OffHeapHashSet hashSet = OffHeapHashSet.allocate(12, 16);
+	try {
+	    assert(hashSet.add("hello".getBytes()));
+	    assert(!hashSet.add("hello".getBytes()));
+	    assert(hashSet.add("hell".getBytes()));
+	    assert(hashSet.add(new byte[0]));
+	    assert(hashSet.contains("xxhelloxx".getBytes(), 2, 5));
+	    assert(!hashSet.contains("help".getBytes()));
+	    assert(!hashSet.contains("much too long a key".getBytes()));
+	    assert(hashSet.remove("hello".getBytes()));
+	    assert(!hashSet.contains("hello".getBytes()));
+	    assert(hashSet.contains("hell".getBytes()));
+	    assertEquals(2, hashSet.size());
+
+	    // A long is the same key as its 8 big-endian bytes
+	    assert(hashSet.add(0x0102030405060708L));
+	    assert(hashSet.contains(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }));
+	} finally {
+	    hashSet.close();
+	}
+	try {
+	    hashSet.contains(1L);
+	    fail("Should have thrown: " + IllegalStateException.class);
+	} catch (IllegalStateException e) {
+	}
+    }
+
+    /**
+     * A file backed set must come back with its contents after being closed, also after growing.
+     */
+    public void testReopen() throws IOException {
+	Path dir = Files.createTempDirectory("offheaphashset");
+	Path file = dir.resolve("dedup.set");
+	try {
+	    OffHeapHashSet hashSet = OffHeapHashSet.open(file, 8, 16);
+	    for (long i = 1; i <= 10000; ++i) hashSet.add(i * 7919);
+	    hashSet.remove(7919L);
+	    hashSet.close();
+
+	    hashSet = OffHeapHashSet.open(file, 8, 16);
+	    try {
+		assertEquals(9999, hashSet.size());
+		assert(!hashSet.contains(7919L));
+		for (long i = 2; i <= 10000; ++i) assert(hashSet.contains(i * 7919));
+		assert(!hashSet.add(2 * 7919L));
+	    } finally {
+		hashSet.close();
+	    }
+
+	    try {
+		OffHeapHashSet.open(file, 16, 16);
+		fail("Should have thrown: " + IllegalArgumentException.class);
+	    } catch (IllegalArgumentException e) {
+	    }
+	} finally {
+	    for (File f: dir.toFile().listFiles()) f.delete();
+	    Files.delete(dir);
+	}
+    }
+}
@@ -0,0 +1,147 @@
+package org.bifrost;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.framework.Test;
+
+import java.util.HashSet;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.function.LongConsumer;
+import org.bifrost.simplehashset.IntHashSet;
+import org.bifrost.simplehashset.LongHashSet;
+
+public class PrimitiveHashSetTest extends TestCase
+{
+    public PrimitiveHashSetTest() {
+	super("PrimitiveHashSetTest");
+    }
+
+    public static Test suite() {
+	return new TestSuite(PrimitiveHashSetTest.class);
+    }
+
+    public void testAdd() {
+	LongHashSet longSet = new LongHashSet();
+	assert(longSet.add(1L));
+	assert(longSet.add(2L));
+	assert(!longSet.add(2L));
+	assert(longSet.add(0L));
+	assert(!longSet.add(0L));
+
+	IntHashSet intSet = new IntHashSet();
+	assert(intSet.add(1));
+	assert(intSet.add(2));
+	assert(!intSet.add(2));
+    }
+
+    public void testRemove() {
+	LongHashSet hashSet = new LongHashSet();
+	hashSet.add(1); hashSet.add(2); hashSet.add(3); hashSet.add(0);
+	assert(hashSet.contains(1)); assert(hashSet.contains(2)); assert(hashSet.contains(3));
+	assert(hashSet.remove(1)); assert(hashSet.remove(2));
+	assert(!hashSet.remove(1));
+	assert(hashSet.add(1)); assert(hashSet.remove(1));
+	assert(!hashSet.remove(1));
+	assert(hashSet.remove(0)); assert(!hashSet.remove(0));
+	assert(hashSet.contains(3)); assert(!hashSet.contains(1)); assert(!hashSet.contains(2));
+	assert(!hashSet.contains(0));
+    }
+
+    public void testSize() {
+	IntHashSet hashSet = new IntHashSet();
+	assertEquals(hashSet.size(), 0);
+	hashSet.add(1); hashSet.add(2); hashSet.add(3); hashSet.add(4);
+	assertEquals(hashSet.size(), 4);
+	hashSet.add(4);
+	assertEquals(hashSet.size(), 4);
+	hashSet.remove(4); hashSet.remove(3);
+	assertEquals(hashSet.size(), 2);
+	hashSet.remove(2); hashSet.remove(1);
+	assertEquals(hashSet.size(), 0);
+	assert(hashSet.isEmpty());
+    }
+
+    public void testComparedToHashSet() {
+	LongHashSet longSet = new LongHashSet(4);
+	IntHashSet intSet = new IntHashSet(4);
+	HashSet<Long> reference = new HashSet<Long>();
+	Random rng = new Random();
+	for (int i = 0; i < 100000; ++i) {
+	    long n = rng.nextInt(2000) - 1000;
+	    if (rng.nextInt(3) == 0) {
+		boolean removed = reference.remove(n);
+		assertEquals(removed, longSet.remove(n));
+		assertEquals(removed, intSet.remove((int) n));
+	    } else {
+		boolean added = reference.add(n);
+		assertEquals(added, longSet.add(n));
+		assertEquals(added, intSet.add((int) n));
+	    }
+	}
+	assertEquals(reference, longSet);
+	assertEquals(reference.size(), intSet.size());
+	for (Long n : reference) {
+	    assert(intSet.contains(n.intValue()));
+	}
+    }
+
+    public void testIteratorAndForEach() {
+	Random rng = new Random();
+	for (int round = 0; round < 100; ++round) {
+	    final LongHashSet hashSet = new LongHashSet();
+	    final HashSet<Long> reference = new HashSet<Long>();
+	    for (int i = 0; i < 1000; ++i) {
+		long n = rng.nextLong();
+		hashSet.add(n); reference.add(n);
+	    }
+	    hashSet.add(0); reference.add(0L);
+
+	    final HashSet<Long> seen = new HashSet<Long>();
+	    hashSet.forEachLong(new LongConsumer() {
+		    public void accept(long n) {
+			assert(seen.add(n));
+		    }
+		});
+	    assertEquals(reference, seen);
+
+	    PrimitiveIterator.OfLong iter = hashSet.iterator();
+	    while (iter.hasNext()) {
+		long n = iter.nextLong();
+		assert(reference.remove(n));
+		if (rng.nextBoolean()) {
+		    iter.remove();
+		    assert(!hashSet.contains(n));
+		}
+	    }
+	    assert(reference.isEmpty());
+	}
+    }
+
+    /**
+     * forEachInt and forEachLong do not overload Iterable.forEach, so
+     * lambdas go to either without a cast.
+     */
+    public void testForEachLambdas() {
+	IntHashSet intSet = new IntHashSet();
+	LongHashSet longSet = new LongHashSet();
+	for (int i = 0; i < 100; ++i) {
+	    intSet.add(i);
+	    longSet.add(i);
+	}
+	final long[] sums = new long[4];
+	intSet.forEachInt(n -> sums[0] += n);
+	intSet.forEach(n -> sums[1] += n);
+	longSet.forEachLong(n -> sums[2] += n);
+	longSet.forEach(n -> sums[3] += n);
+	for (long sum: sums) assertEquals(4950, sum);
+	assertEquals(100, intSet.toIntArray().length);
+	assertEquals(100, longSet.toLongArray().length);
+
+	for (PrimitiveIterator.OfInt iter = intSet.iterator(); iter.hasNext(); ) {
+	    if (iter.nextInt() % 2 == 0) iter.remove();
+	}
+	assertEquals(50, intSet.size());
+	assert(!intSet.contains(0) && intSet.contains(1) && !intSet.contains(98) && intSet.contains(99));
+    }
+}
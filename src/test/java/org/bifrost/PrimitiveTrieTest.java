@@ -0,0 +1,177 @@
+package org.bifrost;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.framework.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.bifrost.trie.IntTrie;
+import org.bifrost.trie.LongTrie;
+
+public class PrimitiveTrieTest extends TestCase
+{
+    public PrimitiveTrieTest() {
+	super("PrimitiveTrieTest");
+    }
+
+    public static Test suite() {
+	return new TestSuite(PrimitiveTrieTest.class);
+    }
+
+    public void testIntPutGet() {
+	IntTrie trie = new IntTrie(-1);
+	assertEquals(-1, trie.getInt("Hello"));
+	assertEquals(-1, trie.putInt("Hello", 12));
+	assertEquals(-1, trie.putInt("Help", 13));
+	assertEquals(-1, trie.putInt("", 0));
+	assertEquals(12, trie.putInt("Hello", 14));
+	assertEquals(14, trie.getInt("Hello"));
+	assertEquals(-1, trie.getInt("Hel"));
+	assertEquals(0, trie.getInt(""));
+	assertEquals(3, trie.size());
+	assertEquals(Integer.valueOf(13), trie.get("Help"));
+	assertEquals(null, trie.get("Hel"));
+    }
+
+    public void testIntAddTo() {
+	IntTrie trie = new IntTrie(-1);
+	assertEquals(1, trie.increment("the"));
+	assertEquals(2, trie.increment("the"));
+	assertEquals(5, trie.addTo("then", 5));
+	assertEquals(2, trie.getInt("the"));
+	assertEquals(2, trie.size());
+    }
+
+    public void testIntAddAll() {
+	IntTrie trie = new IntTrie(-1), other = new IntTrie();
+	trie.putInt("a", 1); trie.putInt("abc", 2);
+	other.putInt("", 5); other.putInt("ab", 3); other.putInt("abc", 4); other.putInt("b", 6);
+	trie.addAll(other);
+	assertEquals(5, trie.size());
+	assertEquals(5, trie.getInt(""));
+	assertEquals(1, trie.getInt("a"));
+	assertEquals(3, trie.getInt("ab"));
+	assertEquals(6, trie.getInt("abc"));
+	assertEquals(6, trie.getInt("b"));
+	assertEquals(4, other.size());
+    }
+
+    public void testIntRemove() {
+	IntTrie trie = new IntTrie();
+	trie.putInt("String1", 1); trie.putInt("String23", 23);
+	trie.putInt("StrING45", 45); trie.putInt("String15", 15);
+	assertEquals(15, trie.removeInt("String15"));
+	assertEquals(0, trie.removeInt("String15"));
+	assertEquals(Integer.valueOf(23), trie.remove("String23"));
+	assertEquals(null, trie.remove("String23"));
+	assertEquals(2, trie.size());
+	assertEquals(1, trie.removeInt("String1"));
+	assertEquals(45, trie.removeInt("StrING45"));
+	assert(trie.isEmpty());
+	assertEquals(0, trie.putInt("String1", 23));
+    }
+
+    public void testNodeCount() {
+	IntTrie trie = new IntTrie();
+	assertEquals(1, trie.getNodeCount());
+	trie.putInt("abc", 1);
+	trie.increment("abd");
+	assertEquals(5, trie.getNodeCount());
+	IntTrie.Cursor cursor = trie.cursor();
+	for (char c: "abx".toCharArray()) cursor.descend(c);
+	cursor.addTo(1);
+	assertEquals(6, trie.getNodeCount());
+	IntTrie other = new IntTrie();
+	other.putInt("ab", 1); other.putInt("b", 2);
+	trie.addAll(other);
+	assertEquals(7, trie.getNodeCount());
+	trie.removeInt("abc");
+	trie.removeInt("abd");
+	assertEquals(5, trie.getNodeCount());
+	trie.removeInt("abx");
+	trie.removeInt("ab");
+	// The root and "b"
+	assertEquals(2, trie.getNodeCount());
+	trie.clear();
+	assertEquals(1, trie.getNodeCount());
+    }
+
+    public void testIntIterationOrder() {
+	IntTrie trie = new IntTrie();
+	HashMap<String, Integer> hm = new HashMap<String, Integer>();
+	Random rng = new Random();
+	for (int i = 0; i < 1000; ++i) {
+	    int j = rng.nextInt(10000000);
+	    hm.put(Integer.toString(j, 36), j);
+	    trie.putInt(Integer.toString(j, 36), j);
+	}
+	trie.putInt("", 42); hm.put("", 42);
+
+	assertEquals(hm, trie);
+	assertEquals(hm.hashCode(), trie.hashCode());
+
+	ArrayList<String> keys = new ArrayList<String>(hm.keySet());
+	Collections.sort(keys);
+	assertEquals(keys, new ArrayList<String>(trie.keySet()));
+    }
+
+    public void testIntEntrySetValue() {
+	IntTrie trie = new IntTrie();
+	trie.putInt("one", 1);
+	Map.Entry<String, Integer> entry = trie.entrySet().iterator().next();
+	assertEquals("one", entry.getKey());
+	entry.setValue(11);
+	assertEquals(11, trie.getInt("one"));
+    }
+
+    public void testIntWalker() {
+	IntTrie trie = new IntTrie();
+	assertFalse(trie.walker().next());
+	String[] keys = { "", "a", "ab", "b", "ba" };
+	for (int i = 0; i < keys.length; ++i) trie.putInt(keys[i], i);
+	IntTrie.Walker walker = trie.walker();
+	for (int i = 0; i < keys.length; ++i) {
+	    assert(walker.next());
+	    assertEquals(i, walker.getInt());
+	    assertEquals(keys[i], walker.key());
+	}
+	assertFalse(walker.next());
+	assertFalse(walker.next());
+    }
+
+    public void testLong() {
+	LongTrie trie = new LongTrie(Long.MIN_VALUE);
+	assertEquals(Long.MIN_VALUE, trie.getLong("id"));
+	assertEquals(Long.MIN_VALUE, trie.putLong("id", 1L << 40));
+	assertEquals((1L << 40) + 1, trie.increment("id"));
+	assertEquals(1, trie.increment("identity"));
+	assertEquals(Long.valueOf((1L << 40) + 1), trie.get("id"));
+	assertEquals((1L << 40) + 1, trie.removeLong("id"));
+	assertEquals(Long.MIN_VALUE, trie.removeLong("id"));
+	assertEquals(1, trie.size());
+	assertEquals("identity", trie.keySet().iterator().next());
+    }
+
+    public void testPutNull() {
+	IntTrie ints = new IntTrie();
+	LongTrie longs = new LongTrie();
+	try {
+	    ints.put("null", null);
+	    fail();
+	} catch (NullPointerException e) {
+	}
+	try {
+	    longs.put("null", null);
+	    fail();
+	} catch (NullPointerException e) {
+	}
+	assertEquals(0, ints.size());
+	assertEquals(0, longs.size());
+	assertFalse(ints.containsKey("null"));
+	assertFalse(longs.entrySet().iterator().hasNext());
+    }
+}
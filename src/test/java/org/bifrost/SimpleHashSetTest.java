@@ -3,10 +3,25 @@ package org.bifrost;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 import junit.framework.Test;
+import org.bifrost.metrics.Metrics;
+import org.bifrost.simplehashset.BlockedBloomFilter;
 import org.bifrost.simplehashset.SimpleHashSet;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 public class SimpleHashSetTest extends TestCase 
 { 
@@ -123,12 +138,168 @@ public class SimpleHashSetTest extends TestCase
     public void testClone() { 
 	SimpleHashSet<Integer> hashSet = new SimpleHashSet<Integer>();
 	hashSet.add(-42); hashSet.add(1024); hashSet.add(2048); 
-	SimpleHashSet<Integer> clone1 = (SimpleHashSet<Integer>) hashSet.clone();
+	SimpleHashSet<Integer> clone1 = hashSet.clone();
 	assertEquals(clone1, hashSet);
 	hashSet.add(4096);
 	assert(!clone1.equals(hashSet));
     }
 
+    /**
+     * Clones share their table until written to, so every kind of write on either side
+     * must leave the other untouched.
+     */
+    public void testCloneCopyOnWrite() {
+	SimpleHashSet<Integer> hashSet = new SimpleHashSet<Integer>();
+	hashSet.enableMembershipFilter();
+	for (int i = 0; i < 100; ++i) hashSet.add(i);
+	HashSet<Integer> reference = new HashSet<Integer>(hashSet);
+
+	SimpleHashSet<Integer> clone1 = hashSet.clone();
+	SimpleHashSet<Integer> clone2 = hashSet.clone();
+	SimpleHashSet<Integer> clone3 = clone2.clone();
+	hashSet.remove(1);
+	clone1.add(1000);
+	Iterator<Integer> iter = clone2.iterator();
+	iter.next(); iter.remove();
+	clone3.clear();
+
+	assertEquals(99, hashSet.size()); assert(!hashSet.contains(1)); assert(!hashSet.contains(1000));
+	assertEquals(101, clone1.size()); assert(clone1.contains(1)); assert(clone1.contains(1000));
+	assertEquals(99, clone2.size()); assert(!clone2.contains(1000));
+	assert(clone3.isEmpty()); assert(!clone3.contains(2));
+
+	SimpleHashSet<Integer> snapshot = clone1.clone();
+	clone1.remove(1000);
+	assertEquals(reference, clone1);
+	assert(snapshot.contains(1000) && snapshot.contains(1));
+	assertEquals(101, snapshot.size());
+    }
+
+    /**
+     * Of a set and its one clone, only the first to be modified copies
+     * the table and filter; the other then has them to itself.
+     */
+    public void testCloneCopiesOnce() {
+	SimpleHashSet<Integer> hashSet = new SimpleHashSet<Integer>();
+	hashSet.enableMembershipFilter();
+	for (int i = 0; i < 10; ++i) hashSet.add(i);
+	BlockedBloomFilter filter = hashSet.getMembershipFilter();
+	SimpleHashSet<Integer> clone = hashSet.clone();
+	assertSame(filter, clone.getMembershipFilter());
+
+	clone.add(10);
+	assertNotSame(filter, clone.getMembershipFilter());
+	hashSet.add(11);
+	assertSame(filter, hashSet.getMembershipFilter());
+	assert(hashSet.contains(11) && !hashSet.contains(10));
+	assert(clone.contains(10) && !clone.contains(11));
+
+	// A clone of a clone: the last one left keeps the table
+	SimpleHashSet<Integer> clone1 = hashSet.clone();
+	SimpleHashSet<Integer> clone2 = clone1.clone();
+	hashSet.remove(0);
+	clone1.remove(1);
+	assertNotSame(filter, clone1.getMembershipFilter());
+	clone2.remove(2);
+	assertSame(filter, clone2.getMembershipFilter());
+	assert(clone2.contains(0) && clone2.contains(1) && !clone2.contains(2));
+	assert(!hashSet.contains(0) && hashSet.contains(1) && hashSet.contains(2));
+    }
+
+    /**
+     * Clones taken of the same set by several threads at once are
+     * snapshots each, also when they are all modified right away.
+     */
+    public void testConcurrentClone() throws Exception {
+	final int nrThreads = 4;
+	ExecutorService executor = Executors.newFixedThreadPool(nrThreads);
+	try {
+	    for (int round = 0; round < 2000; ++round) {
+		final SimpleHashSet<Integer> hashSet = new SimpleHashSet<Integer>();
+		for (int i = 0; i < 64; ++i) hashSet.add(i);
+		final CyclicBarrier barrier = new CyclicBarrier(nrThreads);
+		List<Callable<SimpleHashSet<Integer>>> tasks = new ArrayList<Callable<SimpleHashSet<Integer>>>();
+		for (int t = 0; t < nrThreads; ++t) {
+		    final int id = t;
+		    tasks.add(new Callable<SimpleHashSet<Integer>>() {
+			    public SimpleHashSet<Integer> call() throws Exception {
+				barrier.await();
+				SimpleHashSet<Integer> clone = hashSet.clone();
+				clone.remove(id);
+				for (int i = 0; i < 8; ++i) clone.add(1000 * (id + 1) + i);
+				return clone;
+			    }
+			});
+		}
+		List<Future<SimpleHashSet<Integer>>> clones = executor.invokeAll(tasks);
+		assertEquals(64, hashSet.size());
+		for (int i = 0; i < 64; ++i) assert(hashSet.contains(i));
+		for (int t = 0; t < nrThreads; ++t) {
+		    HashSet<Integer> expected = new HashSet<Integer>();
+		    for (int i = 0; i < 64; ++i) if (i != t) expected.add(i);
+		    for (int i = 0; i < 8; ++i) expected.add(1000 * (t + 1) + i);
+		    assertEquals(expected, clones.get(t).get());
+		}
+	    }
+	} finally {
+	    executor.shutdown();
+	}
+    }
+
+    public void testSpliterator() {
+	SimpleHashSet<Integer> hashSet = new SimpleHashSet<Integer>();
+	long sum = 0;
+	for (int i = 0; i < 300000; ++i) {
+	    hashSet.add(i);
+	    sum += i;
+	}
+	Spliterator<Integer> spliterator = hashSet.spliterator();
+	assert(spliterator.hasCharacteristics(Spliterator.SIZED));
+	assert(spliterator.hasCharacteristics(Spliterator.DISTINCT));
+	assert(spliterator.hasCharacteristics(Spliterator.NONNULL));
+	assertEquals(300000, spliterator.getExactSizeIfKnown());
+	Spliterator<Integer> prefix = spliterator.trySplit();
+	assert(!spliterator.hasCharacteristics(Spliterator.SIZED));
+	assertEquals(300000, prefix.estimateSize() + spliterator.estimateSize());
+
+	assertEquals(sum, hashSet.parallelStream().mapToLong(Integer::longValue).sum());
+	assertEquals(new HashSet<Integer>(hashSet), hashSet.parallelStream().collect(Collectors.toSet()));
+
+	final AtomicLong parallelSum = new AtomicLong();
+	hashSet.parallelForEach(new Consumer<Integer>() {
+		public void accept(Integer i) {
+		    parallelSum.addAndGet(i);
+		}
+	    });
+	assertEquals(sum, parallelSum.get());
+
+	hashSet.add(null);
+	assert(!hashSet.spliterator().hasCharacteristics(Spliterator.NONNULL));
+    }
+
+    public void testRemoveIf() {
+	SimpleHashSet<Integer> hashSet = new SimpleHashSet<Integer>();
+	HashSet<Integer> reference = new HashSet<Integer>();
+	for (int i = 0; i < 200000; ++i) {
+	    hashSet.add(i); reference.add(i);
+	}
+	Predicate<Integer> odd = new Predicate<Integer>() {
+		public boolean test(Integer i) {
+		    return i % 2 == 1;
+		}
+	    };
+	Predicate<Integer> divisibleBy3 = new Predicate<Integer>() {
+		public boolean test(Integer i) {
+		    return i % 3 == 0;
+		}
+	    };
+	assertEquals(reference.removeIf(odd), hashSet.parallelRemoveIf(odd));
+	assertEquals(reference, hashSet);
+	assert(!hashSet.parallelRemoveIf(odd));
+	assertEquals(reference.removeIf(divisibleBy3), hashSet.removeIf(divisibleBy3));
+	assertEquals(reference, hashSet);
+    }
+
     interface Application {
 	public void apply();
     }
@@ -195,6 +366,142 @@ public class SimpleHashSetTest extends TestCase
 	assertEquals(hashSet.size(), 2);
     }
 
+    /**
+     * Compare a long random sequence of adds and removes with java.util.HashSet.
+     * Few distinct values with colliding hashes make for long clusters and a lot of backward shifting.
+     */
+    public void testComparedToHashSet() {
+	SimpleHashSet<Integer> hashSet = new SimpleHashSet<Integer>(4);
+	HashSet<Integer> reference = new HashSet<Integer>();
+	Random rng = new Random();
+	for (int i = 0; i < 100000; ++i) {
+	    Integer n = rng.nextInt(2000) * 1024;
+	    if (rng.nextInt(3) == 0) {
+		assertEquals(reference.remove(n), hashSet.remove(n));
+	    } else {
+		assertEquals(reference.add(n), hashSet.add(n));
+	    }
+	}
+	assertEquals(reference.size(), hashSet.size());
+	assertEquals(reference, hashSet);
+	assertEquals(hashSet, reference);
+    }
+
+    /**
+     * Removing every element through the iterator must visit every element exactly once,
+     * also those moved across the wrap-around of the table.
+     */
+    public void testIteratorRemoveAll() {
+	Random rng = new Random();
+	for (int round = 0; round < 100; ++round) {
+	    SimpleHashSet<Integer> hashSet = new SimpleHashSet<Integer>();
+	    HashSet<Integer> reference = new HashSet<Integer>();
+	    for (int i = 0; i < 1000; ++i) {
+		Integer n = rng.nextInt();
+		hashSet.add(n); reference.add(n);
+	    }
+	    hashSet.add(null); reference.add(null);
+
+	    Iterator<Integer> iter = hashSet.iterator();
+	    while (iter.hasNext()) {
+		Integer n = iter.next();
+		assert(reference.remove(n));
+		if (rng.nextBoolean()) {
+		    iter.remove();
+		    assert(!hashSet.contains(n));
+		}
+	    }
+	    assert(reference.isEmpty());
+	}
+    }
+
+    /**
+     * With a membership filter the set must behave exactly as without, also when removing
+     * enough to force rebuilds, and the filter must answer most misses by itself.
+     */
+    public void testMembershipFilter() {
+	SimpleHashSet<Integer> hashSet = new SimpleHashSet<Integer>();
+	hashSet.enableMembershipFilter();
+	HashSet<Integer> reference = new HashSet<Integer>();
+	Random rng = new Random();
+	for (int i = 0; i < 100000; ++i) {
+	    Integer n = rng.nextInt(20000);
+	    switch (rng.nextInt(4)) {
+	    case 0: assertEquals(reference.remove(n), hashSet.remove(n)); break;
+	    case 1: assertEquals(reference.add(n), hashSet.add(n)); break;
+	    default: assertEquals(reference.contains(n), hashSet.contains(n));
+	    }
+	}
+	assertEquals(reference, hashSet);
+
+	for (int i = 0; i < 100000; ++i) {
+	    assert(!hashSet.contains(-i - 1));
+	}
+	BlockedBloomFilter filter = hashSet.getMembershipFilter();
+	assert(filter.getObservedFalsePositiveRate() < 0.1);
+	assert(filter.getEstimatedFalsePositiveRate() < 0.1);
+	assert(filter.getMemoryBytes() > 0);
+	// Lookups only write to the filter when collecting metrics
+	assertEquals(Metrics.ENABLED, filter.getQueries() > 0);
+
+	hashSet.add(null);
+	assert(hashSet.contains(null));
+	hashSet.clear();
+	assert(!hashSet.contains(null));
+	hashSet.disableMembershipFilter();
+	assertEquals(null, hashSet.getMembershipFilter());
+    }
+
+    static SimpleHashSet<Integer> randomSet(Random rng, int n, int range) {
+	SimpleHashSet<Integer> res = new SimpleHashSet<Integer>();
+	for (int i = 0; i < n; ++i) res.add(rng.nextInt(range));
+	return res;
+    }
+
+    public void testBulkOperations() {
+	Random rng = new Random();
+	SimpleHashSet<Integer> a = randomSet(rng, 5000, 10000), b = randomSet(rng, 2000, 10000);
+	a.add(null);
+	HashSet<Integer> ra = new HashSet<Integer>(a), rb = new HashSet<Integer>(b);
+
+	SimpleHashSet<Integer> c = a.clone();
+	HashSet<Integer> rc = new HashSet<Integer>(ra);
+	assertEquals(rc.addAll(rb), c.addAll(b));
+	assertEquals(rc, c);
+	assert(c.containsAll(a) && c.containsAll(b) && !b.containsAll(c));
+
+	c = a.clone(); rc = new HashSet<Integer>(ra);
+	assertEquals(rc.retainAll(rb), c.retainAll(b));
+	assertEquals(rc, c);
+
+	c = a.clone(); rc = new HashSet<Integer>(ra);
+	assertEquals(rc.removeAll(rb), c.removeAll(b));
+	assertEquals(rc, c);
+
+	c = b.clone(); rc = new HashSet<Integer>(rb);
+	assertEquals(rc.removeAll(ra), c.removeAll(a));
+	assertEquals(rc, c);
+
+	c = a.clone(); rc = new HashSet<Integer>(ra);
+	ArrayList<Integer> list = new ArrayList<Integer>(rb);
+	assertEquals(rc.removeAll(list), c.removeAll(list));
+	assertEquals(rc, c);
+    }
+
+    public void testSetAlgebra() {
+	Random rng = new Random();
+	// Large enough to be split between several fork/join tasks
+	SimpleHashSet<Integer> a = randomSet(rng, 200000, 400000), b = randomSet(rng, 100000, 400000);
+	HashSet<Integer> union = new HashSet<Integer>(a), intersection = new HashSet<Integer>(a),
+	    difference = new HashSet<Integer>(a);
+	union.addAll(b); intersection.retainAll(b); difference.removeAll(b);
+
+	assertEquals(union, SimpleHashSet.union(a, b));
+	assertEquals(intersection, SimpleHashSet.intersection(a, b));
+	assertEquals(intersection, SimpleHashSet.intersection(b, a));
+	assertEquals(difference, SimpleHashSet.difference(a, b));
+    }
+
     // Here should go tests of inherited template methods, which use the above operations, but I won't add them 
     // for this exercise.
 }
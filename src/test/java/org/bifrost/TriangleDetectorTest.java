@@ -4,11 +4,15 @@ import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
+import org.bifrost.triangledetector.TriangleClassifier;
 import org.bifrost.triangledetector.TriangleDetector;
+import org.bifrost.triangledetector.TriangleType;
 import java.util.Collection;
 import java.util.Iterator;;
 import java.util.List;;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
 import java.util.LinkedList;
 
 class PermutationGenerator { 
@@ -84,4 +88,152 @@ public class TriangleDetectorTest extends TestCase
 	testPermutations(1, 2, 4, TriangleDetector.ERROR);
 	testPermutations(25, 35, 60, TriangleDetector.ERROR);
     }
-}
\ No newline at end of file
+
+    /**
+     * Checks classifier against detectTriangle on a, b and c, at offsets and lengths that leave a tail.
+     */
+    private void checkBulk(TriangleClassifier classifier, int[] a, int[] b, int[] c) {
+	int n = a.length;
+	for (int off = 0; off < 3; ++off) {
+	    int len = n - 2 * off;
+	    byte[] out = new byte[len + 1];
+	    int[] counts = classifier.detectTriangles(a, b, c, off, len, out, 1);
+	    int[] expected = new int[TriangleDetector.ERROR + 1];
+	    for (int i = 0; i < len; ++i) {
+		int x = a[off + i], y = b[off + i], z = c[off + i];
+		int cls = TriangleDetector.detectTriangle(x, y, z);
+		assertEquals(String.format("detectTriangles of (%d, %d, %d)", x, y, z), cls, out[i + 1]);
+		expected[cls]++;
+	    }
+	    assert(Arrays.equals(expected, counts));
+	}
+    }
+
+    public void testClassifier() {
+	boolean vector = TriangleDetector.classifier().getClass().getSimpleName().equals("VectorTriangleClassifier");
+	assertEquals(Boolean.getBoolean("triangledetector.expectVector"), vector);
+    }
+
+    public void testDetectTriangles() {
+	int[] special = { Integer.MIN_VALUE, Integer.MIN_VALUE + 1, -2, -1, 0, 1, 2, 3, 4, 5,
+			  Integer.MAX_VALUE / 2, Integer.MAX_VALUE / 2 + 1, Integer.MAX_VALUE - 1, Integer.MAX_VALUE };
+	int n = special.length * special.length * special.length + 100000;
+	int[] a = new int[n], b = new int[n], c = new int[n];
+	int i = 0;
+	for (int x: special) {
+	    for (int y: special) {
+		for (int z: special) {
+		    a[i] = x; b[i] = y; c[i++] = z;
+		}
+	    }
+	}
+	Random rng = new Random();
+	for (; i < n; ++i) {
+	    boolean small = rng.nextBoolean();
+	    a[i] = small ? rng.nextInt(10) - 2 : rng.nextInt();
+	    b[i] = small ? rng.nextInt(10) - 2 : rng.nextInt();
+	    c[i] = small ? rng.nextInt(10) - 2 : rng.nextInt();
+	}
+
+	checkBulk(TriangleDetector.classifier(), a, b, c);
+	checkBulk(new TriangleClassifier() {
+		public int[] detectTriangles(int[] a, int[] b, int[] c, int off, int len, byte[] out, int outOff) {
+		    return TriangleDetector.detectTriangles(a, b, c, off, len, out, outOff);
+		}
+	    }, a, b, c);
+
+	byte[] out = new byte[3];
+	int[] counts = TriangleDetector.detectTriangles(new int[] { 9, 2, 2, 3, 4 }, new int[] { 9, 2, 3, 4, 4 },
+						  new int[] { 9, 3, 4, 5, 4 }, 1, 3, out, 0);
+	assert(Arrays.equals(new byte[] { 2, 1, 1 }, out));
+	assert(Arrays.equals(new int[] { 0, 2, 1, 0, 0 }, counts));
+	try {
+	    TriangleDetector.detectTriangles(new int[3], new int[3], new int[2], out);
+	    fail();
+	} catch (IndexOutOfBoundsException e) {
+	}
+    }
+
+    public void testWideSides() {
+	int max = Integer.MAX_VALUE;
+	// Sums of these sides do not fit in an int
+	assertEquals(TriangleDetector.ISOSCELES, TriangleDetector.detectTriangle(max, max, 1));
+	assertEquals(TriangleDetector.SCALENE, TriangleDetector.detectTriangle(max, max - 1, max - 2));
+	assertEquals(TriangleDetector.ERROR, TriangleDetector.detectTriangle(max, max / 2, max / 2 + 1));
+	assertEquals(TriangleDetector.ISOSCELES, TriangleDetector.detectTriangle(max, max / 2 + 1, max / 2 + 1));
+	byte[] out = new byte[1];
+	TriangleDetector.detectTriangles(new int[] { max }, new int[] { max }, new int[] { 1 }, out);
+	assertEquals(TriangleDetector.ISOSCELES, out[0]);
+	TriangleDetector.classifier().detectTriangles(new int[] { max }, new int[] { max }, new int[] { 1 }, 0, 1, out, 0);
+	assertEquals(TriangleDetector.ISOSCELES, out[0]);
+	assertEquals(TriangleDetector.ISOSCELES, TriangleDetector.detectTriangle((long) max, max, 1));
+	assertEquals(TriangleDetector.SCALENE, TriangleDetector.detectTriangle((long) max, max - 1, max - 2));
+	assertEquals(TriangleDetector.EQUILATERAL, TriangleDetector.detectTriangle(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE));
+	assertEquals(TriangleDetector.ERROR, TriangleDetector.detectTriangle(Long.MAX_VALUE, Long.MAX_VALUE / 2, Long.MAX_VALUE / 2));
+	assertEquals(TriangleDetector.ISOSCELES, TriangleDetector.detectTriangle(Long.MAX_VALUE, Long.MAX_VALUE / 2 + 1, Long.MAX_VALUE / 2 + 1));
+	assertEquals(TriangleDetector.ERROR, TriangleDetector.detectTriangle(Long.MIN_VALUE, Long.MAX_VALUE, Long.MAX_VALUE));
+
+	Random rng = new Random();
+	for (int i = 0; i < 100000; ++i) {
+	    int a = rng.nextInt(max), b = rng.nextInt(max), c = rng.nextInt(max);
+	    long la = a, lb = b, lc = c;
+	    int expected = la + lb <= lc || la + lc <= lb || lb + lc <= la || a == 0 || b == 0 || c == 0
+		? TriangleDetector.ERROR
+		: a == b && b == c ? TriangleDetector.EQUILATERAL
+		: a == b || b == c || a == c ? TriangleDetector.ISOSCELES : TriangleDetector.SCALENE;
+	    assertEquals(expected, TriangleDetector.detectTriangle(la, lb, lc));
+	    assertEquals(expected, TriangleDetector.detectTriangle((double) a, b, c));
+	    assertEquals(expected, TriangleDetector.detectTriangle(a, b, c));
+	}
+    }
+
+    public void testEpsilon() {
+	assertEquals(TriangleDetector.SCALENE, TriangleDetector.detectTriangle(1.0, 1.0 + 1e-9, 1.5));
+	assertEquals(TriangleDetector.ISOSCELES, TriangleDetector.detectTriangle(1.0, 1.0 + 1e-9, 1.5, 1e-6));
+	assertEquals(TriangleDetector.EQUILATERAL, TriangleDetector.detectTriangle(0.1 + 0.2, 0.3, 0.3, 1e-12));
+	assertEquals(TriangleDetector.ISOSCELES, TriangleDetector.detectTriangle(0.1 + 0.2, 0.3, 0.3));
+	// Degenerate up to epsilon
+	assertEquals(TriangleDetector.SCALENE, TriangleDetector.detectTriangle(1.0, 2.0, 3.0 - 1e-9));
+	assertEquals(TriangleDetector.ERROR, TriangleDetector.detectTriangle(1.0, 2.0, 3.0 - 1e-9, 1e-6));
+	assertEquals(TriangleDetector.ERROR, TriangleDetector.detectTriangle(Double.NaN, 1.0, 1.0));
+	assertEquals(TriangleDetector.ERROR, TriangleDetector.detectTriangle(Double.POSITIVE_INFINITY, 1.0, 1.0));
+	assertEquals(TriangleDetector.ERROR, TriangleDetector.detectTriangle(-0.0, 1.0, 1.0));
+	assertEquals(TriangleDetector.EQUILATERAL, TriangleDetector.detectTriangle(Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE));
+	try {
+	    TriangleDetector.detectTriangle(1.0, 1.0, 1.0, -1);
+	    fail();
+	} catch (IllegalArgumentException e) {
+	}
+    }
+
+    public void testWideBulk() {
+	long[] la = { 3, Long.MAX_VALUE, 1, 5 }, lb = { 4, Long.MAX_VALUE, 2, 5 }, lc = { 5, 1, 3, 5 };
+	byte[] out = new byte[4];
+	int[] counts = TriangleDetector.detectTriangles(la, lb, lc, 0, 4, out, 0);
+	assert(Arrays.equals(new byte[] { 1, 2, 4, 3 }, out));
+	assert(Arrays.equals(new int[] { 0, 1, 1, 1, 1 }, counts));
+
+	double[] da = { 3, 1, 1 }, db = { 4, 1 + 1e-9, 2 }, dc = { 5, 1, 3 };
+	counts = TriangleDetector.detectTriangles(da, db, dc, 1e-6, 0, 3, out, 1);
+	assert(Arrays.equals(new byte[] { 1, 1, 3, 4 }, out));
+	assert(Arrays.equals(new int[] { 0, 1, 0, 1, 1 }, counts));
+    }
+
+    public void testTriangleType() {
+	for (TriangleType type: TriangleType.values()) {
+	    assertEquals(type, TriangleType.fromCode(type.code()));
+	}
+	assertEquals(TriangleDetector.SCALENE, TriangleType.SCALENE.code());
+	assertEquals(TriangleDetector.ISOSCELES, TriangleType.ISOSCELES.code());
+	assertEquals(TriangleDetector.EQUILATERAL, TriangleType.EQUILATERAL.code());
+	assertEquals(TriangleDetector.ERROR, TriangleType.ERROR.code());
+	assertEquals(TriangleType.EQUILATERAL, TriangleDetector.classify(4, 4, 4));
+	assertEquals(TriangleType.ISOSCELES, TriangleDetector.classify((long) Integer.MAX_VALUE, Integer.MAX_VALUE, 1L));
+	assertEquals(TriangleType.ERROR, TriangleDetector.classify(1.0, 2.0, 3.0, 0));
+	try {
+	    TriangleType.fromCode(0);
+	    fail();
+	} catch (IllegalArgumentException e) {
+	}
+    }
+}
@@ -0,0 +1,117 @@
+package org.bifrost;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.framework.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.bifrost.triangledetector.TriangleDetector;
+import org.bifrost.triangledetector.TriangleFileClassifier;
+
+public class TriangleFileClassifierTest extends TestCase
+{
+    private File dir;
+
+    public TriangleFileClassifierTest() {
+	super("TriangleFileClassifierTest");
+    }
+
+    public static Test suite() {
+	return new TestSuite(TriangleFileClassifierTest.class);
+    }
+
+    @Override
+    protected void setUp() throws IOException {
+	dir = Files.createTempDirectory("triangles").toFile();
+    }
+
+    @Override
+    protected void tearDown() {
+	for (File f: dir.listFiles()) f.delete();
+	dir.delete();
+    }
+
+    private static int[][] randomTriangles(int n) {
+	int[] special = { Integer.MIN_VALUE, -1, 0, 1, 2, 3, Integer.MAX_VALUE };
+	Random rng = new Random();
+	int[][] sides = new int[n][3];
+	for (int i = 0; i < n; ++i) {
+	    for (int j = 0; j < 3; ++j) {
+		int r = rng.nextInt(10);
+		sides[i][j] = r == 0 ? special[rng.nextInt(special.length)] : r < 5 ? rng.nextInt(6) : rng.nextInt();
+	    }
+	}
+	return sides;
+    }
+
+    private static void check(int[][] sides, long[] counts, Path out) throws IOException {
+	byte[] codes = Files.readAllBytes(out);
+	assertEquals(sides.length, codes.length);
+	long[] expected = new long[TriangleDetector.ERROR + 1];
+	for (int i = 0; i < sides.length; ++i) {
+	    int cls = TriangleDetector.detectTriangle(sides[i][0], sides[i][1], sides[i][2]);
+	    assertEquals(cls, codes[i]);
+	    expected[cls]++;
+	}
+	for (int i = 0; i < expected.length; ++i) assertEquals(expected[i], counts[i]);
+    }
+
+    public void testBinary() throws IOException {
+	int[][] sides = randomTriangles(300000);
+	ByteBuffer buf = ByteBuffer.allocate(sides.length * 12).order(ByteOrder.LITTLE_ENDIAN);
+	for (int[] t: sides) buf.putInt(t[0]).putInt(t[1]).putInt(t[2]);
+	Path in = new File(dir, "triangles.bin").toPath(), out = new File(dir, "codes").toPath();
+	Files.write(in, buf.array());
+	check(sides, TriangleFileClassifier.classifyBinary(in, out), out);
+	long[] counts = TriangleFileClassifier.classifyBinary(in, null);
+	check(sides, counts, out);
+
+	Files.write(in, new byte[13]);
+	try {
+	    TriangleFileClassifier.classifyBinary(in, null);
+	    fail();
+	} catch (IOException e) {
+	}
+    }
+
+    public void testCsv() throws IOException {
+	int[][] sides = randomTriangles(300000);
+	StringBuilder sb = new StringBuilder();
+	for (int i = 0; i < sides.length; ++i) {
+	    if (i % 3 == 0) {
+		sb.append(sides[i][0]).append(',').append(sides[i][1]).append(',').append(sides[i][2]).append('\n');
+	    } else if (i % 3 == 1) {
+		sb.append(' ').append(sides[i][0]).append(" ,\t").append(sides[i][1]).append(", ").append(sides[i][2]).append("\r\n");
+	    } else {
+		sb.append(sides[i][0]).append(',').append(sides[i][1]).append(',').append(sides[i][2]).append("\n\n");
+	    }
+	}
+	sb.setLength(sb.length() - 1);
+	Path in = new File(dir, "triangles.csv").toPath(), out = new File(dir, "codes").toPath();
+	Files.write(in, sb.toString().getBytes(StandardCharsets.US_ASCII));
+	check(sides, TriangleFileClassifier.classifyCsv(in, out), out);
+    }
+
+    public void testMalformedCsv() throws IOException {
+	Path in = new File(dir, "bad.csv").toPath();
+	String[] bad = { "1,2\n", "1,2,3,4\n", "1,,3\n", "1,2,x\n", "1,2,2147483648\n", "1 2,3\n", "-,1,1\n" };
+	for (String csv: bad) {
+	    Files.write(in, ("3,4,5\n" + csv).getBytes(StandardCharsets.US_ASCII));
+	    try {
+		TriangleFileClassifier.classifyCsv(in, null);
+		fail(csv);
+	    } catch (IOException e) {
+		assert(e.getMessage().contains("byte"));
+	    }
+	}
+	Files.write(in, "-2147483648, 2147483647 ,1".getBytes(StandardCharsets.US_ASCII));
+	assertEquals(1, TriangleFileClassifier.classifyCsv(in, null)[TriangleDetector.ERROR]);
+    }
+}
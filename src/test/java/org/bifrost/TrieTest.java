@@ -14,7 +14,9 @@ import java.util.Set;
 import java.util.HashSet;
 import java.util.HashMap;
 import java.util.Collections;
+import org.bifrost.trie.CachingTrie;
 import org.bifrost.trie.Trie;
+import org.bifrost.trie.TrieStats;
 
 public class TrieTest extends TestCase 
 { 
@@ -283,4 +285,83 @@ public class TrieTest extends TestCase
 	assert(s1.equals(s2));
 	assert(trie1.equals(trie2));
     }
-}
\ No newline at end of file
+
+    public void testStats() {
+	Trie<String, Integer> trie = new Trie<String, Integer>();
+	TrieStats stats = trie.getStats();
+	assertEquals(1, stats.getNodeCount());
+	assertEquals(0, stats.getPayloadCount());
+	trie.put("abc", 1); trie.put("abd", 2); trie.put("b", 3); trie.put("", 4);
+	stats = trie.getStats();
+	// root, a, ab, abc, abd, b
+	assertEquals(6, stats.getNodeCount());
+	assertEquals(4, stats.getPayloadCount());
+	assertEquals(3, stats.getMaxDepth());
+	assertEquals(7 / 4.0, stats.getAverageDepth(), 1e-9);
+	assertEquals(3, stats.getFanOut(0));
+	assertEquals(1, stats.getFanOut(1));
+	assertEquals(2, stats.getFanOut(2));
+	assertEquals(0, stats.getFanOut(3));
+	assertEquals(1, stats.getChainNodeCount());
+	assert(stats.getEstimatedBytes() > 6 * 32);
+
+	// Entries of a CachingTrie know their node, 8 bytes more each
+	CachingTrie<String, Integer> cache = new CachingTrie<String, Integer>(10);
+	cache.put("abc", 1); cache.put("abd", 2); cache.put("b", 3); cache.put("", 4);
+	assertEquals(stats.getEstimatedBytes() + 4 * 8, cache.getStats().getEstimatedBytes());
+    }
+
+    public void testRemovePrunes() {
+	Trie<String, Integer> trie = new Trie<String, Integer>();
+	trie.put("abc", 1);
+	trie.put("abd", 2);
+	assertEquals(5, trie.getStats().getNodeCount());
+	trie.remove("abc");
+	assertEquals(4, trie.getStats().getNodeCount());
+	trie.remove("abd");
+	trie.compact();
+	assertEquals(1, trie.getStats().getNodeCount());
+    }
+
+    public void testCompact() {
+	Trie<String, Integer> trie = new Trie<String, Integer>();
+	Map<String, Integer> reference = new HashMap<String, Integer>();
+	Random rng = new Random();
+	for (int i = 0; i < 20000; ++i) {
+	    String key = Integer.toString(rng.nextInt(100000), 7);
+	    trie.put(key, i); reference.put(key, i);
+	}
+	for (int i = 0; i < 10000; ++i) {
+	    String key = Integer.toString(rng.nextInt(100000), 7);
+	    assertEquals(reference.remove(key), trie.remove(key));
+	}
+	List<Map.Entry<String, Integer>> before = new ArrayList<Map.Entry<String, Integer>>(trie.entrySet());
+	TrieStats stats = trie.getStats();
+	trie.compact();
+	TrieStats compacted = trie.getStats();
+	assertEquals(stats.getNodeCount(), compacted.getNodeCount());
+	assertEquals(stats.getPayloadCount(), compacted.getPayloadCount());
+	assert(compacted.getEstimatedBytes() < stats.getEstimatedBytes() * 9 / 10);
+	assertEquals(before, new ArrayList<Map.Entry<String, Integer>>(trie.entrySet()));
+	assertEquals(reference, trie);
+	// No nodes left over from the removals: one per prefix of a key, the empty one included
+	Set<String> prefixes = new HashSet<String>();
+	for (String key: reference.keySet()) {
+	    for (int i = 0; i <= key.length(); ++i) prefixes.add(key.substring(0, i));
+	}
+	assertEquals(prefixes.size(), compacted.getNodeCount());
+
+	// Still fully usable after compaction
+	for (int i = 0; i < 10000; ++i) {
+	    String key = Integer.toString(rng.nextInt(100000), 7);
+	    if (rng.nextBoolean()) {
+		assertEquals(reference.put(key, i), trie.put(key, i));
+	    } else {
+		assertEquals(reference.remove(key), trie.remove(key));
+	    }
+	}
+	assertEquals(reference, trie);
+	trie.compact();
+	assertEquals(reference, trie);
+    }
+}
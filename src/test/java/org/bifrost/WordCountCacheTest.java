@@ -0,0 +1,136 @@
+package org.bifrost;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.framework.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+import org.bifrost.wordcounter.WordCountCache;
+import org.bifrost.wordcounter.WordCounter;
+
+public class WordCountCacheTest extends TestCase
+{
+    private File dir;
+
+    public WordCountCacheTest() {
+	super("WordCountCacheTest");
+    }
+
+    public static Test suite() {
+	return new TestSuite(WordCountCacheTest.class);
+    }
+
+    @Override
+    protected void setUp() throws IOException {
+	dir = Files.createTempDirectory("cache").toFile();
+    }
+
+    @Override
+    protected void tearDown() {
+	for (File f: dir.listFiles()) f.delete();
+	dir.delete();
+    }
+
+    private static void assertSameCounts(List<WordCounter.Word> expected, List<WordCounter.Word> actual) {
+	assertEquals(expected.size(), actual.size());
+	for (int i = 0; i < expected.size(); ++i) {
+	    assertEquals(expected.get(i).getName(), actual.get(i).getName());
+	    assertEquals(expected.get(i).getOccurence(), actual.get(i).getOccurence());
+	}
+    }
+
+    private static void append(Path p, String text, Charset charset) throws IOException {
+	Files.write(p, text.getBytes(charset), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static void check(WordCountCache cache, Path p, Charset charset) throws IOException {
+	List<WordCounter.Word> expected = new WordCounter().getMostCommonWordsFromFile(p.toFile(), charset.name(), 0);
+	assertSameCounts(expected, cache.getMostCommonWords(p, charset, 0));
+    }
+
+    public void testAppend() throws IOException {
+	Random rng = new Random();
+	WordCountCache cache = new WordCountCache(1 << 30);
+	Path log = new File(dir, "log").toPath();
+	String text = new WordCounterTest.TextGenerator().generateText(20000).getText() + " æøå U.S.A.";
+	for (Charset charset: new Charset[] { StandardCharsets.UTF_8, StandardCharsets.UTF_16 }) {
+	    Files.deleteIfExists(log);
+	    long full = cache.getFullCounts(), incremental = cache.getIncrementalCounts();
+	    int appends = 0;
+	    // Appended pieces end anywhere, in words, acronyms and dash-newlines
+	    for (int pos = 0; pos < text.length(); ++appends) {
+		int end = Math.min(text.length(), pos + 1 + rng.nextInt(5000));
+		append(log, text.substring(pos, end), charset);
+		check(cache, log, charset);
+		pos = end;
+	    }
+	    check(cache, log, charset);
+	    if (charset == StandardCharsets.UTF_8) {
+		assertEquals(full + 1, cache.getFullCounts());
+		assertEquals(incremental + appends - 1, cache.getIncrementalCounts());
+	    } else {
+		assertEquals(full + appends, cache.getFullCounts());
+	    }
+	}
+	long hits = cache.getHits();
+	check(cache, log, StandardCharsets.UTF_16);
+	assertEquals(hits + 1, cache.getHits());
+	assertEquals(1, cache.size());
+    }
+
+    public void testRotateAndTruncate() throws IOException {
+	WordCountCache cache = new WordCountCache(1 << 30);
+	Path log = new File(dir, "log").toPath();
+	append(log, "one two three two", StandardCharsets.UTF_8);
+	check(cache, log, StandardCharsets.UTF_8);
+
+	// Truncated
+	Files.write(log, "four".getBytes(StandardCharsets.UTF_8));
+	check(cache, log, StandardCharsets.UTF_8);
+	assertEquals(2, cache.getFullCounts());
+
+	// Rotated: a new, bigger file in its place
+	Files.move(log, new File(dir, "log.1").toPath());
+	append(log, "five six seven eight nine ten", StandardCharsets.UTF_8);
+	check(cache, log, StandardCharsets.UTF_8);
+	assertEquals(3, cache.getFullCounts());
+
+	// Rewritten in place, and grown
+	Files.write(log, "xxxx six seven eight nine ten eleven".getBytes(StandardCharsets.UTF_8),
+		    StandardOpenOption.WRITE);
+	check(cache, log, StandardCharsets.UTF_8);
+	assertEquals(4, cache.getFullCounts());
+	assertEquals(0, cache.getIncrementalCounts());
+
+	append(log, "-\nty", StandardCharsets.UTF_8);
+	check(cache, log, StandardCharsets.UTF_8);
+	assertEquals(1, cache.getIncrementalCounts());
+    }
+
+    public void testEviction() throws IOException {
+	WordCountCache cache = new WordCountCache(200000);
+	WordCounterTest.TextGenerator generator = new WordCounterTest.TextGenerator();
+	for (int i = 0; i < 20; ++i) {
+	    Path p = new File(dir, "file" + i).toPath();
+	    append(p, generator.generateText(2000).getText(), StandardCharsets.UTF_8);
+	    check(cache, p, StandardCharsets.UTF_8);
+	    assert(cache.getMemoryUsage() <= 200000);
+	}
+	assert(cache.size() > 0 && cache.size() < 20);
+	// The most recently used is kept
+	long full = cache.getFullCounts();
+	check(cache, new File(dir, "file19").toPath(), StandardCharsets.UTF_8);
+	assertEquals(full, cache.getFullCounts());
+	cache.invalidate(new File(dir, "file19").toPath());
+	check(cache, new File(dir, "file19").toPath(), StandardCharsets.UTF_8);
+	assertEquals(full + 1, cache.getFullCounts());
+    }
+}
@@ -6,15 +6,20 @@ import junit.framework.TestSuite;
 
 import java.util.Random;
 import java.util.List;
+import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.io.File;
 import java.net.URL;
+import org.bifrost.trie.IntTrie;
 import org.bifrost.wordcounter.WordCounter;
+import org.bifrost.wordcounter.WordScanner;
 
 public class WordCounterTest extends TestCase {
     public WordCounterTest() {
@@ -172,4 +177,147 @@ public class WordCounterTest extends TestCase {
 	assertEquals(gettysburgWords.size(), 10);
 	assertEquals(referenceWords, gettysburgWords);
     }
-};
+
+    private static void assertSameCounts(List<WordCounter.Word> expected, List<WordCounter.Word> actual) {
+	assertEquals(expected.size(), actual.size());
+	for (int i = 0; i < expected.size(); ++i) {
+	    assertEquals(expected.get(i).getName(), actual.get(i).getName());
+	    assertEquals(expected.get(i).getOccurence(), actual.get(i).getOccurence());
+	}
+    }
+
+    /**
+     * The fused scanner must find exactly what the regex finds, also
+     * in texts made of the characters the regex treats specially.
+     */
+    public void testFused() throws IOException {
+	WordCounter regex = new WordCounter(), fused = new WordCounter(WordCounter.Mode.FUSED);
+	String[] texts = { "", "a", "A.", "U.S.A. and e.g. a.b.c", "U.Sa", "a.bcd", "ab.c", "a-b.c", "ab-", "a--\nb",
+			   "a-\r\nb", "a-\rb", "a-\n\rb", "a-\r-\nb", "x.-y", "x. y", "I.B.M-", "Zz.Z.",
+			   "a-\r", "a.b-c" };
+	for (String text: texts) {
+	    assertSameCounts(regex.getMostCommonWords(text, 0), fused.getMostCommonWords(text, 0));
+	}
+	Random rng = new Random();
+	String alphabet = "aAbZz.-\r\n ,";
+	for (int i = 0; i < 2000; ++i) {
+	    StringBuilder sb = new StringBuilder();
+	    for (int j = rng.nextInt(40); j > 0; --j) sb.append(alphabet.charAt(rng.nextInt(alphabet.length())));
+	    String text = sb.toString();
+	    List<WordCounter.Word> expected = regex.getMostCommonWords(text, 0);
+	    try {
+		assertSameCounts(expected, fused.getMostCommonWords(text, 0));
+	    } catch (junit.framework.AssertionFailedError e) {
+		fail("Differs on " + text.replace("\r", "\\r").replace("\n", "\\n") + ": " + e.getMessage());
+	    }
+	}
+	TextGenerator t = new TextGenerator();
+	for (int i = 0; i < 5; ++i) {
+	    String text = t.generateText(10000).getText();
+	    assertSameCounts(regex.getMostCommonWords(text, 0), fused.getMostCommonWords(text, 0));
+	}
+	File f = new File(getClass().getClassLoader().getResource("wordcounttest/gettysburg.txt").getFile());
+	assertSameCounts(regex.getMostCommonWordsFromFile(f, "UTF-8", 0), fused.getMostCommonWordsFromFile(f, "UTF-8", 0));
+    }
+
+    /**
+     * Feeding a text in pieces, split anywhere, counts the same as feeding it whole.
+     */
+    public void testScannerChunks() {
+	Random rng = new Random();
+	String text = new TextGenerator().generateText(5000).getText() + " U.S.A. a-\r\nb x-";
+	IntTrie whole = new IntTrie();
+	WordScanner scanner = new WordScanner(whole);
+	scanner.feed(text);
+	scanner.finish();
+	char[] chars = text.toCharArray();
+	for (int i = 0; i < 20; ++i) {
+	    IntTrie pieces = new IntTrie();
+	    WordScanner chunked = new WordScanner(pieces);
+	    for (int pos = 0; pos < text.length(); ) {
+		int end = Math.min(text.length(), pos + rng.nextInt(8));
+		chunked.feed(chars, pos, end - pos);
+		pos = end;
+	    }
+	    chunked.finish();
+	    assertEquals(whole, pieces);
+	    assertEquals(scanner.getTokens(), chunked.getTokens());
+	}
+    }
+
+    /**
+     * N-grams counted the simple way, a String per n-gram in a HashMap.
+     */
+    private static List<WordCounter.Word> naiveNGrams(List<String> words, int n) {
+	HashMap<String, Integer> map = new HashMap<String, Integer>();
+	for (int i = 0; i + n <= words.size(); ++i) {
+	    StringBuilder sb = new StringBuilder(words.get(i));
+	    for (int j = 1; j < n; ++j) sb.append(' ').append(words.get(i + j));
+	    Integer old = map.get(sb.toString());
+	    map.put(sb.toString(), old == null ? 1 : old + 1);
+	}
+	List<WordCounter.Word> res = new ArrayList<WordCounter.Word>();
+	for (Map.Entry<String, Integer> entry: map.entrySet()) res.add(new WordCounter.Word(entry.getKey(), entry.getValue()));
+	Collections.sort(res, new WordCounter.WordComparator());
+	return res;
+    }
+
+    public void testNGrams() {
+	WordCounter wc = new WordCounter();
+	List<WordCounter.Word> bigrams = wc.getMostCommonNGrams("The cat and the cat. THE CAT!", 2, 2);
+	assertSameCounts(Arrays.asList(new WordCounter.Word("the cat", 3), new WordCounter.Word("and the", 1)),
+			 bigrams);
+	assertEquals(0, wc.getMostCommonNGrams("one two", 3, 0).size());
+	assertEquals(0, wc.getMostCommonNGrams("", 1, 0).size());
+
+	String text = new TextGenerator().generateText(20000).getText();
+	assertSameCounts(wc.getMostCommonWords(text, 0), wc.getMostCommonNGrams(text, 1, 0));
+	assertSameCounts(wc.getMostCommonWords(text, 10), wc.getMostCommonNGrams(text, 1, 10));
+
+	Pattern letters = Pattern.compile("\\p{Alpha}+");
+	List<String> words = new ArrayList<String>();
+	for (Matcher m = letters.matcher(text); m.find(); ) words.add(m.group().toLowerCase());
+	WordCounter custom = new WordCounter(letters);
+	// Without dashes and dots, the default words are the same
+	String plain = text.replaceAll("[^\\p{Alpha}]+", " ");
+	for (int n = 1; n <= 4; ++n) {
+	    List<WordCounter.Word> expected = naiveNGrams(words, n);
+	    assertSameCounts(expected, custom.getMostCommonNGrams(text, n, 0));
+	    assertSameCounts(expected, wc.getMostCommonNGrams(plain, n, 0));
+	    assertSameCounts(expected.subList(0, 25), wc.getMostCommonNGrams(plain, n, 25));
+	}
+	try {
+	    wc.getMostCommonNGrams(text, 5, 10);
+	    fail();
+	} catch (IllegalArgumentException e) {
+	}
+    }
+
+    /**
+     * More distinct words than fit 4 to a long, so the 4-grams are
+     * counted with wider keys from the middle of the text on.
+     */
+    public void testManyDistinctNGrams() {
+	Random rng = new Random();
+	List<String> words = new ArrayList<String>();
+	String[] common = { "the", "cat", "and", "dog" };
+	for (int i = 0; i < 100000; ++i) {
+	    if (rng.nextInt(4) == 0) {
+		words.add(common[rng.nextInt(common.length)]);
+	    } else {
+		// A distinct word of letters only, a base 26 number
+		StringBuilder sb = new StringBuilder();
+		for (char c: Integer.toString(i, 26).toCharArray()) sb.append((char) ('a' + Character.digit(c, 26)));
+		words.add(sb.toString());
+	    }
+	}
+	StringBuilder text = new StringBuilder();
+	for (String word: words) text.append(word).append(' ');
+	WordCounter wc = new WordCounter();
+	for (int n = 3; n <= 4; ++n) {
+	    List<WordCounter.Word> expected = naiveNGrams(words, n);
+	    assertSameCounts(expected, wc.getMostCommonNGrams(text.toString(), n, 0));
+	    assertSameCounts(expected.subList(0, 10), wc.getMostCommonNGrams(text.toString(), n, 10));
+	}
+    }
+}
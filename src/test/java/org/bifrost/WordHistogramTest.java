@@ -0,0 +1,182 @@
+package org.bifrost;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.framework.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.bifrost.trie.IntTrie;
+import org.bifrost.wordcounter.WordCounter;
+import org.bifrost.wordcounter.WordHistogram;
+
+public class WordHistogramTest extends TestCase
+{
+    public WordHistogramTest() {
+	super("WordHistogramTest");
+    }
+
+    public static Test suite() {
+	return new TestSuite(WordHistogramTest.class);
+    }
+
+    /**
+     * Worker for testProcesses: counts the text of file args[0] and
+     * writes its histogram to file args[1].
+     */
+    public static void main(String[] args) throws IOException {
+	WordHistogram histogram = new WordCounter(WordCounter.Mode.FUSED).getHistogramFromFile(new File(args[0]), "UTF-8");
+	try (OutputStream out = new FileOutputStream(args[1])) {
+	    histogram.writeTo(out);
+	}
+    }
+
+    private static void assertSameCounts(List<WordCounter.Word> expected, List<WordCounter.Word> actual) {
+	assertEquals(expected.size(), actual.size());
+	for (int i = 0; i < expected.size(); ++i) {
+	    assertEquals(expected.get(i).getName(), actual.get(i).getName());
+	    assertEquals(expected.get(i).getOccurence(), actual.get(i).getOccurence());
+	}
+    }
+
+    /**
+     * Splits text in n parts at spaces, which never are inside a word.
+     */
+    private static List<String> split(String text, int n) {
+	List<String> parts = new ArrayList<String>();
+	int start = 0;
+	for (int i = 1; i < n; ++i) {
+	    int end = text.indexOf(' ', Math.max(start, text.length() * i / n));
+	    if (end < 0) break;
+	    parts.add(text.substring(start, end));
+	    start = end;
+	}
+	parts.add(text.substring(start));
+	return parts;
+    }
+
+    public void testEncoding() throws IOException {
+	IntTrie counts = new IntTrie();
+	String[] words = { "", "a", "ab", "abc", "abd", "b", "x😀", "x😁", "æøå" };
+	for (int i = 0; i < words.length; ++i) counts.putInt(words[i], i * 1000);
+	counts.putInt("big", Integer.MAX_VALUE);
+	WordHistogram histogram = WordHistogram.of(counts);
+	WordHistogram copy = WordHistogram.fromByteArray(histogram.toByteArray());
+	assertEquals(counts.size(), copy.size());
+	for (int i = 0; i < copy.size(); ++i) {
+	    assertEquals(counts.getInt(copy.getWord(i)), copy.getCount(i));
+	}
+	assertEquals(Integer.MAX_VALUE, copy.getCount("big"));
+	assertEquals(0, copy.getCount("nope"));
+
+	String text = new WordCounterTest.TextGenerator().generateText(20000).getText();
+	histogram = new WordCounter().getHistogram(text);
+	int plain = 0;
+	for (int i = 0; i < histogram.size(); ++i) plain += histogram.getWord(i).length() + 1 + 4;
+	assert(histogram.toByteArray().length < plain * 2 / 3);
+	assertSameCounts(new WordCounter().getMostCommonWords(text, 0), histogram.getMostCommonWords(0));
+	assertSameCounts(new WordCounter().getMostCommonWords(text, 7), histogram.getMostCommonWords(7));
+
+	try {
+	    WordHistogram.fromByteArray(new byte[] { 1, 2, 3, 4 });
+	    fail();
+	} catch (IOException e) {
+	}
+	byte[] bytes = histogram.toByteArray();
+	try {
+	    WordHistogram.fromByteArray(Arrays.copyOf(bytes, bytes.length - 1));
+	    fail();
+	} catch (IOException e) {
+	}
+    }
+
+    /**
+     * Histograms read from a stream leave the stream right after
+     * them, also when the stream is not buffered.
+     */
+    public void testConcatenated() throws IOException {
+	IntTrie counts = new IntTrie();
+	counts.putInt("one", 1);
+	counts.putInt("two", 2);
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	WordHistogram.of(counts).writeTo(out);
+	counts.putInt("three", 3);
+	WordHistogram.of(counts).writeTo(out);
+	out.write(42);
+	// Not a ByteArrayInputStream, which the Reader used to take as buffered already
+	InputStream in = new FilterInputStream(new ByteArrayInputStream(out.toByteArray())) {};
+	WordHistogram first = WordHistogram.readFrom(in);
+	WordHistogram second = WordHistogram.readFrom(in);
+	assertEquals(2, first.size());
+	assertEquals(0, first.getCount("three"));
+	assertEquals(3, second.size());
+	assertEquals(3, second.getCount("three"));
+	assertEquals(42, in.read());
+	assertEquals(-1, in.read());
+    }
+
+    public void testMerge() throws IOException {
+	Random rng = new Random();
+	WordCounterTest.TextGenerator generator = new WordCounterTest.TextGenerator();
+	StringBuilder whole = new StringBuilder();
+	List<InputStream> inputs = new ArrayList<InputStream>(), more = new ArrayList<InputStream>();
+	for (int i = 0; i < 8; ++i) {
+	    String text = generator.generateText(rng.nextInt(5000)).getText();
+	    whole.append(text).append(' ');
+	    byte[] bytes = new WordCounter(WordCounter.Mode.FUSED).getHistogram(text).toByteArray();
+	    inputs.add(new ByteArrayInputStream(bytes));
+	    more.add(new ByteArrayInputStream(bytes));
+	}
+	WordCounter wc = new WordCounter();
+	String text = whole.toString();
+	assertSameCounts(wc.getMostCommonWords(text, 20), WordHistogram.mergeMostCommon(inputs, 20));
+
+	ByteArrayOutputStream merged = new ByteArrayOutputStream();
+	WordHistogram.mergeTo(more, merged);
+	WordHistogram histogram = WordHistogram.fromByteArray(merged.toByteArray());
+	assertSameCounts(wc.getMostCommonWords(text, 0), histogram.getMostCommonWords(0));
+	assertEquals(wc.getHistogram(text).getTotal(), histogram.getTotal());
+    }
+
+    /**
+     * Counts parts of a text in separate JVMs and merges their histograms.
+     */
+    public void testProcesses() throws Exception {
+	File dir = Files.createTempDirectory("histograms").toFile();
+	try {
+	    String text = new WordCounterTest.TextGenerator().generateText(50000).getText();
+	    List<String> parts = split(text, 3);
+	    String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+	    List<Process> workers = new ArrayList<Process>();
+	    List<InputStream> inputs = new ArrayList<InputStream>();
+	    for (int i = 0; i < parts.size(); ++i) {
+		File in = new File(dir, "part" + i), out = new File(dir, "histogram" + i);
+		Files.write(in.toPath(), parts.get(i).getBytes(StandardCharsets.UTF_8));
+		workers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+					       WordHistogramTest.class.getName(), in.getPath(), out.getPath())
+			    .redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.INHERIT).start());
+	    }
+	    for (int i = 0; i < workers.size(); ++i) {
+		assertEquals(0, workers.get(i).waitFor());
+		inputs.add(new FileInputStream(new File(dir, "histogram" + i)));
+	    }
+	    assertSameCounts(new WordCounter().getMostCommonWords(text, 10), WordHistogram.mergeMostCommon(inputs, 10));
+	} finally {
+	    for (File f: dir.listFiles()) f.delete();
+	    dir.delete();
+	}
+    }
+}
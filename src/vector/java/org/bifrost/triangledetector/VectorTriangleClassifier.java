@@ -0,0 +1,68 @@
+package org.bifrost.triangledetector;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import org.bifrost.metrics.Metrics;
+
+/**
+ * TriangleDetector.detectTriangles with the jdk.incubator.vector
+ * API, classifying IntVector.SPECIES_PREFERRED lanes at a time. All
+ * tests are lane-wise compares giving masks, and the class codes are
+ * built by blending under those masks. The triangles left over after
+ * the last full vector go through the scalar loop.
+ *
+ * Only compiled with the vector profile (mvn -Pvector), and loaded
+ * by TriangleDetector.classifier() through reflection, so that
+ * nothing breaks when the module is missing at runtime.
+ */
+final class VectorTriangleClassifier implements TriangleClassifier {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    /** Bytes of the same total size as SPECIES, of which only the first SPECIES.length() are used */
+    private static final VectorSpecies<Byte> BYTE_SPECIES = ByteVector.SPECIES_PREFERRED.withShape(SPECIES.vectorShape());
+    private static final VectorMask<Byte> BYTE_MASK = BYTE_SPECIES.indexInRange(0, SPECIES.length());
+
+    VectorTriangleClassifier() {
+    }
+
+    @Override
+    public int[] detectTriangles(int[] a, int[] b, int[] c, int off, int len, byte[] out, int outOff) {
+	TriangleDetector.checkBounds(a, b, c, off, len, out, outOff);
+	int errors = 0, isosceles = 0, equilateral = 0;
+	int bound = SPECIES.loopBound(len);
+	int i = 0;
+	for (; i < bound; i += SPECIES.length()) {
+	    IntVector x = IntVector.fromArray(SPECIES, a, off + i);
+	    IntVector y = IntVector.fromArray(SPECIES, b, off + i);
+	    IntVector z = IntVector.fromArray(SPECIES, c, off + i);
+	    // Sums as differences, as in detectTriangle; they only wrap in lanes with a side <= 0
+	    VectorMask<Integer> err = x.compare(VectorOperators.LE, 0)
+		.or(y.compare(VectorOperators.LE, 0))
+		.or(z.compare(VectorOperators.LE, 0))
+		.or(x.compare(VectorOperators.LE, z.sub(y)))
+		.or(x.compare(VectorOperators.LE, y.sub(z)))
+		.or(y.compare(VectorOperators.LE, x.sub(z)));
+	    VectorMask<Integer> eqXY = x.compare(VectorOperators.EQ, y);
+	    VectorMask<Integer> eqYZ = y.compare(VectorOperators.EQ, z);
+	    VectorMask<Integer> equi = eqXY.and(eqYZ).andNot(err);
+	    VectorMask<Integer> iso = eqXY.or(eqYZ).or(z.compare(VectorOperators.EQ, x)).andNot(err);
+	    IntVector cls = IntVector.broadcast(SPECIES, TriangleDetector.SCALENE)
+		.blend(TriangleDetector.ISOSCELES, iso)
+		.blend(TriangleDetector.EQUILATERAL, equi)
+		.blend(TriangleDetector.ERROR, err);
+	    ((ByteVector) cls.convert(VectorOperators.I2B, 0)).intoArray(out, outOff + i, BYTE_MASK);
+	    errors += err.trueCount();
+	    isosceles += iso.trueCount();
+	    equilateral += equi.trueCount();
+	}
+	if (Metrics.ENABLED) Metrics.TRIANGLES_CLASSIFIED.add(i);
+	int[] counts = TriangleDetector.detectTriangles(a, b, c, off + i, len - i, out, outOff + i);
+	counts[TriangleDetector.SCALENE] += i - errors - isosceles;
+	counts[TriangleDetector.ISOSCELES] += isosceles - equilateral;
+	counts[TriangleDetector.EQUILATERAL] += equilateral;
+	counts[TriangleDetector.ERROR] += errors;
+	return counts;
+    }
+}